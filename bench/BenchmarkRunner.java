@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures one operation at a time: a number of warmup iterations, then measured
+ * iterations of a fixed length, recording the throughput, the latency of every operation
+ * (up to a limit per iteration), the bytes allocated per operation and the garbage
+ * collections that ran. The results are written as JSON so runs can be compared.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class BenchmarkRunner {
+
+	private static final int MAX_SAMPLES = 1 << 20;		// latencies recorded per iteration
+
+	private final int warmupIterations;
+	private final int iterations;
+	private final long iterationNanos;
+	private final long[] samples = new long[MAX_SAMPLES];
+	private final List<Result> results = new ArrayList<Result>();
+
+	/**
+	 * Something to measure. setUp is called before every iteration and is not measured;
+	 * run performs one operation.
+	 */
+	public interface Fixture {
+		/**
+		 * Prepares an iteration.
+		 * @return	the most operations the iteration may run
+		 * @throws Exception	if the iteration cannot be prepared
+		 */
+		long setUp() throws Exception;
+
+		/**
+		 * Performs one operation.
+		 * @throws Exception	if the operation fails
+		 */
+		void run() throws Exception;
+	}
+
+	/**
+	 * Constructs a runner.
+	 * @param warmupIterations	the number of iterations run before measuring
+	 * @param iterations		the number of measured iterations
+	 * @param iterationMillis	the length of an iteration in milliseconds
+	 */
+	public BenchmarkRunner(int warmupIterations, int iterations, long iterationMillis) {
+		this.warmupIterations = warmupIterations;
+		this.iterations = iterations;
+		this.iterationNanos = iterationMillis * 1000000L;
+	}
+
+	/**
+	 * Measures an operation and keeps the result.
+	 * @param benchmark	the name of the operation
+	 * @param size		the number of events on the calendar
+	 * @param shape		how the events are spread over the days
+	 * @param fixture	the operation to measure
+	 * @return			the result of the measurement
+	 * @throws Exception	if the operation fails
+	 */
+	public Result measure(String benchmark, int size, String shape, Fixture fixture) throws Exception {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		for (int i = 0; i < warmupIterations; i++) {
+			iterate(fixture);
+		}
+
+		Result result = new Result(benchmark, size, shape);
+		double[] throughput = new double[iterations];
+		long[] latencies = new long[0];
+		long allocated = 0;
+		long gcCount = -gcCount();
+		long gcMillis = -gcMillis();
+		for (int i = 0; i < iterations; i++) {
+			long before = allocatedBytes(threads, thread);
+			long start = System.nanoTime();
+			int ops = iterate(fixture);
+			long elapsed = System.nanoTime() - start;
+			allocated += allocatedBytes(threads, thread) - before;
+
+			throughput[i] = ops * 1e9 / elapsed;
+			result.operations += ops;
+			int recorded = Math.min(ops, MAX_SAMPLES);
+			latencies = Arrays.copyOf(latencies, latencies.length + recorded);
+			System.arraycopy(samples, 0, latencies, latencies.length - recorded, recorded);
+		}
+		result.gcCount = gcCount + gcCount();
+		result.gcMillis = gcMillis + gcMillis();
+
+		double sum = 0;
+		for (double t : throughput) {
+			sum += t;
+		}
+		result.opsPerSecond = sum / iterations;
+		double squares = 0;
+		for (double t : throughput) {
+			squares += (t - result.opsPerSecond) * (t - result.opsPerSecond);
+		}
+		result.opsPerSecondError = iterations > 1 ? Math.sqrt(squares / (iterations - 1)) : 0;
+		result.allocatedBytesPerOp = result.operations == 0 || allocated < 0 ? -1 : (double) allocated / result.operations;
+
+		Arrays.sort(latencies);
+		result.p50 = percentile(latencies, 0.50);
+		result.p90 = percentile(latencies, 0.90);
+		result.p99 = percentile(latencies, 0.99);
+		result.p999 = percentile(latencies, 0.999);
+		result.max = latencies.length == 0 ? 0 : latencies[latencies.length - 1];
+		results.add(result);
+		return result;
+	}
+
+	/**
+	 * Runs operations until the iteration is over or the fixture allows no more.
+	 */
+	private int iterate(Fixture fixture) throws Exception {
+		long limit = fixture.setUp();
+		int ops = 0;
+		long end = System.nanoTime() + iterationNanos;
+		long now;
+		do {
+			if (ops >= limit) {
+				break;
+			}
+			long start = System.nanoTime();
+			fixture.run();
+			now = System.nanoTime();
+			if (ops < MAX_SAMPLES) {
+				samples[ops] = now - start;
+			}
+			ops++;
+		} while (now < end && ops < Integer.MAX_VALUE);
+		return ops;
+	}
+
+	/**
+	 * Gets the bytes allocated by a thread so far, or -1 if the JVM cannot tell.
+	 */
+	private static long allocatedBytes(ThreadMXBean threads, long thread) {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(thread);
+		}
+		return -1;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+
+	private static long percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+	}
+
+	/**
+	 * Writes the results measured so far as a JSON document.
+	 * @param out	where to write the results
+	 * @throws IOException	if out cannot be written to
+	 */
+	public void writeJson(Writer out) throws IOException {
+		out.write("{\n");
+		out.write("  \"javaVersion\": " + quote(System.getProperty("java.version")) + ",\n");
+		out.write("  \"vm\": " + quote(System.getProperty("java.vm.name")) + ",\n");
+		out.write("  \"timestamp\": " + System.currentTimeMillis() + ",\n");
+		out.write("  \"warmupIterations\": " + warmupIterations + ",\n");
+		out.write("  \"iterations\": " + iterations + ",\n");
+		out.write("  \"iterationMillis\": " + iterationNanos / 1000000L + ",\n");
+		out.write("  \"results\": [");
+		for (int i = 0; i < results.size(); i++) {
+			out.write(i == 0 ? "\n    " : ",\n    ");
+			out.write(results.get(i).toJson());
+		}
+		out.write("\n  ]\n}\n");
+	}
+
+	private static String quote(String s) {
+		StringBuilder q = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if (ch == '"' || ch == '\\') {
+				q.append('\\').append(ch);
+			} else if (ch < ' ') {
+				q.append(String.format("\\u%04x", (int) ch));
+			} else {
+				q.append(ch);
+			}
+		}
+		return q.append('"').toString();
+	}
+
+	/**
+	 * The measurement of one operation on one calendar. Latencies are in nanoseconds.
+	 */
+	public static class Result {
+		private final String benchmark;
+		private final int size;
+		private final String shape;
+		private long operations;
+		private double opsPerSecond;
+		private double opsPerSecondError;
+		private double allocatedBytesPerOp;		// -1 if the JVM cannot tell
+		private long p50;
+		private long p90;
+		private long p99;
+		private long p999;
+		private long max;
+		private long gcCount;
+		private long gcMillis;
+
+		private Result(String benchmark, int size, String shape) {
+			this.benchmark = benchmark;
+			this.size = size;
+			this.shape = shape;
+		}
+
+		private String toJson() {
+			return "{\"benchmark\": " + quote(benchmark) + ", \"size\": " + size + ", \"shape\": " + quote(shape)
+					+ ", \"operations\": " + operations
+					+ ", \"opsPerSecond\": " + String.format(Locale.ROOT, "%.3f", opsPerSecond)
+					+ ", \"opsPerSecondError\": " + String.format(Locale.ROOT, "%.3f", opsPerSecondError)
+					+ ", \"allocatedBytesPerOp\": " + String.format(Locale.ROOT, "%.1f", allocatedBytesPerOp)
+					+ ", \"latencyNanos\": {\"p50\": " + p50 + ", \"p90\": " + p90 + ", \"p99\": " + p99
+					+ ", \"p99.9\": " + p999 + ", \"max\": " + max + "}"
+					+ ", \"gcCount\": " + gcCount + ", \"gcMillis\": " + gcMillis + "}";
+		}
+
+		/**
+		 * Prints a one-line summary of the result.
+		 * @return	a summary of the result
+		 */
+		public String toString() {
+			return String.format("%-14s %9d %-6s %14.1f ops/s  p50 %9d ns  p99 %11d ns  %10.1f B/op  %d GCs",
+					benchmark, size, shape, opsPerSecond, p50, p99, allocatedBytesPerOp, gcCount);
+		}
+	}
+
+}	// end of BenchmarkRunner class
@@ -0,0 +1,362 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Benchmarks of the CalendarModel operations the application spends its time in:
+ * load, create, checkConflict, getEvents, eventList, quit, search and findFreeSlots.
+ * Each operation is measured on synthetic calendars of several sizes, either dense
+ * (48 events a day) or sparse (4 events a day), and the results are written as JSON.
+ *
+ * Runs headless from the directory it should write events.txt into, e.g.
+ * 		java -Xmx8g -cp bin CalendarBenchmark --sizes 1000,100000 --out bench.json
+ * The quit benchmark is skipped if that directory already has an events.txt.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class CalendarBenchmark {
+
+	private static final String[] ALL_BENCHMARKS = {"load", "getEvents", "checkConflict", "eventList", "quit", "create", "search", "findFreeSlots"};
+	private static final int FIRST_DAY = CalendarModel.toEpochDay(2000, Calendar.JANUARY, 1);
+	private static final int SLOT_MINUTES = 30;		// events start on the hour and half hour
+	private static final int EVENT_MINUTES = 20;	// and last 20 minutes, leaving a gap
+	private static final int[] DENSE_SLOTS = slots(0, 48);
+	private static final int[] SPARSE_SLOTS = {16, 20, 28, 36};	// 08:00, 10:00, 14:00, 18:00
+	private static final int PROBES = 4096;			// precomputed arguments of an operation
+	private static final Logger MODEL_LOG = Logger.getLogger(CalendarModel.class.getName());	// held so its level sticks
+	private static final int CREATE_PROBES = 1 << 18;	// events created at most per iteration
+	private static final int SEARCH_PAGE = 9;		// results asked for, as by the search box
+	private static final int FREE_SLOTS = 10;		// free slots asked for
+
+	private final int size;
+	private final String shape;
+	private final int[] slots;
+	private final int days;
+	private final Path file;			// the calendar in the events.txt format
+	private CalendarModel model;
+	private int nextGap;				// next free gap between events for create
+
+	/**
+	 * Runs the benchmarks.
+	 * @param args	--sizes 1000,100000,1000000,10000000  --shapes dense,sparse
+	 * 				--benchmarks load,getEvents,...  --warmup 3  --iterations 5
+	 * 				--time 1000 (milliseconds per iteration)  --out bench-results.json
+	 * @throws Exception	if a benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		List<String> sizes = Arrays.asList("1000", "100000", "1000000", "10000000");
+		List<String> shapes = Arrays.asList("dense", "sparse");
+		List<String> benchmarks = Arrays.asList(ALL_BENCHMARKS);
+		int warmup = 3;
+		int iterations = 5;
+		long time = 1000;
+		String out = "bench-results.json";
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "--sizes":			sizes = Arrays.asList(value.split(",")); break;
+			case "--shapes":		shapes = Arrays.asList(value.split(",")); break;
+			case "--benchmarks":	benchmarks = Arrays.asList(value.split(",")); break;
+			case "--warmup":		warmup = Integer.parseInt(value); break;
+			case "--iterations":	iterations = Integer.parseInt(value); break;
+			case "--time":			time = Long.parseLong(value); break;
+			case "--out":			out = value; break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		if (args.length % 2 != 0) {
+			throw new IllegalArgumentException("Missing value for " + args[args.length - 1]);
+		}
+
+		// The model logs loads, saves and listings; keep them out of the measurements
+		MODEL_LOG.setLevel(Level.OFF);
+		PrintStream console = System.out;
+		boolean canQuit = !Files.exists(Paths.get("events.txt"));
+		if (!canQuit && benchmarks.contains("quit")) {
+			console.println("Skipping quit: events.txt already exists in this directory.");
+		}
+
+		BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, time);
+		Path dir = Files.createTempDirectory("calendar-bench");
+		try {
+			for (String shape : shapes) {
+				for (String size : sizes) {
+					CalendarBenchmark b = new CalendarBenchmark(Integer.parseInt(size), shape, dir);
+					for (String name : benchmarks) {
+						if (name.equals("quit") && !canQuit) {
+							continue;
+						}
+						console.println(runner.measure(name, b.size, shape, b.fixture(name)));
+					}
+					b.close();
+				}
+			}
+		} finally {
+			if (canQuit) {
+				Files.deleteIfExists(Paths.get("events.txt"));
+			}
+			for (File f : dir.toFile().listFiles()) {
+				f.delete();
+			}
+			Files.delete(dir);
+		}
+
+		Writer json = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out), StandardCharsets.UTF_8));
+		try {
+			runner.writeJson(json);
+		} finally {
+			json.close();
+		}
+		console.println("Results written to " + out);
+	}
+
+	/**
+	 * Generates a calendar and writes it in the events.txt format.
+	 */
+	private CalendarBenchmark(int size, String shape, Path dir) throws IOException {
+		this.size = size;
+		this.shape = shape;
+		if (shape.equals("dense")) {
+			this.slots = DENSE_SLOTS;
+		} else if (shape.equals("sparse")) {
+			this.slots = SPARSE_SLOTS;
+		} else {
+			throw new IllegalArgumentException("Unknown shape " + shape);
+		}
+		this.days = (size + slots.length - 1) / slots.length;
+		this.file = dir.resolve(shape + "-" + size + ".txt");
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file.toFile()), StandardCharsets.UTF_8), 1 << 16);
+		try {
+			for (int i = 0; i < size; i++) {
+				int start = slots[i % slots.length] * SLOT_MINUTES;
+				new Event("Event " + i, FIRST_DAY + i / slots.length, start, start + EVENT_MINUTES).appendTo(out);
+				out.write('\n');
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static int[] slots(int from, int to) {
+		int[] slots = new int[to - from];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = from + i;
+		}
+		return slots;
+	}
+
+	/**
+	 * Gets the calendar loaded from the generated file, loading it the first time.
+	 */
+	private CalendarModel model() throws IOException {
+		if (model == null) {
+			model = load();
+			nextGap = 0;
+		}
+		return model;
+	}
+
+	private CalendarModel load() throws IOException {
+		CalendarModel loaded = new CalendarModel();
+		BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+		try {
+			loaded.load(in);
+		} finally {
+			in.close();
+		}
+		return loaded;
+	}
+
+	private void close() {
+		model = null;
+	}
+
+	/**
+	 * Gets the fixture of a benchmark on this calendar.
+	 */
+	private BenchmarkRunner.Fixture fixture(String name) throws IOException {
+		final Random random = new Random(42);
+		switch (name) {
+		case "load":
+			return new BenchmarkRunner.Fixture() {
+				public long setUp() {
+					return Long.MAX_VALUE;
+				}
+				public void run() throws IOException {
+					load();
+				}
+			};
+		case "getEvents":
+			// Select a random day, then format its events as the View does
+			return new BenchmarkRunner.Fixture() {
+				private int[] years = new int[PROBES];
+				private int[] months = new int[PROBES];
+				private int[] dates = new int[PROBES];
+				private int next;
+				private Calendar c;
+
+				public long setUp() throws IOException {
+					c = model().getCalendar();
+					for (int i = 0; i < PROBES; i++) {
+						String date = Event.formatDate(FIRST_DAY + random.nextInt(days));
+						months[i] = Integer.parseInt(date.substring(0, 2)) - 1;
+						dates[i] = Integer.parseInt(date.substring(3, 5));
+						years[i] = Integer.parseInt(date.substring(6));
+					}
+					return Long.MAX_VALUE;
+				}
+				public void run() {
+					int i = next++ & (PROBES - 1);
+					c.set(years[i], months[i], dates[i]);
+					model.getEvents();
+				}
+			};
+		case "checkConflict":
+			// Half of the probes overlap an event, half fall in the gap after one
+			return new BenchmarkRunner.Fixture() {
+				private String[] dates = new String[PROBES];
+				private Event[] events = new Event[PROBES];
+				private int next;
+
+				public long setUp() throws IOException {
+					model();
+					for (int i = 0; i < PROBES; i++) {
+						int day = FIRST_DAY + random.nextInt(days);
+						int start = slots[random.nextInt(slots.length)] * SLOT_MINUTES + (i % 2 == 0 ? 5 : EVENT_MINUTES + 2);
+						dates[i] = Event.formatDate(day);
+						events[i] = new Event("Probe", day, start, start + 5);
+					}
+					return Long.MAX_VALUE;
+				}
+				public void run() {
+					int i = next++ & (PROBES - 1);
+					model.checkConflict(dates[i], events[i]);
+				}
+			};
+		case "eventList":
+			return new BenchmarkRunner.Fixture() {
+				private Writer discard = new Writer() {
+					public void write(char[] cbuf, int off, int len) {
+					}
+					public Writer append(CharSequence csq) {
+						return this;
+					}
+					public Writer append(char c) {
+						return this;
+					}
+					public void flush() {
+					}
+					public void close() {
+					}
+				};
+
+				public long setUp() throws IOException {
+					model();
+					return Long.MAX_VALUE;
+				}
+				public void run() throws IOException {
+					model.eventList(discard);
+				}
+			};
+		case "quit":
+			return new BenchmarkRunner.Fixture() {
+				public long setUp() throws IOException {
+					model();
+					return Long.MAX_VALUE;
+				}
+				public void run() {
+					model.quit();
+				}
+			};
+		case "create":
+			// Fills the gaps between the events, reloading the calendar once they are full
+			return new BenchmarkRunner.Fixture() {
+				private int gaps = days * slots.length;
+				private String[] dates = new String[Math.min(gaps, CREATE_PROBES)];
+				private Event[] events = new Event[dates.length];
+				private int next;
+
+				public long setUp() throws IOException {
+					if (nextGap >= gaps) {
+						model = null;
+					}
+					model();
+					int count = Math.min(gaps - nextGap, dates.length);
+					for (int i = 0; i < count; i++) {
+						int gap = nextGap + i;
+						int day = FIRST_DAY + gap % days;
+						int start = slots[gap / days] * SLOT_MINUTES + EVENT_MINUTES + 2;
+						dates[i] = Event.formatDate(day);
+						events[i] = new Event("Created", day, start, start + 5);
+					}
+					next = 0;
+					return count;
+				}
+				public void run() {
+					model.create(dates[next], events[next]);
+					next++;
+					nextGap++;
+				}
+			};
+		case "search":
+			// Types the start of a random title, one keystroke per search, as in the search box
+			return new BenchmarkRunner.Fixture() {
+				private String[] queries = new String[PROBES];
+				private int next;
+
+				public long setUp() throws IOException {
+					model().indexTitles();
+					for (int i = 0; i < PROBES; i++) {
+						String title = "Event " + random.nextInt(size);
+						queries[i] = title.substring(0, 1 + random.nextInt(title.length()));
+					}
+					return Long.MAX_VALUE;
+				}
+				public void run() {
+					int i = next++ & (PROBES - 1);
+					model.search(queries[i], 0, SEARCH_PAGE);
+				}
+			};
+		case "findFreeSlots":
+			// Looks for an hour within working hours over a year from a random day
+			return new BenchmarkRunner.Fixture() {
+				private int[] fromDays = new int[PROBES];
+				private int next;
+
+				public long setUp() throws IOException {
+					model();
+					for (int i = 0; i < PROBES; i++) {
+						fromDays[i] = FIRST_DAY + random.nextInt(days);
+					}
+					return Long.MAX_VALUE;
+				}
+				public void run() {
+					int from = fromDays[next++ & (PROBES - 1)];
+					model.findFreeSlots(from, from + 364, 60, 8 * 60, 18 * 60, FREE_SLOTS);
+				}
+			};
+		default:
+			throw new IllegalArgumentException("Unknown benchmark " + name);
+		}
+	}
+
+}	// end of CalendarBenchmark class
@@ -0,0 +1,194 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load test of the calendar's HTTP API. Many clients send requests at the same time, a
+ * mix of day, month and free/busy queries and event creations, and the throughput and
+ * latency percentiles are reported. Without a URL the test starts a server on a free
+ * local port over a generated calendar of a year of events.
+ *
+ * 		java -cp bin CalendarLoadTest [clients] [requests per client] [url]
+ *
+ * Exits with status 1 if a request fails or gets an unexpected status.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class CalendarLoadTest {
+
+	private static final int FIRST_DAY = CalendarModel.toEpochDay(2024, Calendar.JANUARY, 1);
+	private static final int DAYS = 366;
+	private static final int[] SLOTS = {8 * 60, 10 * 60, 14 * 60, 16 * 60};	// starts of the generated events
+
+	/**
+	 * Runs the load test.
+	 * @param args	clients, requests per client and the URL of a running server (all optional)
+	 * @throws Exception	if the server cannot be started
+	 */
+	public static void main(String[] args) throws Exception {
+		final int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		final int requests = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		String url = args.length > 2 ? args[2] : null;
+		// Keep a connection per client open between its requests
+		System.setProperty("http.maxConnections", Integer.toString(clients));
+
+		CalendarServer server = null;
+		CalendarModel model = null;
+		if (url == null) {
+			System.setProperty("java.awt.headless", "true");
+			model = new CalendarModel();
+			EventBatch batch = new EventBatch("generated");
+			for (int day = 0; day < DAYS; day++) {
+				for (int start : SLOTS) {
+					batch.add(new Event("Event " + batch.size(), FIRST_DAY + day, start, start + 60), batch.size() + 1);
+				}
+			}
+			model.addAll(batch, new LoadReport());
+			server = new CalendarServer(model, 0);
+			server.start();
+			url = "http://127.0.0.1:" + server.getPort();
+		}
+
+		final String base = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+		final long[][] latencies = new long[clients][requests];
+		final AtomicInteger created = new AtomicInteger();
+		final AtomicInteger conflicts = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+		final CountDownLatch ready = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(clients);
+		ExecutorService executor = CalendarServer.newRequestExecutor();
+		if (executor instanceof ThreadPoolExecutor) {
+			// Without virtual threads, every client needs a platform thread of its own
+			executor.shutdown();
+			executor = Executors.newFixedThreadPool(clients);
+		}
+		for (int c = 0; c < clients; c++) {
+			final int client = c;
+			executor.execute(new Runnable() {
+				public void run() {
+					Random random = new Random(client);
+					try {
+						ready.await();
+						for (int i = 0; i < requests; i++) {
+							long start = System.nanoTime();
+							int status = request(base, random);
+							latencies[client][i] = System.nanoTime() - start;
+							if (status == 201) {
+								created.incrementAndGet();
+							} else if (status == 409) {
+								conflicts.incrementAndGet();
+							} else if (status != 200) {
+								failures.incrementAndGet();
+							}
+						}
+					} catch (IOException e) {
+						failures.incrementAndGet();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			});
+		}
+		long start = System.nanoTime();
+		ready.countDown();
+		done.await();
+		long elapsed = System.nanoTime() - start;
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		if (server != null) {
+			server.stop();
+		}
+
+		long[] all = new long[clients * requests];
+		for (int c = 0; c < clients; c++) {
+			System.arraycopy(latencies[c], 0, all, c * requests, requests);
+		}
+		Arrays.sort(all);
+		System.out.println(String.format(Locale.ROOT, "%d clients x %d requests in %d ms: %.1f requests/s",
+				clients, requests, elapsed / 1000000, all.length * 1e9 / elapsed));
+		System.out.println(String.format(Locale.ROOT, "latency p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+				percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), all[all.length - 1] / 1e6));
+		System.out.println(created.get() + " events created, " + conflicts.get() + " conflicts, " + failures.get() + " failures");
+		if (model != null) {
+			// Time spent in the model, apart from HTTP
+			System.out.println("server side:\n" + model.getMetrics());
+		}
+		if (failures.get() > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Sends a random request: mostly day queries, then months, free/busy and creations.
+	 * @return	the status of the response
+	 */
+	private static int request(String base, Random random) throws IOException {
+		String date = Event.formatDate(FIRST_DAY + random.nextInt(DAYS));
+		int kind = random.nextInt(100);
+		if (kind < 60) {
+			return send(base + "/events?date=" + date, null);
+		} else if (kind < 75) {
+			return send(base + "/events?month=" + date.substring(0, 3) + date.substring(6), null);
+		} else if (kind < 85) {
+			String to = Event.formatDate(Event.parseEpochDay(date) + 6);
+			return send(base + "/freebusy?from=" + date + "&to=" + to + "&duration=30", null);
+		} else {
+			int start = 8 * 60 + random.nextInt(10 * 60);
+			return send(base + "/events", "{\"title\":\"Booked " + start + "\",\"date\":\"" + date + "\",\"start\":\""
+					+ Event.formatTime(start) + "\",\"end\":\"" + Event.formatTime(start + 15) + "\"}");
+		}
+	}
+
+	/**
+	 * Sends a GET request, or a POST request if there is a JSON body, and reads the response.
+	 */
+	private static int send(String url, String json) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		if (json != null) {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/json");
+			OutputStream out = connection.getOutputStream();
+			try {
+				out.write(json.getBytes(StandardCharsets.UTF_8));
+			} finally {
+				out.close();
+			}
+		}
+		int status = connection.getResponseCode();
+		// Reading the whole body lets the connection be reused
+		InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while (in != null && (n = in.read(buffer)) > 0) {
+			body.write(buffer, 0, n);
+		}
+		if (in != null) {
+			in.close();
+		}
+		return status;
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6;
+	}
+
+}	// end of CalendarLoadTest class
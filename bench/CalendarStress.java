@@ -0,0 +1,177 @@
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress test of creating events from several threads while other threads read the
+ * calendar. Producers create random events on a few days, so most of them race for the
+ * same days and many conflict; readers keep checking that no day ever shows overlapping
+ * or unsorted events. At the end every created event must be on the calendar exactly
+ * once and the month summaries must match the events.
+ *
+ * 		java -cp bin CalendarStress [producers] [readers] [events per producer] [rounds]
+ *
+ * Exits with status 1 if an invariant is broken.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class CalendarStress {
+
+	private static final int FIRST_DAY = CalendarModel.toEpochDay(2024, Calendar.FEBRUARY, 1);
+	private static final int DAYS = 29;		// February 2024, so every event is in one month
+
+	/**
+	 * Runs the stress test.
+	 * @param args	producers, readers, events per producer and rounds (all optional)
+	 * @throws InterruptedException	if interrupted while waiting for the threads
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int producers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int readers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int eventsPerProducer = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+		List<String> failures = new ArrayList<String>();
+		for (int round = 1; round <= rounds && failures.isEmpty(); round++) {
+			long start = System.nanoTime();
+			int created = round(producers, readers, eventsPerProducer, round, failures);
+			System.out.printf("round %d: %d producers, %d readers, %d of %d events created in %d ms%n",
+					round, producers, readers, created, producers * eventsPerProducer,
+					(System.nanoTime() - start) / 1000000);
+		}
+		for (String failure : failures) {
+			System.out.println("FAILED: " + failure);
+		}
+		if (!failures.isEmpty()) {
+			System.exit(1);
+		}
+		System.out.println("OK");
+	}
+
+	/**
+	 * Runs one round on a new calendar model and checks the result.
+	 * @return	the number of events created
+	 */
+	private static int round(int producers, int readers, final int eventsPerProducer, int seed,
+			final List<String> failures) throws InterruptedException {
+		final CalendarModel model = new CalendarModel();
+		// Looked at before the producers start, so it is kept up to date while they run
+		final MonthDensity density = model.getMonthDensity(2024, Calendar.FEBRUARY);
+		final AtomicInteger created = new AtomicInteger();
+		final AtomicBoolean producing = new AtomicBoolean(true);
+		final CountDownLatch ready = new CountDownLatch(1);
+		final List<List<Event>> accepted = new ArrayList<List<Event>>();
+		List<Thread> threads = new ArrayList<Thread>();
+
+		for (int p = 0; p < producers; p++) {
+			final Random random = new Random(seed * 1000 + p);
+			final List<Event> mine = new ArrayList<Event>();
+			accepted.add(mine);
+			threads.add(new Thread(new Runnable() {
+				public void run() {
+					await(ready);
+					for (int i = 0; i < eventsPerProducer; i++) {
+						int day = FIRST_DAY + random.nextInt(DAYS);
+						int start = random.nextInt(24 * 4) * 15;
+						int end = Math.min(start + 5 + random.nextInt(40), 24 * 60 - 1);
+						Event e = new Event("P" + mine.size(), day, start, end);
+						if (model.create(Event.formatDate(day), e)) {
+							mine.add(e);
+							created.incrementAndGet();
+						}
+					}
+				}
+			}, "producer-" + p));
+		}
+		for (int r = 0; r < readers; r++) {
+			final Random random = new Random(-seed * 1000 - r);
+			threads.add(new Thread(new Runnable() {
+				public void run() {
+					await(ready);
+					while (producing.get()) {
+						int from = FIRST_DAY + random.nextInt(DAYS);
+						checkDays(model.eventsBetween(from, from + random.nextInt(5)), failures);
+						model.getEvents(from);
+						density.getEventCount(from - FIRST_DAY + 1);
+					}
+				}
+			}, "reader-" + r));
+		}
+
+		for (Thread t : threads) {
+			t.start();
+		}
+		ready.countDown();
+		for (int p = 0; p < producers; p++) {
+			threads.get(p).join();
+		}
+		producing.set(false);
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		// Every created event is on the calendar exactly once, and nothing else is
+		List<Event> all = model.eventsBetween(FIRST_DAY, FIRST_DAY + DAYS - 1);
+		checkDays(all, failures);
+		if (all.size() != created.get()) {
+			fail(failures, all.size() + " events on the calendar, but " + created.get() + " were created");
+		}
+		for (List<Event> mine : accepted) {
+			for (Event e : mine) {
+				if (model.getConflicts(Event.formatDate(e.getEpochDay()), e).size() != 1) {
+					fail(failures, "created event missing or duplicated: " + e.printEvent());
+				}
+			}
+		}
+		for (int day = 1; day <= DAYS; day++) {
+			List<Event> events = model.eventsBetween(FIRST_DAY + day - 1, FIRST_DAY + day - 1);
+			int minutes = 0;
+			for (Event e : events) {
+				minutes += e.getEndMinute() - e.getStartMinute();
+			}
+			if (density.getEventCount(day) != events.size() || density.getBusyMinutes(day) != minutes) {
+				fail(failures, "month summary of day " + day + " counts " + density.getEventCount(day)
+						+ " events, the calendar has " + events.size());
+			}
+		}
+		return created.get();
+	}
+
+	/**
+	 * Checks that the events of each day are sorted by start time and do not overlap.
+	 */
+	private static void checkDays(List<Event> events, List<String> failures) {
+		for (int i = 1; i < events.size(); i++) {
+			Event a = events.get(i - 1);
+			Event b = events.get(i);
+			if (a.getEpochDay() > b.getEpochDay()) {
+				fail(failures, "days out of order: " + a.printEvent() + " before " + b.printEvent());
+			}
+			else if (a.getEpochDay() == b.getEpochDay() && a.getEndMinute() >= b.getStartMinute()) {
+				fail(failures, "overlapping events: " + a.printEvent() + " and " + b.printEvent());
+			}
+		}
+	}
+
+	private static void fail(List<String> failures, String failure) {
+		synchronized (failures) {
+			if (failures.size() < 20) {
+				failures.add(failure);
+			}
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}	// end of CalendarStress class
@@ -0,0 +1,159 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.AbstractListModel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * A list model of every single event of a calendar model in chronological order, for a
+ * JList that shows them all. Only the number of events of each day is kept; the events
+ * themselves are fetched a page at a time when the list paints the rows that show them,
+ * and only the pages most recently painted are kept, so scrolling through years of events
+ * takes about the memory of a screenful of them.
+ *
+ * The model listens to the calendar model for changes once attached to it.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class AgendaListModel extends AbstractListModel<Event> implements ChangeListener {
+
+	private static final long serialVersionUID = 1L;
+	private static final int PAGE_SIZE = 256;		// rows fetched at a time
+	private static final int CACHED_PAGES = 8;		// pages kept, several screens' worth
+
+	private final CalendarModel model;
+	private int[] days = new int[0];				// epoch days with events, in order
+	private int[] firstRows = new int[0];			// row of the first event of each day
+	private int size;
+	private final Map<Integer, List<Event>> pages = new LinkedHashMap<Integer, List<Event>>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<Integer, List<Event>> eldest) {
+			return size() > CACHED_PAGES;
+		}
+	};
+
+	/**
+	 * Constructs a list model of the events of a calendar model.
+	 * @param model		the calendar model
+	 */
+	public AgendaListModel(CalendarModel model) {
+		this.model = model;
+		count();
+	}
+
+	/**
+	 * Gets the number of events, which is the number of rows.
+	 * @return	the number of events
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the event of a row, fetching the page of rows around it if it is not kept.
+	 * @param row	the row
+	 * @return		the event of the row, or null if the events changed meanwhile so that
+	 * 				the row has none
+	 */
+	public Event getElementAt(int row) {
+		if (row < 0 || row >= size) {
+			return null;
+		}
+		int page = row / PAGE_SIZE;
+		List<Event> events = pages.get(page);
+		if (events == null) {
+			events = fetch(page);
+			pages.put(page, events);
+		}
+		int i = row - page * PAGE_SIZE;
+		return i < events.size() ? events.get(i) : null;
+	}
+
+	/**
+	 * Gets the row of the first event on or after a date, to jump to that date.
+	 * @param epochDay	the date as a day count since 01/01/1970
+	 * @return			the row, or the last row if there are no events from that date on,
+	 * 					or -1 if there are no events at all
+	 */
+	public int rowOf(int epochDay) {
+		int k = Arrays.binarySearch(days, epochDay);
+		if (k < 0) {
+			k = -k - 1;
+		}
+		return k < days.length ? firstRows[k] : size - 1;
+	}
+
+	/**
+	 * Recounts the events when the events of the calendar model change. The kept pages
+	 * are dropped, since a change moves every row after it.
+	 * @param e		the change
+	 */
+	public void stateChanged(ChangeEvent e) {
+		if (e instanceof CalendarChangeEvent && !((CalendarChangeEvent) e).is(CalendarChangeEvent.Kind.EVENTS_CHANGED)) {
+			return;
+		}
+		int oldSize = size;
+		count();
+		pages.clear();
+		if (size > oldSize) {
+			fireIntervalAdded(this, oldSize, size - 1);
+		} else if (size < oldSize) {
+			fireIntervalRemoved(this, size, oldSize - 1);
+		}
+		if (size > 0) {
+			fireContentsChanged(this, 0, size - 1);
+		}
+	}
+
+	/**
+	 * Counts the events of each day and the row each day starts at.
+	 */
+	private void count() {
+		long[] counts = model.countEventsByDay();
+		days = new int[counts.length];
+		firstRows = new int[counts.length];
+		int rows = 0;
+		for (int k = 0; k < counts.length; k++) {
+			days[k] = (int) (counts[k] >> 32);
+			firstRows[k] = rows;
+			rows += (int) counts[k];
+		}
+		size = rows;
+	}
+
+	/**
+	 * Fetches the events of a page of rows from the days they fall on.
+	 */
+	private List<Event> fetch(int page) {
+		int first = page * PAGE_SIZE;
+		int last = Math.min(first + PAGE_SIZE, size) - 1;
+		int firstDay = dayOfRow(first);
+		List<Event> events = model.getSingleEvents(days[firstDay], days[dayOfRow(last)]);
+		int from = Math.min(first - firstRows[firstDay], events.size());
+		int to = Math.min(from + PAGE_SIZE, events.size());
+		return events.subList(from, to);
+	}
+
+	/**
+	 * Gets the index of the day a row falls on.
+	 */
+	private int dayOfRow(int row) {
+		int low = 0;
+		int high = firstRows.length - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (firstRows[mid] <= row) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+}	// end of AgendaListModel class
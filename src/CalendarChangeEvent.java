@@ -0,0 +1,101 @@
+import java.util.EnumSet;
+import java.util.Set;
+
+import javax.swing.event.ChangeEvent;
+
+/**
+ * A change notification from the calendar model that says what changed, so a View only
+ * redraws what is affected. One event may stand for a burst of changes that the model
+ * coalesced into a single dispatch.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class CalendarChangeEvent extends ChangeEvent {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The kinds of change to the calendar model.
+	 */
+	public enum Kind {
+		/** A different day of the calendar is selected. */
+		DAY_SELECTED,
+		/** The selected day moved into a different month. */
+		MONTH_CHANGED,
+		/** Events were added to or removed from some days. */
+		EVENTS_CHANGED
+	}
+
+	private final Set<Kind> kinds;
+	private final int firstChangedDay;	// epoch days spanning the event changes
+	private final int lastChangedDay;
+
+	/**
+	 * Constructs a change event.
+	 * @param source			the calendar model that changed
+	 * @param kinds				the kinds of change
+	 * @param firstChangedDay	the first epoch day with changed events
+	 * @param lastChangedDay	the last epoch day with changed events
+	 */
+	public CalendarChangeEvent(Object source, Set<Kind> kinds, int firstChangedDay, int lastChangedDay) {
+		super(source);
+		this.kinds = kinds.isEmpty() ? EnumSet.noneOf(Kind.class) : EnumSet.copyOf(kinds);
+		this.firstChangedDay = firstChangedDay;
+		this.lastChangedDay = lastChangedDay;
+	}
+
+	/**
+	 * Checks if this event includes a kind of change.
+	 * @param kind	the kind of change
+	 * @return		true if the change happened
+	 */
+	public boolean is(Kind kind) {
+		return kinds.contains(kind);
+	}
+
+	/**
+	 * Checks if the events of a day changed.
+	 * @param epochDay	the epoch day to check
+	 * @return			true if events were added to or removed from that day
+	 */
+	public boolean eventsChangedOn(int epochDay) {
+		return kinds.contains(Kind.EVENTS_CHANGED) && firstChangedDay <= epochDay && epochDay <= lastChangedDay;
+	}
+
+	/**
+	 * Checks if the events of any day in a range changed.
+	 * @param fromDay	the first epoch day of the range
+	 * @param toDay		the last epoch day of the range
+	 * @return			true if events were added to or removed from a day in the range
+	 */
+	public boolean eventsChangedBetween(int fromDay, int toDay) {
+		return kinds.contains(Kind.EVENTS_CHANGED) && firstChangedDay <= toDay && fromDay <= lastChangedDay;
+	}
+
+	/**
+	 * Gets the first epoch day with changed events.
+	 * @return	the first epoch day with changed events
+	 */
+	public int getFirstChangedDay() {
+		return firstChangedDay;
+	}
+
+	/**
+	 * Gets the last epoch day with changed events.
+	 * @return	the last epoch day with changed events
+	 */
+	public int getLastChangedDay() {
+		return lastChangedDay;
+	}
+
+	/**
+	 * Prints a string representation of the change.
+	 * @return	a string representation of the change
+	 */
+	public String toString() {
+		return "CalendarChangeEvent" + kinds + (kinds.contains(Kind.EVENTS_CHANGED)
+				? " days " + firstChangedDay + ".." + lastChangedDay : "");
+	}
+
+}	// end of CalendarChangeEvent class
@@ -0,0 +1,162 @@
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+/**
+ * The selected date of one view of a calendar model. Every view navigates with a cursor
+ * of its own, so views never move each other's date and never share a Calendar with the
+ * threads that add events to the model. A cursor is not thread-safe: it belongs to the
+ * thread of its view.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class CalendarCursor {
+
+	private final CalendarModel model;
+	private final Calendar c = new GregorianCalendar();
+
+	/**
+	 * Constructs a cursor on today's date.
+	 * @param model		the calendar model the cursor moves over
+	 */
+	public CalendarCursor(CalendarModel model) {
+		this.model = model;
+	}
+
+	/**
+	 * Constructs a cursor on a date.
+	 * @param model		the calendar model the cursor moves over
+	 * @param epochDay	the date as a day count since 01/01/1970
+	 */
+	public CalendarCursor(CalendarModel model, int epochDay) {
+		this.model = model;
+		moveTo(epochDay);
+	}
+
+	/**
+	 * Gets the Calendar holding the date of this cursor.
+	 * @return	the Calendar of this cursor
+	 */
+	public Calendar getCalendar() {
+		return c;
+	}
+
+	/**
+	 * Gets the date of this cursor as a day count since 01/01/1970.
+	 * @return	the epoch day of the date
+	 */
+	public int getEpochDay() {
+		return CalendarModel.toEpochDay(getYear(), getMonth(), getDay());
+	}
+
+	/**
+	 * Gets the year of the date of this cursor.
+	 * @return	the year
+	 */
+	public int getYear() {
+		return c.get(Calendar.YEAR);
+	}
+
+	/**
+	 * Gets the month of the date of this cursor.
+	 * @return	the month (0 for January, as in Calendar.MONTH)
+	 */
+	public int getMonth() {
+		return c.get(Calendar.MONTH);
+	}
+
+	/**
+	 * Gets the day of the month of the date of this cursor.
+	 * @return	the day of the month
+	 */
+	public int getDay() {
+		return c.get(Calendar.DATE);
+	}
+
+	/**
+	 * Gets the day of the week of the date of this cursor.
+	 * @return	the day of the week (0 for Sunday)
+	 */
+	public int getDayOfWeek() {
+		return c.get(Calendar.DAY_OF_WEEK) - 1;
+	}
+
+	/**
+	 * Gets the number of days in the month of this cursor.
+	 * @return	the number of days in the month
+	 */
+	public int getDaysInMonth() {
+		return Event.lengthOfMonth(getYear(), getMonth() + 1);
+	}
+
+	/**
+	 * Gets the day of the week the month of this cursor starts on.
+	 * @return	the day of the week of the first of the month (0 for Sunday)
+	 */
+	public int getStartingDay() {
+		// Counted from 01/01/1970, a Thursday
+		return Math.floorMod(CalendarModel.toEpochDay(getYear(), getMonth(), 1) + 4, 7);
+	}
+
+	/**
+	 * Gets the date of this cursor in MM/dd/yyyy format.
+	 * @return	the date in MM/dd/yyyy format
+	 */
+	public String getDate() {
+		return Event.formatDate(getEpochDay());
+	}
+
+	/**
+	 * Moves to another day of the same month.
+	 * @param day	the day of the month
+	 */
+	public void setDay(int day) {
+		c.set(getYear(), getMonth(), day);
+	}
+
+	/**
+	 * Moves to a date.
+	 * @param epochDay	the date as a day count since 01/01/1970
+	 * @return			true if the month changed
+	 */
+	public boolean moveTo(int epochDay) {
+		int month = getMonth();
+		int year = getYear();
+		int date = Event.toYearMonthDay(epochDay);
+		c.set(date / 10000, date / 100 % 100 - 1, date % 100);
+		return month != getMonth() || year != getYear();
+	}
+
+	/**
+	 * Moves to the previous day.
+	 * @return	true if the month changed
+	 */
+	public boolean previousDay() {
+		return moveTo(getEpochDay() - 1);
+	}
+
+	/**
+	 * Moves to the next day.
+	 * @return	true if the month changed
+	 */
+	public boolean nextDay() {
+		return moveTo(getEpochDay() + 1);
+	}
+
+	/**
+	 * Gets the events on the date of this cursor, formatted like CalendarModel.getEvents().
+	 * @return	the date followed by one line per event
+	 */
+	public String getEvents() {
+		return model.getEvents(getEpochDay());
+	}
+
+	/**
+	 * Gets how busy each day of the month of this cursor is.
+	 * @return	the summary of the month
+	 */
+	public MonthDensity getMonthDensity() {
+		return model.getMonthDensity(getYear(), getMonth());
+	}
+
+}	// end of CalendarCursor class
@@ -0,0 +1,165 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of a calendar model, for watching how the calendar
+ * behaves under load. The model records into it as it runs; once registered, JMX clients
+ * such as jconsole can read it under SimpleCalendar:type=CalendarModel.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class CalendarMetrics implements CalendarMetricsMXBean {
+
+	/** The name the metrics are registered under. */
+	public static final String OBJECT_NAME = "SimpleCalendar:type=CalendarModel";
+	private static final Logger LOG = Logger.getLogger(CalendarMetrics.class.getName());
+
+	final LatencyHistogram create = new LatencyHistogram();
+	final LatencyHistogram checkConflict = new LatencyHistogram();
+	final LatencyHistogram getEvents = new LatencyHistogram();
+	final LatencyHistogram notifyView = new LatencyHistogram();
+
+	private final CalendarModel model;
+	private final AtomicLong conflictsRejected = new AtomicLong();
+	private final AtomicLong saveCount = new AtomicLong();
+	private volatile long lastLoadMillis;
+	private volatile long lastLoadBytes;
+	private volatile long lastSaveMillis;
+	private volatile long lastSaveBytes;
+
+	/**
+	 * Constructs the metrics of a calendar model.
+	 * @param model		the calendar model
+	 */
+	public CalendarMetrics(CalendarModel model) {
+		this.model = model;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server under OBJECT_NAME. A failure
+	 * is logged rather than thrown, as the calendar works without it.
+	 */
+	public void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+		} catch (JMException e) {
+			LOG.log(Level.WARNING, "Cannot register the calendar metrics", e);
+		}
+	}
+
+	/**
+	 * Records events rejected because they conflict with another event.
+	 * @param count		the number of events rejected
+	 */
+	void conflicts(int count) {
+		conflictsRejected.addAndGet(count);
+	}
+
+	/**
+	 * Records a load of the stored events.
+	 * @param startNanos	the value of System.nanoTime() when the load started
+	 * @param bytes			the size of the files read
+	 */
+	void loaded(long startNanos, long bytes) {
+		lastLoadMillis = (System.nanoTime() - startNanos) / 1000000;
+		lastLoadBytes = bytes;
+	}
+
+	/**
+	 * Records a save of the events.
+	 * @param startNanos	the value of System.nanoTime() when the save started
+	 * @param bytes			the size of the files written
+	 */
+	void saved(long startNanos, long bytes) {
+		lastSaveMillis = (System.nanoTime() - startNanos) / 1000000;
+		lastSaveBytes = bytes;
+		saveCount.incrementAndGet();
+	}
+
+	public int getEventCount() {
+		return model.getEventCount();
+	}
+
+	public int getDayCount() {
+		return model.getDayCount();
+	}
+
+	public int getRecurringEventCount() {
+		return model.getRecurring().size();
+	}
+
+	public long getConflictsRejected() {
+		return conflictsRejected.get();
+	}
+
+	public long getLastLoadMillis() {
+		return lastLoadMillis;
+	}
+
+	public long getLastLoadBytes() {
+		return lastLoadBytes;
+	}
+
+	public long getLastSaveMillis() {
+		return lastSaveMillis;
+	}
+
+	public long getLastSaveBytes() {
+		return lastSaveBytes;
+	}
+
+	public long getSaveCount() {
+		return saveCount.get();
+	}
+
+	public LatencyHistogram.Summary getCreateLatency() {
+		return create.getSummary();
+	}
+
+	public LatencyHistogram.Summary getCheckConflictLatency() {
+		return checkConflict.getSummary();
+	}
+
+	public LatencyHistogram.Summary getGetEventsLatency() {
+		return getEvents.getSummary();
+	}
+
+	public LatencyHistogram.Summary getNotifyViewLatency() {
+		return notifyView.getSummary();
+	}
+
+	public void resetLatencies() {
+		create.reset();
+		checkConflict.reset();
+		getEvents.reset();
+		notifyView.reset();
+	}
+
+	/**
+	 * Prints a string representation of the metrics.
+	 * @return	the counters and latencies, one per line
+	 */
+	public String toString() {
+		return "events " + getEventCount() + ", days " + getDayCount() + ", recurring " + getRecurringEventCount()
+				+ ", conflicts rejected " + getConflictsRejected()
+				+ "\nlast load " + lastLoadMillis + " ms (" + lastLoadBytes + " bytes), last save "
+				+ lastSaveMillis + " ms (" + lastSaveBytes + " bytes), " + getSaveCount() + " saves"
+				+ "\ncreate:        " + getCreateLatency()
+				+ "\ncheckConflict: " + getCheckConflictLatency()
+				+ "\ngetEvents:     " + getGetEventsLatency()
+				+ "\nnotifyView:    " + getNotifyViewLatency();
+	}
+
+}	// end of CalendarMetrics class
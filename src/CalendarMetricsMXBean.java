@@ -0,0 +1,94 @@
+/**
+ * The management interface of the calendar metrics, as shown by JMX clients such as
+ * jconsole under SimpleCalendar:type=CalendarModel.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public interface CalendarMetricsMXBean {
+
+	/**
+	 * Gets the number of single events on the calendar.
+	 * @return	the number of single events
+	 */
+	int getEventCount();
+
+	/**
+	 * Gets the number of days with single events on the calendar.
+	 * @return	the number of days with events
+	 */
+	int getDayCount();
+
+	/**
+	 * Gets the number of recurring events on the calendar.
+	 * @return	the number of recurring events
+	 */
+	int getRecurringEventCount();
+
+	/**
+	 * Gets the number of events that were not added because they conflict with another
+	 * event, whether created or loaded.
+	 * @return	the number of conflicting events rejected
+	 */
+	long getConflictsRejected();
+
+	/**
+	 * Gets how long the last load of the stored events took.
+	 * @return	the duration in milliseconds, or 0 before the first load
+	 */
+	long getLastLoadMillis();
+
+	/**
+	 * Gets the size of the files read by the last load of the stored events.
+	 * @return	the size in bytes
+	 */
+	long getLastLoadBytes();
+
+	/**
+	 * Gets how long the last save of the events took.
+	 * @return	the duration in milliseconds, or 0 before the first save
+	 */
+	long getLastSaveMillis();
+
+	/**
+	 * Gets the size of the files written by the last save of the events.
+	 * @return	the size in bytes
+	 */
+	long getLastSaveBytes();
+
+	/**
+	 * Gets the number of saves of the events, including compactions of the journal.
+	 * @return	the number of saves
+	 */
+	long getSaveCount();
+
+	/**
+	 * Gets the latencies of creating events.
+	 * @return	the latencies in microseconds
+	 */
+	LatencyHistogram.Summary getCreateLatency();
+
+	/**
+	 * Gets the latencies of checking events for conflicts.
+	 * @return	the latencies in microseconds
+	 */
+	LatencyHistogram.Summary getCheckConflictLatency();
+
+	/**
+	 * Gets the latencies of getting the events of a day.
+	 * @return	the latencies in microseconds
+	 */
+	LatencyHistogram.Summary getGetEventsLatency();
+
+	/**
+	 * Gets the latencies of dispatching a change to the Views.
+	 * @return	the latencies in microseconds
+	 */
+	LatencyHistogram.Summary getNotifyViewLatency();
+
+	/**
+	 * Forgets the latencies recorded so far, to measure from now on.
+	 */
+	void resetLatencies();
+
+}	// end of CalendarMetricsMXBean interface
@@ -1,19 +1,54 @@
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import javax.swing.event.ChangeEvent;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.event.ChangeListener;
 
 enum MONTHS {
@@ -25,30 +60,124 @@ enum DAYS {
 }
 
 /**
- * A calendar model that holds events using a tree map with a date of the event as the key and
- * an array list of events as the value. Functionalities include the creation and deletion
- * of events, viewing of events on specific dates, a listing of all events of the calendar
- * and the loading/creation of an events.txt file that holds a list of all events.
+ * A calendar model that holds events in an EventTree, a persistent balanced tree with
+ * the epoch day of the event as the key and a day schedule of events as the value, so
+ * the tree iterates in chronological order. Functionalities include the creation and
+ * deletion of events, viewing of events on specific dates, a listing of all events of
+ * the calendar and the loading/creation of an events.txt file that holds a list of all
+ * events. Events are immutable and shared by every version of the tree; an event is
+ * changed by replacing it (see update).
+ * 
+ * Events may be created from several threads while a View reads them. Each day's schedule
+ * is copied on write, and each change publishes a new version of an immutable event tree
+ * that shares all but the changed path with the old one, so readers never lock and may
+ * keep a version as long as they like (see getVersion). Creating an event checks for
+ * conflicts and inserts under a lock striped by day. An event's id is its date and start
+ * time, so deleting, updating or moving it by id finds it in O(log n) with no index of
+ * its own. The schedules replaced by the last changes are kept so that these changes
+ * can be undone and redone (see undo and redo). The navigation
+ * methods (getMonth, nextDay, etc.) move this model's own cursor, which belongs to the main
+ * View; other Views navigate with a cursor of their own (see newCursor).
+ * 
+ * Recurring events are kept as rules, apart from the single events, and stored in
+ * recurring.txt. Their occurrences are expanded one month at a time when a month is looked
+ * at, and the most recently used months are cached; checking an event for conflicts asks
+ * each rule whether it occurs that day instead of expanding it.
+ * 
+ * events.snap is the store the events are kept in between runs: it is memory mapped, and
+ * the days of a month are decoded into the model when the month is looked at, with the
+ * months before and after it decoded in the background. Once the decoded events exceed
+ * the memory budget (-Dcalendar.cache.mb, 64 MB by default, 0 for no limit), the months
+ * least recently looked at are evicted and decoded again when they are next needed; the
+ * month on screen and the months next to it are never evicted. Going through every event
+ * (saving, exporting, building the title index) reads the days not decoded straight from
+ * events.snap without keeping them. Days changed since events.snap was written stay in
+ * memory until compaction writes them to it.
  * 
  * @author Priscilla Ng
  *
  */
 public class CalendarModel {
-	private Map<String, ArrayList<Event>> dateToEvents;	// data structure holding events
-	private int daysInMonth;
-	private Calendar c = new GregorianCalendar();
+	private final AtomicReference<EventTree> dateToEvents = new AtomicReference<EventTree>(EventTree.EMPTY);	// events keyed by epoch day, one version at a time
+	private static final int DAY_LOCKS = 64;		// lock stripes for changing days, a power of 2
+	private final ReentrantLock[] dayLocks = new ReentrantLock[DAY_LOCKS];
+	private final ReentrantReadWriteLock storeLock = new ReentrantReadWriteLock();	// changes vs. compaction
+	private final CalendarCursor cursor = new CalendarCursor(this);	// the main View's selected date
 	private MONTHS[] arrayOfMonths = MONTHS.values();
 	private DAYS[] arrayOfDays = DAYS.values();
-	private ArrayList<ChangeListener> listeners = new ArrayList<>(); // data structure for Views
-	private DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
+	private List<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>(); // data structure for Views
+	private static final int DISPATCH_DELAY_MILLIS = 16;	// changes are dispatched once per frame
+	private final Object pendingLock = new Object();
+	private Set<CalendarChangeEvent.Kind> pendingKinds = EnumSet.noneOf(CalendarChangeEvent.Kind.class);
+	private int pendingFirstDay = Integer.MAX_VALUE;	// epoch days spanning the pending event changes
+	private int pendingLastDay = Integer.MIN_VALUE;
+	private Timer dispatchTimer;
 	private static final String EVENTFILE = "events.txt";
+	private static final String JOURNALFILE = "events.journal";
+	private static final String SNAPSHOTFILE = "events.snap";
+	private static final long COMPACT_MIN_BYTES = 64 * 1024;	// journal size worth compacting
+	private static final int LOAD_CHUNK_SIZE = 50000;			// events added per loading step
+	private volatile EventJournal journal;	// changes since events.txt was written (null until loaded)
+	private volatile boolean loading;		// stored events are being loaded in the background
+	private volatile long snapshotSize;		// size of events.txt when it was last read or written
+	private final Object snapshotLock = new Object();
+	private volatile EventSnapshot snapshot;	// days not yet decoded from events.snap (null if none)
+	private BitSet decodedDays;				// days of the snapshot's day table decoded and not evicted
+	private int decodedCount;
+	private final Set<Integer> changedDays = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());	// days changed since events.snap was written
+	private final Map<Integer, Integer> residentMonths = new LinkedHashMap<Integer, Integer>(32, 0.75f, true);	// events decoded by month (first day), least recently used first
+	private long residentEvents;				// events decoded from events.snap and not evicted
+	private static final long CACHE_BYTES = Long.getLong("calendar.cache.mb", 64) * 1024 * 1024;	// budget for decoded events, 0 for none
+	private static final int EVENT_BYTES = 48;			// estimated heap per decoded event, with its share of the day
+	private volatile int shownMonth;					// first day of the month on screen, never evicted with the months next to it
+	private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "calendar-prefetch");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	private TreeMap<Integer, MonthDensity> densities = new TreeMap<Integer, MonthDensity>();	// months looked at, by first day
+	private final Object densityBuildLock = new Object();
+	private static final String RECURRINGFILE = "recurring.txt";
+	private static final int EXPANDED_MONTHS = 24;		// months of expanded occurrences cached
+	private static final int SLOT_ROUNDING = 5;			// free slots start on a multiple of 5 minutes
+	private static final int LAST_DAY = toEpochDay(9999, Calendar.DECEMBER, 31);	// dates have four-digit years
+	private static final int UNDO_LIMIT = 100;			// changes kept for undo
+	private final Deque<Edit> undoHistory = new ArrayDeque<Edit>();	// guards both histories
+	private final Deque<Edit> redoHistory = new ArrayDeque<Edit>();
+	private List<RecurringEvent> recurring = new CopyOnWriteArrayList<RecurringEvent>();	// changed under storeLock's write lock
+	private final Map<Integer, List<Event>> expanded = new LinkedHashMap<Integer, List<Event>>(32, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Integer, List<Event>> eldest) {
+			return size() > EXPANDED_MONTHS;
+		}
+	};	// occurrences of the recurring events by first day of month, least recently used first
+	private volatile TitleIndex titleIndex;	// built by the first search, then kept up to date
+	private final AtomicInteger eventCount = new AtomicInteger();	// single events, decoded or not
+	private final CalendarMetrics metrics = new CalendarMetrics(this);
+	private static final Logger LOG = Logger.getLogger(CalendarModel.class.getName());
+	private static final Comparator<Event> CHRONOLOGICAL = new Comparator<Event>() {
+		public int compare(Event a, Event b) {
+			if (a.getEpochDay() != b.getEpochDay()) {
+				return Integer.compare(a.getEpochDay(), b.getEpochDay());
+			}
+			return Integer.compare(a.getStartMinute(), b.getStartMinute());
+		}
+	};
 	
 	/**
 	 * Constructs a calendar model.
 	 */
 	public CalendarModel() {
-		this.dateToEvents = new TreeMap<String, ArrayList<Event>>();
-		this.daysInMonth = c.getActualMaximum(Calendar.DAY_OF_MONTH);
+		for (int i = 0; i < DAY_LOCKS; i++) {
+			dayLocks[i] = new ReentrantLock();
+		}
+		this.dispatchTimer = new Timer(DISPATCH_DELAY_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				dispatchChanges();
+			}
+		});
+		this.dispatchTimer.setRepeats(false);
 	}
 
 	/**
@@ -60,12 +189,78 @@ public class CalendarModel {
 	}
 
 	/**
-	 * Notifies the View (observer) of the changes in the calendar model.
+	 * Detaches a ChangeListener from this calendar model, so it is no longer notified.
+	 * @param l		the ChangeListener to be detached
+	 */
+	public void detach(ChangeListener l) {
+		listeners.remove(l);
+	}
+
+	/**
+	 * Notifies the View (observer) that anything in the calendar model may have changed.
 	 */
 	public void notifyView() {
+		fireChange(EnumSet.allOf(CalendarChangeEvent.Kind.class), Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Records a change for the View. Changes are coalesced and dispatched together on the
+	 * Event Dispatch Thread at most once per frame, so a burst of changes causes one update.
+	 */
+	private void fireChange(Set<CalendarChangeEvent.Kind> kinds, int firstDay, int lastDay) {
+		synchronized (pendingLock) {
+			if (listeners.isEmpty()) {
+				return;
+			}
+			pendingKinds.addAll(kinds);
+			if (kinds.contains(CalendarChangeEvent.Kind.EVENTS_CHANGED)) {
+				pendingFirstDay = Math.min(pendingFirstDay, firstDay);
+				pendingLastDay = Math.max(pendingLastDay, lastDay);
+			}
+			if (!dispatchTimer.isRunning()) {
+				dispatchTimer.start();
+			}
+		}
+	}
+	
+	/**
+	 * Records a change of the selected day for the View.
+	 */
+	private void fireDayChange(boolean monthChanged) {
+		if (monthChanged) {
+			prefetch();
+			fireChange(EnumSet.of(CalendarChangeEvent.Kind.DAY_SELECTED, CalendarChangeEvent.Kind.MONTH_CHANGED), 0, 0);
+		} else {
+			fireChange(EnumSet.of(CalendarChangeEvent.Kind.DAY_SELECTED), 0, 0);
+		}
+	}
+	
+	/**
+	 * Records a change of the events of some days for the View.
+	 */
+	private void fireEventsChange(int firstDay, int lastDay) {
+		fireChange(EnumSet.of(CalendarChangeEvent.Kind.EVENTS_CHANGED), firstDay, lastDay);
+	}
+	
+	/**
+	 * Dispatches the pending changes to the listeners as one change event.
+	 */
+	private void dispatchChanges() {
+		CalendarChangeEvent event;
+		synchronized (pendingLock) {
+			if (pendingKinds.isEmpty()) {
+				return;
+			}
+			event = new CalendarChangeEvent(this, pendingKinds, pendingFirstDay, pendingLastDay);
+			pendingKinds.clear();
+			pendingFirstDay = Integer.MAX_VALUE;
+			pendingLastDay = Integer.MIN_VALUE;
+		}
+		long start = System.nanoTime();
 		for (ChangeListener l : listeners) {
-			l.stateChanged(new ChangeEvent(this));
+			l.stateChanged(event);
 		}
+		metrics.notifyView.recordSince(start);
 	}
 	
 	/**
@@ -73,7 +268,15 @@ public class CalendarModel {
 	 * @return	the Calendar of this calendar model
 	 */
 	public Calendar getCalendar() {
-		return this.c;
+		return cursor.getCalendar();
+	}
+	
+	/**
+	 * Creates a cursor for another View, starting on the date of this calendar model.
+	 * @return	a new cursor on the current date
+	 */
+	public CalendarCursor newCursor() {
+		return new CalendarCursor(this, getEpochDay());
 	}
 	
 	/**
@@ -81,7 +284,7 @@ public class CalendarModel {
 	 * @return	the year of this calendar model
 	 */
 	public String getYear() {
-		int thisYear = c.get(Calendar.YEAR);
+		int thisYear = cursor.getYear();
 		return Integer.toString(thisYear);
 	}
 	
@@ -90,7 +293,7 @@ public class CalendarModel {
 	 * @return	the month of this calendar model
 	 */
 	public String getMonth() {
-		int thisMonthInt = c.get(Calendar.MONTH);
+		int thisMonthInt = cursor.getMonth();
 		String thisMonth = arrayOfMonths[thisMonthInt].toString();
 		return thisMonth;
 	}
@@ -100,7 +303,7 @@ public class CalendarModel {
 	 * @return	the month in integer form
 	 */
 	public int getMonthInt() {
-		return c.get(Calendar.MONTH);
+		return cursor.getMonth();
 	}
 	
 	/**
@@ -108,7 +311,7 @@ public class CalendarModel {
 	 * @return	the day in integer form
 	 */
 	public int getDayInt() {
-		return c.get(Calendar.DATE);
+		return cursor.getDay();
 	}
 	
 	/**
@@ -116,9 +319,19 @@ public class CalendarModel {
 	 * @param day	the day to be set
 	 */
 	public void setDay(int day) {
-		c.set(c.get(Calendar.YEAR), c.get(Calendar.MONTH), day);
+		cursor.setDay(day);
 		// Notify View of the changes
-		notifyView();
+		fireDayChange(false);
+	}
+	
+	/**
+	 * Moves the calendar model to a date, in any month.
+	 * @param epochDay	the date as a day count since 01/01/1970
+	 */
+	public void setDate(int epochDay) {
+		boolean monthChanged = cursor.moveTo(epochDay);
+		// Notify View of the changes
+		fireDayChange(monthChanged);
 	}
 	
 	/**
@@ -126,24 +339,43 @@ public class CalendarModel {
 	 * @return	the date of the calendar in MM/dd/yyyy format
 	 */
 	public String getDate() {
-		Date date = c.getTime();
-		return dateFormat.format(date);
+		return cursor.getDate();
 	}
 	
 	/**
-	 * Gets the number of days in the current month.
-	 * @return	the number of days in the current month
+	 * Gets the current date of the calendar as a day count since 01/01/1970.
+	 * @return	the epoch day of the current date
 	 */
-	public int getDaysInMonth() {
-		return daysInMonth;
+	public int getEpochDay() {
+		return cursor.getEpochDay();
 	}
 	
 	/**
-	 * Sets the number of days in the current month
-	 * @param numberOfDays	the number of days to be set
+	 * Converts a date in MM/dd/yyyy format to a day count since 01/01/1970.
+	 * @param date	the date in MM/dd/yyyy format
+	 * @return		the epoch day of the date
 	 */
-	public void setDaysInMonth(int numberOfDays) {
-		this.daysInMonth = numberOfDays;
+	public static int toEpochDay(String date) {
+		return Event.parseEpochDay(date);
+	}
+	
+	/**
+	 * Converts a year, month and day of month to a day count since 01/01/1970.
+	 * @param year	the year
+	 * @param month	the month (0 for January, as in Calendar.MONTH)
+	 * @param day	the day of the month
+	 * @return		the epoch day of the date
+	 */
+	public static int toEpochDay(int year, int month, int day) {
+		return Event.toEpochDay(year, month + 1, day);
+	}
+	
+	/**
+	 * Gets the number of days in the current month.
+	 * @return	the number of days in the current month
+	 */
+	public int getDaysInMonth() {
+		return cursor.getDaysInMonth();
 	}
 	
 	/**
@@ -163,47 +395,37 @@ public class CalendarModel {
 	 * @return	the starting day of the calendar model
 	 */
 	public int getStartingDay() {
-		// Make a temporary calendar to import current year/month and set day to 1
-		GregorianCalendar temp = new GregorianCalendar(c.get(Calendar.YEAR), c.get(Calendar.MONTH), 1);
-		// Get the day of the week (which is the first day of the month)
-		int startingDay = temp.get(Calendar.DAY_OF_WEEK) - 1;
-		return startingDay;
+		return cursor.getStartingDay();
 	}
 	
 	/**
 	 * Moves to the previous day in the calendar model.
 	 */
 	public void previousDay() {
-		c.add(Calendar.DAY_OF_MONTH, -1);
-		setDaysInMonth(c.getActualMaximum(Calendar.DAY_OF_MONTH));
+		boolean monthChanged = cursor.previousDay();
 		
-		// Outputs the month, day, and year in the console
-		int thisDay = c.get(Calendar.DAY_OF_MONTH);
-		Integer.toString(thisDay);
-		System.out.println("Month: \t" + getMonth());
-		System.out.println("Day: \t" + thisDay);
-		System.out.println("Year: \t" + getYear());
+		// Logs the month, day, and year (off unless the level is FINE)
+		if (LOG.isLoggable(Level.FINE)) {
+			LOG.fine("Month: " + getMonth() + ", Day: " + cursor.getDay() + ", Year: " + getYear());
+		}
 
 		// Notify View of the changes
-		notifyView();
+		fireDayChange(monthChanged);
 	}
 	
 	/**
 	 * Moves to the next day in the calendar model.
 	 */
 	public void nextDay() {
-		c.add(Calendar.DAY_OF_MONTH, 1);
-		setDaysInMonth(c.getActualMaximum(Calendar.DAY_OF_MONTH));
+		boolean monthChanged = cursor.nextDay();
 		
-		// Outputs the month, day, and year in the console
-		int thisDay = c.get(Calendar.DAY_OF_MONTH);
-		Integer.toString(thisDay);
-		System.out.println("Month: \t" + getMonth());
-		System.out.println("Day: \t" + thisDay);
-		System.out.println("Year: \t" + getYear());
+		// Logs the month, day, and year (off unless the level is FINE)
+		if (LOG.isLoggable(Level.FINE)) {
+			LOG.fine("Month: " + getMonth() + ", Day: " + cursor.getDay() + ", Year: " + getYear());
+		}
 
 		// Notify View of the changes
-		notifyView();
+		fireDayChange(monthChanged);
 	}
 	
 	/**
@@ -215,154 +437,2293 @@ public class CalendarModel {
 		// Day enums as array
 		DAYS[] arrayOfDays = DAYS.values();
 
-		return arrayOfDays[c.get(Calendar.DAY_OF_WEEK) - 1] + "";
+		return arrayOfDays[cursor.getDayOfWeek()] + "";
 	}
 	
 	/**
-	 * Loads a text file events.txt to populate calendar with events (if any).
-	 * @throws IOException		if stream to events.txt cannot be written to
-	 * @throws ParseException	if the date of events are not written in the correct format MM/dd/yyyy
+	 * Loads a text file events.txt to populate calendar with events (if any), then replays
+	 * the changes recorded in the journal since events.txt was last written. Changes made
+	 * after loading are appended to the journal. Lines that cannot be parsed are skipped
+	 * and reported.
+	 * @return	a report of the events loaded and the lines rejected
+	 * @throws IOException	if events.txt, events.snap or the journal cannot be read
 	 */
-	public void load() throws IOException, ParseException {
-		BufferedReader br = new BufferedReader(new FileReader(EVENTFILE));
-
-			String line = "";
-			// For each line in the text file, create a new event
-			while ((line = br.readLine()) != null) {
-				String inputDate = line.substring(0, 10);
-				String startTime = line.substring(11, 16);
-				String endTime = line.substring(19, 24);
-				String title = line.substring(25);
-				
-				// Create an event based on that line
-				Event e = new Event(title, inputDate, startTime, endTime);
-				create(inputDate, e);
+	public LoadReport load() throws IOException {
+		long start = System.nanoTime();
+		LoadReport report = new LoadReport();
+		int firstOfMonth = toEpochDay(cursor.getYear(), cursor.getMonth(), 1);
+		long bytes = readStoredEvents(report, firstOfMonth, firstOfMonth + cursor.getDaysInMonth() - 1, new LoadSink() {
+			public void apply(Runnable step) {
+				step.run();
 			}
-		System.out.println("Events loaded onto the calendar.");
-		br.close();
+		});
+		metrics.loaded(start, bytes);
+		
+		printReport(report);
+		return report;
 	}
 	
 	/**
-	 * Creates an event and adds it to the tree map of events.
-	 * @param d		the date of the event to create
-	 * @param e		the event to create
+	 * Creates a worker that loads the stored events like load() without blocking the
+	 * Event Dispatch Thread. Files are read and parsed on the worker thread, while the
+	 * model is only changed on the Event Dispatch Thread: the events of the current month
+	 * are added first, then the rest in chunks.
+	 * Must be created on the Event Dispatch Thread. Events must not be changed until the
+	 * worker is done: the journal is attached only after the stored events are replayed,
+	 * so earlier changes would not be saved, and could make stored events that load
+	 * later be rejected as conflicts.
+	 * @return	the worker, to be started with execute()
 	 */
-	public void create(String d, Event e) {
-		if (checkConflict(d, e) == false) {
-			// Create a non-conflicting event that day
-			if (dateToEvents.containsKey(d)) {
-				ArrayList<Event> events = dateToEvents.get(d);
-				events.add(e);
-				
+	public SwingWorker<LoadReport, Runnable> loadInBackground() {
+		final LoadReport report = new LoadReport();
+		final int firstOfMonth = toEpochDay(cursor.getYear(), cursor.getMonth(), 1);
+		final int lastOfMonth = firstOfMonth + cursor.getDaysInMonth() - 1;
+		loading = true;
+		return new SwingWorker<LoadReport, Runnable>() {
+			private final long start = System.nanoTime();
+			private volatile long bytes;
+			
+			protected LoadReport doInBackground() throws IOException {
+				bytes = readStoredEvents(report, firstOfMonth, lastOfMonth, new LoadSink() {
+					public void apply(Runnable step) {
+						publish(step);
+					}
+				});
+				return report;
 			}
-			// Otherwise, create an event that day
-			else {
-				ArrayList<Event> events = new ArrayList<Event>();
-				events.add(e);
-				dateToEvents.put(d, events);
+			
+			protected void process(List<Runnable> steps) {
+				for (Runnable step : steps) {
+					step.run();
+				}
+			}
+			
+			protected void done() {
+				try {
+					get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} catch (ExecutionException e) {
+					LOG.log(Level.WARNING, "Cannot load the stored events", e.getCause());
+				}
+				loading = false;
+				metrics.loaded(start, bytes);
+				printReport(report);
+			}
+		};
+	}
+	
+	/**
+	 * Tells whether the stored events are being loaded in the background, from the time
+	 * loadInBackground is called until its worker is done. Events must not be changed
+	 * meanwhile.
+	 * @return	true while loading
+	 */
+	public boolean isLoading() {
+		return loading;
+	}
+	
+	/**
+	 * Receives the changes to the model made while loading.
+	 */
+	private interface LoadSink {
+		/**
+		 * Applies a change to the model, right away or later on the Event Dispatch Thread.
+		 * @param step	the change to apply
+		 */
+		void apply(Runnable step);
+	}
+	
+	/**
+	 * Reads events.snap or events.txt and the journal, and hands the changes to the model
+	 * to the sink in order. Only reads files, so it may run on any thread.
+	 * @return	the size of the files read
+	 */
+	private long readStoredEvents(final LoadReport report, final int firstOfMonth, final int lastOfMonth,
+			final LoadSink sink) throws IOException {
+		// Recurring events go first, so events loaded after them are checked against them
+		final List<RecurringEvent> rules = readRecurring(Paths.get(RECURRINGFILE), report);
+		long bytes = size(Paths.get(RECURRINGFILE));
+		sink.apply(new Runnable() {
+			public void run() {
+				setRecurring(rules);
+			}
+		});
+		
+		Path text = Paths.get(EVENTFILE);
+		Path binary = Paths.get(SNAPSHOTFILE);
+		// events.snap is used unless events.txt was changed after it was written
+		if (Files.exists(binary) && (!Files.exists(text)
+				|| Files.getLastModifiedTime(binary).compareTo(Files.getLastModifiedTime(text)) >= 0)) {
+			final EventSnapshot opened = EventSnapshot.open(binary);
+			final long size = Files.size(Files.exists(text) ? text : binary);
+			bytes += Files.size(binary);
+			sink.apply(new Runnable() {
+				public void run() {
+					attachSnapshot(opened, report, firstOfMonth, lastOfMonth);
+					snapshotSize = size;
+				}
+			});
+		}
+		else if (Files.exists(text)) {
+			EventBatch batch;
+			BufferedReader br = Files.newBufferedReader(text, StandardCharsets.UTF_8);
+			try {
+				batch = EventBatch.read(br, EVENTFILE, report);
+			} finally {
+				br.close();
 			}
+			final long size = Files.size(text);
+			bytes += size;
+			sink.apply(new Runnable() {
+				public void run() {
+					snapshotSize = size;
+				}
+			});
+			
+			// The current month goes first so the visible days fill in before the rest
+			int monthStart = batch.firstOnOrAfter(firstOfMonth);
+			int monthEnd = batch.firstOnOrAfter(lastOfMonth + 1);
+			sink.apply(addStep(batch.slice(monthStart, monthEnd), report));
+			addInChunks(batch, 0, monthStart, report, sink);
+			addInChunks(batch, monthEnd, batch.size(), report, sink);
 		}
 		
-		// Notify View of the changes
-		notifyView();
+		// Replay the changes made since events.txt was written
+		Path journalPath = Paths.get(JOURNALFILE);
+		EventJournal.read(journalPath, report, new EventJournal.Replay() {
+			public void create(EventBatch batch) {
+				sink.apply(addStep(batch, report));
+			}
+			
+			public void delete(final Event e) {
+				sink.apply(new Runnable() {
+					public void run() {
+						remove(e);
+					}
+				});
+			}
+		});
+		bytes += size(journalPath);
+		final EventJournal opened = new EventJournal(journalPath);
+		sink.apply(new Runnable() {
+			public void run() {
+				attachJournal(opened);
+			}
+		});
+		return bytes;
 	}
 	
 	/**
-	 * Checks for conflicting events in the tree map of events.
-	 * @param d		the date of the event to check
-	 * @param e		the event to check
-	 * @return
+	 * Gets the size of a file, or 0 if there is no such file.
 	 */
-	public boolean checkConflict(String d, Event e) {
-		boolean conflict = false;
-		// If there is an event that day, check if there are conflicting events existing
-		if (dateToEvents.containsKey(d)) {
-			ArrayList<Event> events = dateToEvents.get(d);
-			for (int i = 0; i < events.size(); i++) {
-				Event e2 = dateToEvents.get(d).get(i);
-				// Check for time conflict
-				if (e.getStartTimeInt() <= e2.getEndTimeInt() && e2.getStartTimeInt() <= e.getEndTimeInt()) {
-					System.out.println("The event you are trying to create is conflicting with an existing event.");
-					System.out.println("Cannot create overlapping event. Redirecting to main menu.");
-					conflict = true;
-				}
+	private static long size(Path file) throws IOException {
+		return Files.exists(file) ? Files.size(file) : 0;
+	}
+	
+	/**
+	 * Hands a range of a sorted batch to the sink in chunks that do not split a day.
+	 */
+	private void addInChunks(EventBatch batch, int from, int to, LoadReport report, LoadSink sink) {
+		while (from < to) {
+			int end = Math.min(from + LOAD_CHUNK_SIZE, to);
+			while (end < to && batch.get(end).getEpochDay() == batch.get(end - 1).getEpochDay()) {
+				end++;
 			}
+			sink.apply(addStep(batch.slice(from, end), report));
+			from = end;
 		}
-		return conflict;
 	}
 	
 	/**
-	 * Gets the events on this calendar model's current date.
-	 * @return	the events on this calendar model's current date
-	 * 			format: MM/dd/yyyy
-	 * 					start time - end time	title of event 1
-	 * 					start time - end time	title of event 2
-	 * 					etc.
+	 * Creates a change that adds a batch of events to the model.
 	 */
-	public String getEvents() {
-		StringBuilder events = new StringBuilder();
-		if (dateToEvents.containsKey(this.getDate())) {
-			for (Event e : dateToEvents.get(this.getDate())) {
-				events.append(e.getStartTime() + " - " + e.getEndTime() + "\t" + e.getTitle());
-				events.append("\n");
+	private Runnable addStep(final EventBatch batch, final LoadReport report) {
+		return new Runnable() {
+			public void run() {
+				addAll(batch, report);
+			}
+		};
+	}
+	
+	/**
+	 * Reads the recurring events of recurring.txt, if there is one. Lines that cannot be
+	 * parsed are skipped and reported.
+	 */
+	private static List<RecurringEvent> readRecurring(Path file, LoadReport report) throws IOException {
+		List<RecurringEvent> rules = new ArrayList<RecurringEvent>();
+		if (!Files.exists(file)) {
+			return rules;
+		}
+		int lineNumber = 0;
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			lineNumber++;
+			if (line.isEmpty()) {
+				continue;
+			}
+			try {
+				rules.add(RecurringEvent.parse(line));
+				report.accept();
+			} catch (IllegalArgumentException e) {
+				report.reject(RECURRINGFILE, lineNumber, line, e.getMessage());
 			}
 		}
-		return this.getDate() + "\n" + events.toString();
+		return rules;
 	}
 	
 	/**
-	 * Outputs the events on this calendar model in the console.
-	 * @return	the list of events on this calendar model
+	 * Adds the recurring events read from recurring.txt.
 	 */
-	public String eventList() {
-		String list = "";
-
-		System.out.println("List of all scheduled events: ");
-		
-		if (dateToEvents.isEmpty()) {
-			System.out.println("\tThere are no scheduled events to show.");
+	private void setRecurring(List<RecurringEvent> rules) {
+		if (rules.isEmpty()) {
+			return;
 		}
-		
-		// Iterate through event tree map to print events
-		for (Map.Entry<String, ArrayList<Event>> entry : dateToEvents.entrySet()) {
-			ArrayList<Event> eventList = entry.getValue();
-			for (int i = 0; i < eventList.size(); i++) {
-				list = list + eventList.get(i).printEvent() + "\n";
+		storeLock.writeLock().lock();
+		try {
+			recurring.addAll(rules);
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+		recurringChanged(Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Uses an opened events.snap without decoding it. Only the current month is decoded
+	 * now; the other days are decoded the first time they are looked at.
+	 */
+	private void attachSnapshot(EventSnapshot opened, LoadReport report, int firstOfMonth, int lastOfMonth) {
+		synchronized (densities) {
+			densities.clear();		// the summaries do not count the snapshot's events
+		}
+		// Neither does the title index, which is built again by the next search
+		storeLock.writeLock().lock();
+		try {
+			titleIndex = null;
+			synchronized (snapshotLock) {
+				decodedDays = new BitSet(opened.getDayCount());
+				decodedCount = 0;
+				residentMonths.clear();
+				residentEvents = 0;
+				changedDays.clear();
+				snapshot = opened;
 			}
+		} finally {
+			storeLock.writeLock().unlock();
 		}
-		return list;
+		report.accept(opened.getEventCount());
+		eventCount.addAndGet(opened.getEventCount());
+		if (opened.getDayCount() > 0) {
+			fireEventsChange(opened.getDay(0), opened.getDay(opened.getDayCount() - 1));
+		}
+		decode(firstOfMonth, lastOfMonth);
+		prefetch();
 	}
 	
 	/**
-	 * Exits the calendar application and saves all created events into events.txt.
+	 * Decodes the days of events.snap within a range of epoch days that are not decoded,
+	 * because they were never looked at or were evicted since. Without a memory budget,
+	 * the snapshot is closed once every day is decoded.
+	 * Must not be called while holding a day lock. A thread that changes the days it
+	 * decodes must hold storeLock, so they are not evicted before it gets to them.
+	 * @return	a version of the events that has every day of the range
 	 */
-	public void quit() {
-		// BufferedWriter used to write content of event map into text file
-		BufferedWriter writer = null;
-		
+	private EventTree decode(int fromDay, int toDay) {
+		if (snapshot == null) {
+			return dateToEvents.get();
+		}
+		synchronized (snapshotLock) {
+			EventSnapshot s = snapshot;
+			if (s == null) {
+				return dateToEvents.get();
+			}
+			int month = 0;
+			int monthEnd = Integer.MIN_VALUE;		// last day of month, so months are looked up once
+			for (int i = s.firstDayAtOrAfter(fromDay); i < s.getDayCount() && s.getDay(i) <= toDay; i++) {
+				int day = s.getDay(i);
+				if (day > monthEnd) {
+					month = firstOfMonth(day);
+					monthEnd = lastOfMonth(month);
+				}
+				Integer resident = residentMonths.get(month);		// also marks the month as used
+				if (!decodedDays.get(i)) {
+					ReentrantLock lock = lockFor(day);
+					lock.lock();
+					try {
+						DaySchedule events = dateToEvents.get().get(day);
+						if (events != null) {
+							// Created before the snapshot was attached, so only the model has them
+							changedDays.add(day);
+						}
+						events = events == null ? new DaySchedule() : new DaySchedule(events);
+						s.readDay(i, events);
+						swap(day, events);
+					} finally {
+						lock.unlock();
+					}
+					decodedDays.set(i);
+					decodedCount++;
+					residentEvents += s.getEventCount(i);
+					residentMonths.put(month, (resident == null ? 0 : resident) + s.getEventCount(i));
+				}
+			}
+			if (decodedCount == s.getDayCount() && CACHE_BYTES <= 0) {
+				try {
+					s.close();
+				} catch (IOException e) {
+					LOG.log(Level.WARNING, "Cannot close " + SNAPSHOTFILE, e);
+				}
+				snapshot = null;
+				decodedDays = null;
+				changedDays.clear();
+			}
+			return dateToEvents.get();
+		}
+	}
+	
+	/**
+	 * Reads the events of a day from events.snap without decoding the day into the model,
+	 * for a day that is not in the current version. A day changed since events.snap was
+	 * written is not read, as the snapshot no longer has its events.
+	 * @return	the events of the day, or null if there are none
+	 */
+	private DaySchedule stored(int day) {
+		EventSnapshot s = snapshot;
+		if (s == null || changedDays.contains(day)) {
+			return null;
+		}
+		int i = s.firstDayAtOrAfter(day);
+		if (i == s.getDayCount() || s.getDay(i) != day) {
+			return null;
+		}
+		DaySchedule events = new DaySchedule();
+		s.readDay(i, events);
+		return events;
+	}
+	
+	/**
+	 * Decodes the month of the main View's cursor and the months before and after it in
+	 * the background, so that moving to the next or previous month finds its events
+	 * decoded, then evicts the months least recently looked at if the decoded events
+	 * exceed the memory budget.
+	 */
+	private void prefetch() {
+		if (snapshot == null || CACHE_BYTES <= 0) {
+			return;
+		}
+		final int first = toEpochDay(cursor.getYear(), cursor.getMonth(), 1);
+		shownMonth = first;
+		prefetcher.execute(new Runnable() {
+			public void run() {
+				decode(firstOfMonth(first - 1), first - 1);
+				int next = lastOfMonth(first) + 1;
+				decode(next, lastOfMonth(next));
+				// Decoded last, so it is the most recently used month
+				decode(first, lastOfMonth(first));
+				evictCold();
+			}
+		});
+	}
+	
+	/**
+	 * Evicts the months least recently looked at until the events decoded from events.snap
+	 * fit the memory budget. Evicted days are dropped from the model and decoded again the
+	 * next time they are looked at. The month on screen and the months next to it always
+	 * stay, as do days changed since events.snap was written, since only the model has
+	 * their events, and the days of the changes that can be undone or redone.
+	 */
+	private void evictCold() {
+		if (snapshot == null || CACHE_BYTES <= 0) {
+			return;
+		}
+		// No thread is between decoding a day and changing it while the write lock is held
+		storeLock.writeLock().lock();
 		try {
-		    writer = new BufferedWriter(new FileWriter(EVENTFILE));
-		    
-		    if (!dateToEvents.isEmpty()) {
-				for (Map.Entry<String, ArrayList<Event>> entry : dateToEvents.entrySet()) {
-					ArrayList<Event> eventList = entry.getValue();
-					for (int i = 0; i < eventList.size(); i++) {
-						writer.write(eventList.get(i).printEvent() + "\n");
+			Set<Integer> undoable = new HashSet<Integer>();
+			synchronized (undoHistory) {
+				for (Edit edit : undoHistory) {
+					for (int day : edit.days) {
+						undoable.add(day);
 					}
 				}
-		    }
-		    
-		} catch (IOException e) {
-			e.printStackTrace();
+				for (Edit edit : redoHistory) {
+					for (int day : edit.days) {
+						undoable.add(day);
+					}
+				}
+			}
+			int shown = shownMonth;
+			int previous = firstOfMonth(shown - 1);
+			int next = lastOfMonth(shown) + 1;
+			synchronized (snapshotLock) {
+				EventSnapshot s = snapshot;
+				Iterator<Map.Entry<Integer, Integer>> months = residentMonths.entrySet().iterator();
+				while (s != null && residentEvents * EVENT_BYTES > CACHE_BYTES && months.hasNext()) {
+					Map.Entry<Integer, Integer> month = months.next();
+					if (month.getKey() == shown || month.getKey() == previous || month.getKey() == next) {
+						continue;
+					}
+					int kept = 0;		// events of the days that stay
+					int last = lastOfMonth(month.getKey());
+					for (int i = s.firstDayAtOrAfter(month.getKey()); i < s.getDayCount() && s.getDay(i) <= last; i++) {
+						if (!decodedDays.get(i)) {
+							continue;
+						}
+						if (changedDays.contains(s.getDay(i)) || undoable.contains(s.getDay(i))) {
+							kept += s.getEventCount(i);
+						} else {
+							swap(s.getDay(i), null);
+							decodedDays.clear(i);
+							decodedCount--;
+							residentEvents -= s.getEventCount(i);
+						}
+					}
+					if (kept == 0) {
+						months.remove();
+					} else {
+						month.setValue(kept);
+					}
+				}
+			}
 		} finally {
+			storeLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Uses the events.snap just written by compact() as the store that days are evicted
+	 * to. The days the model has are marked decoded, and none of them was changed since
+	 * it was written; the others are read from it when they are looked at.
+	 * Called while holding storeLock's write lock.
+	 */
+	private void reopenSnapshot() throws IOException {
+		if (CACHE_BYTES <= 0 && snapshot == null) {
+			return;		// every day is decoded, as before there was a memory budget
+		}
+		EventSnapshot opened = EventSnapshot.open(Paths.get(SNAPSHOTFILE));
+		synchronized (snapshotLock) {
+			if (snapshot != null) {
+				snapshot.close();
+			}
+			EventTree version = dateToEvents.get();
+			decodedDays = new BitSet(opened.getDayCount());
+			decodedCount = 0;
+			residentMonths.clear();
+			residentEvents = 0;
+			for (int i = 0; i < opened.getDayCount(); i++) {
+				if (version.get(opened.getDay(i)) != null) {
+					decodedDays.set(i);
+					decodedCount++;
+					int month = firstOfMonth(opened.getDay(i));
+					Integer resident = residentMonths.get(month);
+					residentMonths.put(month, (resident == null ? 0 : resident) + opened.getEventCount(i));
+					residentEvents += opened.getEventCount(i);
+				}
+			}
+			changedDays.clear();
+			snapshot = opened;
+		}
+		prefetch();
+	}
+	
+	/**
+	 * Gets the events of every day as they are now, in day order. Days of events.snap that
+	 * are not decoded are read from it as they are iterated, without decoding them into
+	 * the model, so going through every event does not make the whole calendar resident.
+	 * Changes made while the days are iterated are not seen.
+	 * @return	the events of each day that has any
+	 */
+	private Iterable<DaySchedule> allDays() {
+		final EventTree version;
+		final EventSnapshot s;
+		final BitSet decoded;
+		synchronized (snapshotLock) {
+			version = dateToEvents.get();
+			s = snapshot;
+			decoded = s == null ? null : (BitSet) decodedDays.clone();
+		}
+		return new Iterable<DaySchedule>() {
+			public Iterator<DaySchedule> iterator() {
+				return new Iterator<DaySchedule>() {
+					private final Iterator<Map.Entry<Integer, DaySchedule>> resident = version.entrySet().iterator();
+					private Map.Entry<Integer, DaySchedule> nextResident = resident.hasNext() ? resident.next() : null;
+					private int nextStored = undecoded(0);		// day table index of s, or -1
+					
+					private int undecoded(int from) {
+						if (s == null) {
+							return -1;
+						}
+						int i = decoded.nextClearBit(from);
+						return i < s.getDayCount() ? i : -1;
+					}
+					
+					public boolean hasNext() {
+						return nextResident != null || nextStored >= 0;
+					}
+					
+					public DaySchedule next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						DaySchedule events = null;
+						if (nextResident != null && (nextStored < 0 || nextResident.getKey() <= s.getDay(nextStored))) {
+							events = nextResident.getValue();
+							boolean both = nextStored >= 0 && nextResident.getKey() == s.getDay(nextStored);
+							nextResident = resident.hasNext() ? resident.next() : null;
+							if (!both) {
+								return events;
+							}
+							// Created before the snapshot was attached, so the day is in both
+							events = new DaySchedule(events);
+						}
+						if (events == null) {
+							events = new DaySchedule();
+						}
+						s.readDay(nextStored, events);
+						nextStored = undecoded(nextStored + 1);
+						return events;
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * Gets the first epoch day of the month of an epoch day.
+	 */
+	private static int firstOfMonth(int epochDay) {
+		return epochDay - Event.toYearMonthDay(epochDay) % 100 + 1;
+	}
+	
+	/**
+	 * Gets the last epoch day of a month.
+	 * @param firstDay	the first epoch day of the month
+	 */
+	private static int lastOfMonth(int firstDay) {
+		int date = Event.toYearMonthDay(firstDay);
+		return firstDay + Event.lengthOfMonth(date / 10000, date / 100 % 100) - 1;
+	}
+	
+	/**
+	 * Gets the lock for changing the events of a day.
+	 */
+	private ReentrantLock lockFor(int day) {
+		return dayLocks[day & (DAY_LOCKS - 1)];
+	}
+	
+	/**
+	 * Gets the events of a day, decoding them from events.snap if necessary.
+	 * @return	the events of the day, or null if there are none
+	 */
+	private DaySchedule getSchedule(int day) {
+		return decode(day, day).get(day);
+	}
+	
+	/**
+	 * Gets how busy each day of the current month is.
+	 * @return	the summary of the current month
+	 */
+	public MonthDensity getMonthDensity() {
+		return getMonthDensity(cursor.getYear(), cursor.getMonth());
+	}
+	
+	/**
+	 * Gets how busy each day of a month is. The events of the month are counted the
+	 * first time the month is looked at; after that the summary is kept up to date as
+	 * events are added. Adding a recurring event drops the summaries, which are then
+	 * counted again.
+	 * @param year	the year
+	 * @param month	the month (0 for January, as in Calendar.MONTH)
+	 * @return		the summary of the month
+	 */
+	public MonthDensity getMonthDensity(int year, int month) {
+		int firstDay = toEpochDay(year, month, 1);
+		synchronized (densityBuildLock) {
+			MonthDensity density;
+			synchronized (densities) {
+				density = densities.get(firstDay);
+			}
+			if (density == null) {
+				density = new MonthDensity(firstDay, Event.lengthOfMonth(year, month + 1));
+				// Held so that no day of the month is evicted before it is counted
+				storeLock.readLock().lock();
+				try {
+					decode(firstDay, density.getLastDay());
+					// Published before counting, so events added meanwhile are counted by countAdded
+					synchronized (densities) {
+						densities.put(firstDay, density);
+					}
+					for (int day = firstDay; day <= density.getLastDay(); day++) {
+						ReentrantLock lock = lockFor(day);
+						lock.lock();
+						try {
+							density.set(day, dateToEvents.get().get(day));
+						} finally {
+							lock.unlock();
+						}
+					}
+				} finally {
+					storeLock.readLock().unlock();
+				}
+				for (Event e : occurrencesInMonth(firstDay, density.getLastDay())) {
+					density.add(e);
+				}
+			}
+			return density;
+		}
+	}
+	
+	/**
+	 * Counts an added event, and counts it in the summary of its month if that month has
+	 * one. Called while holding the day lock of the event.
+	 */
+	private void countAdded(Event e) {
+		eventCount.incrementAndGet();
+		synchronized (densities) {
+			if (densities.isEmpty()) {
+				return;
+			}
+			Map.Entry<Integer, MonthDensity> month = densities.floorEntry(e.getEpochDay());
+			if (month != null && month.getValue().contains(e.getEpochDay())) {
+				month.getValue().add(e);
+			}
+		}
+	}
+	
+	/**
+	 * Indexes the title of an added event, if the title index was built.
+	 * Called while holding the day lock of the event.
+	 */
+	private void indexAdded(Event e) {
+		TitleIndex index = titleIndex;
+		if (index != null) {
+			index.add(e);
+		}
+	}
+	
+	/**
+	 * Finds the events whose title contains a query, ignoring case, in chronological order.
+	 * The first search indexes the titles of every event; after that the index is kept up
+	 * to date as events are added. Recurring events are not searched.
+	 * @param query		the text to find in the titles
+	 * @param offset	the number of matching events to skip, for the following pages
+	 * @param limit		the largest number of events to return (the page size)
+	 * @return			up to limit matching events, ordered by date and start time
+	 */
+	public List<Event> search(String query, int offset, int limit) {
+		TitleIndex index = titleIndex();
+		final EventTree version = dateToEvents.get();
+		// Days evicted since the index was built are read from events.snap without decoding
+		Map<Integer, DaySchedule> days = new AbstractMap<Integer, DaySchedule>() {
+			public DaySchedule get(Object day) {
+				DaySchedule events = version.get(day);
+				return events != null || !(day instanceof Integer) ? events : stored((Integer) day);
+			}
+			
+			public Set<Map.Entry<Integer, DaySchedule>> entrySet() {
+				return version.entrySet();
+			}
+		};
+		return index.search(query, days, offset, limit);
+	}
+	
+	/**
+	 * Builds the title index ahead of the first search, if it is not built yet.
+	 * May be called from any thread.
+	 */
+	public void indexTitles() {
+		titleIndex();
+	}
+	
+	/**
+	 * Gets the title index, building it from every event the first time.
+	 */
+	private TitleIndex titleIndex() {
+		TitleIndex index = titleIndex;
+		if (index == null) {
+			// No event is added or evicted while the index is built, so none is missed or indexed twice
+			storeLock.writeLock().lock();
 			try {
-				if (writer != null) {
-					writer.close();
-					System.out.println("File successfully created. (events.txt)");
+				if (titleIndex == null) {
+					TitleIndex built = new TitleIndex();
+					for (DaySchedule events : allDays()) {
+						for (Event e : events) {
+							built.add(e);
+						}
+					}
+					titleIndex = built;
 				}
-		    } catch (IOException e) {
-		    	e.printStackTrace();
-		    }
+				index = titleIndex;
+			} finally {
+				storeLock.writeLock().unlock();
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Gets all events of this calendar model in chronological order, as they are now:
+	 * changes made while the events are iterated are not seen. Days of events.snap that
+	 * are not decoded are read as they are reached and are not kept. Recurring events are
+	 * not expanded here; they are kept as rules (see getRecurring).
+	 * @return	the events of this calendar model, ordered by date and start time
+	 */
+	public Iterable<Event> events() {
+		final Iterable<DaySchedule> all = allDays();
+		return new Iterable<Event>() {
+			public Iterator<Event> iterator() {
+				return new Iterator<Event>() {
+					private Iterator<DaySchedule> days = all.iterator();
+					private Iterator<Event> day = Collections.<Event>emptyList().iterator();
+					
+					public boolean hasNext() {
+						while (!day.hasNext() && days.hasNext()) {
+							day = days.next().iterator();
+						}
+						return day.hasNext();
+					}
+					
+					public Event next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						return day.next();
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * Loads events in the events.txt format from a stream in a single batch. Lines that
+	 * cannot be parsed or that conflict with another event are skipped and reported, and
+	 * the View is notified once after all events are loaded.
+	 * @param in	the stream to read events from
+	 * @return		a report of the events loaded and the lines rejected
+	 * @throws IOException	if the stream cannot be read
+	 */
+	public LoadReport load(Reader in) throws IOException {
+		LoadReport report = new LoadReport();
+		addAll(EventBatch.read(in, null, report), report);
+		
+		// Imported events are saved with a new snapshot rather than one journal entry each
+		if (journal != null && report.getLoadedCount() > 0) {
+			compact();
+		}
+		
+		printReport(report);
+		return report;
+	}
+
+	/**
+	 * Imports the events of an iCalendar (.ics) stream. The stream is read one VEVENT at a
+	 * time and the events are added in chunks of LOAD_CHUNK_SIZE, so the memory used does
+	 * not grow with the size of the file and the View is notified once per chunk. Events
+	 * the calendar cannot hold or that conflict with another event are skipped and reported.
+	 * @param in		the stream to read
+	 * @param source	the name of the stream, for the report
+	 * @return			a report of the events imported and the events skipped
+	 * @throws IOException	if the stream cannot be read
+	 */
+	public LoadReport importICalendar(Reader in, final String source) throws IOException {
+		final LoadReport report = new LoadReport();
+		final List<RecurringEvent> rules = new ArrayList<RecurringEvent>();
+		final List<Integer> lineNumbers = new ArrayList<Integer>();
+		ICalendar.read(in, source, report, LOAD_CHUNK_SIZE, new ICalendar.Handler() {
+			public void events(EventBatch batch) {
+				addAll(batch, report);
+			}
+	
+			public void recurring(RecurringEvent r, int lineNumber) {
+				rules.add(r);
+				lineNumbers.add(lineNumber);
+			}
+		});
+		addAllRecurring(rules, lineNumbers, source, report);
+	
+		if (journal != null && report.getLoadedCount() > 0) {
+			compact();
+		}
+	
+		printReport(report);
+		return report;
+	}
+	
+	/**
+	 * Exports every event and recurring event as an iCalendar (.ics) stream. Events are
+	 * formatted straight into out, like writeEvents().
+	 * @param out	where to write the calendar
+	 * @throws IOException	if out cannot be written to
+	 */
+	public void exportICalendar(Writer out) throws IOException {
+		ICalendar.write(out, events(), new ArrayList<RecurringEvent>(recurring));
+	}
+	
+	/**
+	 * Logs the result of loading events.
+	 */
+	private void printReport(LoadReport report) {
+		LOG.info("Events loaded onto the calendar.");
+		if (LOG.isLoggable(Level.FINE)) {
+			LOG.fine(getEventCount() + " events on " + getDayCount() + " days, " + recurring.size() + " recurring");
+		}
+		for (LoadReport.Rejection r : report.getRejected()) {
+			LOG.warning("Skipped " + r);
+		}
+	}
+	
+	/**
+	 * Uses an opened journal to record the changes made from now on.
+	 */
+	private void attachJournal(final EventJournal opened) {
+		if (journal != null) {
+			try {
+				opened.close();
+			} catch (IOException e) {
+				LOG.log(Level.WARNING, "Cannot close " + JOURNALFILE, e);
+			}
+			return;
+		}
+		journal = opened;
+		// Entries still pending when the application exits are synced on the way out
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				try {
+					opened.close();
+				} catch (IOException e) {
+					LOG.log(Level.WARNING, "Cannot close " + JOURNALFILE, e);
+				}
+			}
+		}));
+	}
+	
+	/**
+	 * Writes all events into events.txt and events.snap and empties the journal, whose
+	 * changes are then part of both files.
+	 * @throws IOException	if events.txt, events.snap or the journal cannot be written
+	 */
+	public void compact() throws IOException {
+		// No event may be created between writing the files and emptying the journal
+		storeLock.writeLock().lock();
+		try {
+			long start = System.nanoTime();
+			Path text = Paths.get(EVENTFILE);
+			writeEventFile(text);
+			// Written after events.txt so it is not older than events.txt on the next load
+			EventSnapshot.write(Paths.get(SNAPSHOTFILE), events());
+			reopenSnapshot();
+			snapshotSize = Files.size(text);
+			if (journal != null) {
+				journal.truncate();
+			}
+			metrics.saved(start, snapshotSize + Files.size(Paths.get(SNAPSHOTFILE)));
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Writes all events to a temporary file that then replaces the text file, so a
+	 * crash while writing never leaves a partial file behind.
+	 */
+	private void writeEventFile(Path text) throws IOException {
+		Path temp = text.resolveSibling(text.getFileName() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp.toFile());
+		try {
+			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			writeEvents(writer);
+			writer.flush();
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		replace(temp, text);
+	}
+	
+	/**
+	 * Writes the recurring events to a temporary file that then replaces recurring.txt.
+	 */
+	private void writeRecurringFile(Path file) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp.toFile());
+		try {
+			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			writeRecurring(writer);
+			writer.flush();
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		replace(temp, file);
+	}
+	
+	/**
+	 * Replaces a file with a temporary file, atomically where the file system allows it.
+	 */
+	private static void replace(Path temp, Path file) throws IOException {
+		try {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/**
+	 * Adds a batch of events with a single View notification. The batch is sorted by date and
+	 * start time, then each day is swept once: an event is rejected if it overlaps the
+	 * previously accepted event of the batch that day, an event already on the calendar or
+	 * an occurrence of a recurring event.
+	 * Among conflicting events of the batch, the one starting first is kept.
+	 * @param batch		the events to add
+	 * @param report	the report for loaded and rejected events
+	 */
+	public void addAll(EventBatch batch, LoadReport report) {
+		batch.sort();
+		if (batch.size() == 0) {
+			return;
+		}
+		int firstDay = batch.get(0).getEpochDay();
+		int lastDay = batch.get(batch.size() - 1).getEpochDay();
+		storeLock.readLock().lock();
+		try {
+			decode(firstDay, lastDay);
+			int from = 0;
+			while (from < batch.size()) {
+				int to = from + 1;
+				while (to < batch.size() && batch.get(to).getEpochDay() == batch.get(from).getEpochDay()) {
+					to++;
+				}
+				addDay(batch, from, to, report);
+				from = to;
+			}
+		} finally {
+			storeLock.readLock().unlock();
+		}
+		fireEventsChange(firstDay, lastDay);
+	}
+	
+	/**
+	 * Sweeps the events of a sorted batch that fall on one day, and replaces the day's
+	 * schedule with a copy holding the accepted events.
+	 */
+	private void addDay(EventBatch batch, int from, int to, LoadReport report) {
+		int day = batch.get(from).getEpochDay();
+		int lastEnd = -1;		// end of the last accepted event of the batch that day
+		int lastLine = 0;		// line number of the last accepted event of the batch that day
+		int conflicts = 0;
+		ReentrantLock lock = lockFor(day);
+		lock.lock();
+		try {
+			DaySchedule existing = dateToEvents.get().get(day);
+			DaySchedule events = existing == null ? new DaySchedule() : new DaySchedule(existing);
+			for (int i = from; i < to; i++) {
+				Event e = batch.get(i);
+				if (e.getStartMinute() <= lastEnd) {
+					report.conflict(batch.getSource(), batch.getLineNumber(i), e.printEvent(), "Conflicts with line " + lastLine);
+					conflicts++;
+				}
+				else if (events.overlaps(e.getStartMinute(), e.getEndMinute())) {
+					// An event already on the calendar is not a conflict, so replaying is harmless
+					if (!events.contains(e)) {
+						report.conflict(batch.getSource(), batch.getLineNumber(i), e.printEvent(), "Conflicts with an existing event");
+						conflicts++;
+					}
+				}
+				else if (overlapsRecurring(day, e.getStartMinute(), e.getEndMinute())) {
+					report.conflict(batch.getSource(), batch.getLineNumber(i), e.printEvent(), "Conflicts with a recurring event");
+					conflicts++;
+				}
+				else {
+					events.add(e);
+					countAdded(e);
+					indexAdded(e);
+					report.accept();
+					lastEnd = e.getEndMinute();
+					lastLine = batch.getLineNumber(i);
+				}
+			}
+			if (events.size() > (existing == null ? 0 : existing.size())) {
+				publish(day, events);
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (conflicts > 0) {
+			metrics.conflicts(conflicts);
+		}
+	}
+	
+	/**
+	 * Creates an event and adds it to the tree map of events. Checking for conflicts and
+	 * adding the event is atomic, so events created at the same time from several threads
+	 * never overlap.
+	 * @param d		the date of the event to create
+	 * @param e		the event to create
+	 * @return		true if the event was created, false if it conflicts with an existing event
+	 */
+	public boolean create(String d, Event e) {
+		long start = System.nanoTime();
+		try {
+			return add(d, e);
+		} finally {
+			metrics.create.recordSince(start);
+		}
+	}
+	
+	/**
+	 * Creates an event, as create() does.
+	 */
+	private boolean add(String d, Event e) {
+		int day = toEpochDay(d);
+		storeLock.readLock().lock();
+		try {
+			decode(day, day);
+			ReentrantLock lock = lockFor(day);
+			lock.lock();
+			try {
+				DaySchedule events = dateToEvents.get().get(day);
+				if (conflicts(day, events, e)) {
+					metrics.conflicts(1);
+					return false;
+				}
+				// Add the non-conflicting event to a copy of that day, then publish the copy
+				events = events == null ? new DaySchedule() : new DaySchedule(events);
+				events.add(e);
+				record(publish(day, events));
+				countAdded(e);
+				indexAdded(e);
+				journal(EventJournal.CREATE, e);
+			} finally {
+				lock.unlock();
+			}
+		} finally {
+			storeLock.readLock().unlock();
+		}
+		compactIfLarge();
+		
+		// Notify View of the changes
+		fireEventsChange(day, day);
+		return true;
+	}
+	
+	/**
+	 * Gets an event by its id.
+	 * @param id	the id of the event (see Event.getId)
+	 * @return		the event, or null if there is none with that id
+	 */
+	public Event getEvent(long id) {
+		DaySchedule events = getSchedule(Event.dayOfId(id));
+		return events == null ? null : events.startingAt(Event.startMinuteOfId(id));
+	}
+	
+	/**
+	 * Gets the single events of a date, which can be edited and deleted one by one, unlike
+	 * the occurrences of recurring events.
+	 * @param epochDay	the date as a day count since 01/01/1970
+	 * @return			the events of the date, ordered by start time
+	 */
+	public List<Event> getSingleEvents(int epochDay) {
+		return getSingleEvents(epochDay, epochDay);
+	}
+	
+	/**
+	 * Gets the single events of a range of dates. Days of events.snap that are not decoded
+	 * are read without decoding them, so paging through the whole calendar does not keep
+	 * its events in memory.
+	 * @param fromDay	the first date of the range as a day count since 01/01/1970
+	 * @param toDay		the last date of the range as a day count since 01/01/1970
+	 * @return			the events of the range in chronological order
+	 */
+	public List<Event> getSingleEvents(int fromDay, int toDay) {
+		List<Event> result = new ArrayList<Event>();
+		synchronized (snapshotLock) {
+			EventSnapshot s = snapshot;
+			int i = s == null ? 0 : s.firstDayAtOrAfter(fromDay);
+			for (Map.Entry<Integer, DaySchedule> day : dateToEvents.get().entries(fromDay, toDay)) {
+				for (; s != null && i < s.getDayCount() && s.getDay(i) < day.getKey(); i++) {
+					addStored(s, i, null, result);
+				}
+				if (s != null && i < s.getDayCount() && s.getDay(i) == day.getKey()) {
+					addStored(s, i++, day.getValue(), result);
+				} else {
+					for (Event e : day.getValue()) {
+						result.add(e);
+					}
+				}
+			}
+			for (; s != null && i < s.getDayCount() && s.getDay(i) <= toDay; i++) {
+				addStored(s, i, null, result);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Adds the events of a day of events.snap to a list, unless the day is decoded and so
+	 * its events are in the model already. Must be called holding snapshotLock.
+	 * @param events	the events of the day in the model, or null if there are none
+	 */
+	private void addStored(EventSnapshot s, int dayIndex, DaySchedule events, List<Event> result) {
+		if (!decodedDays.get(dayIndex)) {
+			events = events == null ? new DaySchedule() : new DaySchedule(events);
+			s.readDay(dayIndex, events);
+		}
+		if (events != null) {
+			for (Event e : events) {
+				result.add(e);
+			}
+		}
+	}
+	
+	/**
+	 * Counts the single events of each day that has any, in day order. Days of events.snap
+	 * that are not decoded are counted from its day table, so nothing is decoded.
+	 * @return	one entry for each day with events: the epoch day in the high 32 bits and
+	 * 			the number of events of the day in the low 32 bits
+	 */
+	public long[] countEventsByDay() {
+		synchronized (snapshotLock) {
+			EventTree version = dateToEvents.get();
+			EventSnapshot s = snapshot;
+			long[] counts = new long[version.size() + (s == null ? 0 : s.getDayCount())];
+			int n = 0;
+			int i = 0;
+			for (Map.Entry<Integer, DaySchedule> day : version.entrySet()) {
+				for (; s != null && i < s.getDayCount() && s.getDay(i) < day.getKey(); i++) {
+					if (!decodedDays.get(i)) {
+						counts[n++] = (long) s.getDay(i) << 32 | s.getEventCount(i);
+					}
+				}
+				int count = day.getValue().size();
+				if (s != null && i < s.getDayCount() && s.getDay(i) == day.getKey()) {
+					count += decodedDays.get(i) ? 0 : s.getEventCount(i);
+					i++;
+				}
+				counts[n++] = (long) day.getKey() << 32 | count;
+			}
+			for (; s != null && i < s.getDayCount(); i++) {
+				if (!decodedDays.get(i)) {
+					counts[n++] = (long) s.getDay(i) << 32 | s.getEventCount(i);
+				}
+			}
+			return Arrays.copyOf(counts, n);
+		}
+	}
+	
+	/**
+	 * Deletes an event. An id only names a date and start time, so the event as it was
+	 * last read is given too, and nothing is deleted if another event has taken its place
+	 * since. The deletion can be undone.
+	 * @param id		the id of the event (see Event.getId)
+	 * @param expected	the event as it was last read, which must still have that id
+	 * @return			true if the event was deleted, false if there is no such event
+	 */
+	public boolean delete(long id, Event expected) {
+		if (expected.getId() != id) {
+			return false;
+		}
+		Edit edit = replace(id, expected, null);
+		if (edit == null) {
+			return false;
+		}
+		record(edit);
+		changed(edit);
+		return true;
+	}
+	
+	/**
+	 * Replaces an event with a changed one, which may have another title, date or times.
+	 * The changed event is checked for conflicts with every event but the one it replaces.
+	 * As with delete(), nothing is changed if another event has taken the place of the
+	 * event as it was last read. The change can be undone.
+	 * @param id		the id of the event (see Event.getId)
+	 * @param expected	the event as it was last read, which must still have that id
+	 * @param changed	the event as it should be; its id is the event's id from now on
+	 * @return			true if the event was changed, false if there is no such event or
+	 * 					the changed event conflicts with another event
+	 */
+	public boolean update(long id, Event expected, Event changed) {
+		if (expected.getId() != id) {
+			return false;
+		}
+		Edit edit = replace(id, expected, changed);
+		if (edit == null) {
+			return false;
+		}
+		record(edit);
+		changed(edit);
+		return true;
+	}
+	
+	/**
+	 * Moves an event to another date or times, keeping its title, as update() does.
+	 * @param id			the id of the event (see Event.getId)
+	 * @param epochDay		the new date as a day count since 01/01/1970
+	 * @param startMinute	the new start time in minutes since midnight
+	 * @param endMinute		the new end time in minutes since midnight
+	 * @return				true if the event was moved, false if there is no event with that
+	 * 						id or the moved event conflicts with another event
+	 */
+	public boolean move(long id, int epochDay, int startMinute, int endMinute) {
+		Event e = getEvent(id);
+		return e != null && update(id, e, new Event(e.getTitle(), epochDay, startMinute, endMinute));
+	}
+	
+	/**
+	 * Removes an event replayed from the journal, if it is there. The removal is not
+	 * recorded for undo, like the other loaded changes.
+	 */
+	private void remove(Event e) {
+		Edit edit = replace(e.getId(), e, null);
+		if (edit != null) {
+			changed(edit);
+		}
+	}
+	
+	/**
+	 * Replaces or removes the event with an id: checks the replacement for conflicts and
+	 * swaps it in on both of its days at once, under their locks.
+	 * @param expected	the event that must have the id
+	 * @param changed	the replacement, or null to remove the event
+	 * @return			the change, or null if there is no such event or the replacement
+	 * 					conflicts
+	 */
+	private Edit replace(long id, Event expected, Event changed) {
+		int day = Event.dayOfId(id);
+		int newDay = changed == null ? day : changed.getEpochDay();
+		int[] days = day == newDay ? new int[] {day} : new int[] {Math.min(day, newDay), Math.max(day, newDay)};
+		storeLock.readLock().lock();
+		try {
+			for (int d : days) {
+				decode(d, d);
+			}
+			int[] stripes = lockDays(days);
+			try {
+				EventTree current = dateToEvents.get();
+				DaySchedule before = current.get(day);
+				Event old = before == null ? null : before.startingAt(Event.startMinuteOfId(id));
+				if (old == null || !old.equals(expected)) {
+					return null;
+				}
+				DaySchedule after = new DaySchedule(before);
+				after.remove(old);
+				DaySchedule target = after;
+				if (changed != null) {
+					if (newDay != day) {
+						DaySchedule existing = current.get(newDay);
+						target = existing == null ? new DaySchedule() : new DaySchedule(existing);
+					}
+					if (conflicts(newDay, target, changed)) {
+						metrics.conflicts(1);
+						return null;
+					}
+					target.add(changed);
+				}
+				Edit edit = replaceDay(day, before, after.isEmpty() ? null : after);
+				if (newDay == day) {
+					return edit;
+				}
+				return Edit.join(edit, replaceDay(newDay, current.get(newDay), target));
+			} finally {
+				unlockDays(stripes);
+			}
+		} finally {
+			storeLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Locks the days of a change, in stripe order so that two changes never wait on each other.
+	 * @return	the stripes locked, for unlockDays
+	 */
+	private int[] lockDays(int[] days) {
+		int[] stripes = new int[days.length];
+		for (int i = 0; i < days.length; i++) {
+			stripes[i] = days[i] & (DAY_LOCKS - 1);
+		}
+		Arrays.sort(stripes);
+		for (int i = 0; i < stripes.length; i++) {
+			if (i == 0 || stripes[i] != stripes[i - 1]) {
+				dayLocks[stripes[i]].lock();
+			}
+		}
+		return stripes;
+	}
+	
+	private void unlockDays(int[] stripes) {
+		for (int i = 0; i < stripes.length; i++) {
+			if (i == 0 || stripes[i] != stripes[i - 1]) {
+				dayLocks[stripes[i]].unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Compacts the journal if needed and notifies the Views of a change to some days.
+	 */
+	private void changed(Edit edit) {
+		compactIfLarge();
+		for (int day : edit.days) {
+			fireEventsChange(day, day);
+		}
+	}
+	
+	/**
+	 * Publishes a new version of the events with the schedule of a day changed. The day
+	 * then differs from events.snap, so it is never evicted.
+	 * Called while holding the day lock, so no other thread changes that day meanwhile.
+	 * @param events	the new schedule of the day, or null to remove the day
+	 * @return			the change, with the schedules just before and just after it
+	 */
+	private Edit publish(int day, DaySchedule events) {
+		if (snapshot != null) {
+			changedDays.add(day);
+		}
+		return new Edit(new int[] {day}, new DaySchedule[] {swap(day, events)}, new DaySchedule[] {events});
+	}
+	
+	/**
+	 * Publishes a new version of the events with the schedule of a day replaced. Other days
+	 * may change meanwhile, so the new version is built on the latest one.
+	 * @return	the schedule replaced
+	 */
+	private DaySchedule swap(int day, DaySchedule events) {
+		while (true) {
+			EventTree before = dateToEvents.get();
+			if (dateToEvents.compareAndSet(before, before.with(day, events))) {
+				return before.get(day);
+			}
+		}
+	}
+	
+	/**
+	 * Replaces the schedule of a day and keeps everything else about the day's events up
+	 * to date: the event count, the month summary, the title index and the journal.
+	 * Called while holding the day lock.
+	 * @param before	the schedule being replaced, or null if the day had no events
+	 * @param after		the new schedule, or null to remove the day
+	 * @return			the change
+	 */
+	private Edit replaceDay(int day, DaySchedule before, DaySchedule after) {
+		Edit edit = publish(day, after);
+		if (before != null) {
+			for (Event e : before) {
+				if (after == null || !after.contains(e)) {
+					eventCount.decrementAndGet();
+					countRemoved(e);
+					TitleIndex index = titleIndex;
+					if (index != null) {
+						index.remove(e, after);
+					}
+					journal(EventJournal.DELETE, e);
+				}
+			}
+		}
+		if (after != null) {
+			for (Event e : after) {
+				if (before == null || !before.contains(e)) {
+					countAdded(e);
+					indexAdded(e);
+					journal(EventJournal.CREATE, e);
+				}
+			}
+		}
+		return edit;
+	}
+	
+	/**
+	 * Stops counting a removed event in the summary of its month, if that month has one.
+	 * Called while holding the day lock of the event.
+	 */
+	private void countRemoved(Event e) {
+		synchronized (densities) {
+			Map.Entry<Integer, MonthDensity> month = densities.floorEntry(e.getEpochDay());
+			if (month != null && month.getValue().contains(e.getEpochDay())) {
+				month.getValue().remove(e);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the events of this calendar model as they are now: an immutable map from epoch
+	 * days to their events that later changes do not affect, so it can be read at leisure
+	 * without locking. Days of events.snap not decoded, or evicted since, are not in it.
+	 * @return	the current version of the events
+	 */
+	public EventTree getVersion() {
+		return dateToEvents.get();
+	}
+	
+	/**
+	 * Undoes the last change to the events that was not undone, as long as the days it
+	 * changed have not been changed since. Up to UNDO_LIMIT changes are kept; recurring
+	 * events and loaded events are not among them.
+	 * @return	true if a change was undone
+	 */
+	public boolean undo() {
+		return revert(undoHistory, redoHistory);
+	}
+	
+	/**
+	 * Redoes the last change that was undone, as long as the days it changed have not been
+	 * changed since it was undone.
+	 * @return	true if a change was redone
+	 */
+	public boolean redo() {
+		return revert(redoHistory, undoHistory);
+	}
+	
+	/**
+	 * Records a change made by the user for undo. A new change cannot be redone over.
+	 */
+	private void record(Edit edit) {
+		synchronized (undoHistory) {
+			undoHistory.addLast(edit);
+			if (undoHistory.size() > UNDO_LIMIT) {
+				undoHistory.removeFirst();
+			}
+			redoHistory.clear();
+		}
+	}
+	
+	/**
+	 * Takes the last change of one history, puts its days back as they were before it and
+	 * records the reverse change in the other history. A change whose days were changed
+	 * since is dropped, as putting them back would lose the later changes.
+	 */
+	private boolean revert(Deque<Edit> from, Deque<Edit> to) {
+		Edit edit;
+		synchronized (undoHistory) {
+			edit = from.pollLast();
+		}
+		if (edit == null) {
+			return false;
+		}
+		int[] days = edit.days;
+		Edit reverse = null;
+		storeLock.readLock().lock();
+		try {
+			for (int day : days) {
+				decode(day, day);
+			}
+			int[] stripes = lockDays(days);
+			try {
+				EventTree current = dateToEvents.get();
+				boolean unchanged = true;
+				for (int i = 0; i < days.length; i++) {
+					unchanged &= current.get(days[i]) == edit.after[i];
+				}
+				if (unchanged) {
+					DaySchedule[] before = new DaySchedule[days.length];
+					for (int i = 0; i < days.length; i++) {
+						before[i] = current.get(days[i]);
+						replaceDay(days[i], before[i], edit.before[i]);
+					}
+					reverse = new Edit(days, before, edit.before);
+				}
+			} finally {
+				unlockDays(stripes);
+			}
+		} finally {
+			storeLock.readLock().unlock();
+		}
+		if (reverse == null) {
+			LOG.fine("The change cannot be reverted: its days were changed since.");
+			return false;
+		}
+		synchronized (undoHistory) {
+			to.addLast(reverse);
+		}
+		changed(reverse);
+		return true;
+	}
+	
+	/**
+	 * A change to the events of some days: the schedules of its days just before and just
+	 * after it. Only those schedules are kept, not whole versions of the events, so the
+	 * undo history does not hold on to evicted days.
+	 */
+	private static class Edit {
+		final int[] days;		// sorted
+		final DaySchedule[] before;	// by position in days, null for a day without events
+		final DaySchedule[] after;
+		
+		Edit(int[] days, DaySchedule[] before, DaySchedule[] after) {
+			this.days = days;
+			this.before = before;
+			this.after = after;
+		}
+		
+		/**
+		 * Joins the changes of two different days into one.
+		 */
+		static Edit join(Edit a, Edit b) {
+			if (a.days[0] > b.days[0]) {
+				return join(b, a);
+			}
+			return new Edit(new int[] {a.days[0], b.days[0]}, new DaySchedule[] {a.before[0], b.before[0]},
+					new DaySchedule[] {a.after[0], b.after[0]});
+		}
+	}
+	
+	/**
+	 * Records a change in the journal.
+	 */
+	private void journal(char op, Event e) {
+		if (journal == null) {
+			return;
+		}
+		try {
+			journal.append(op, e);
+		} catch (IOException ex) {
+			LOG.log(Level.WARNING, "Cannot write to " + JOURNALFILE, ex);
+		}
+	}
+	
+	/**
+	 * Compacts the journal into events.txt once it grows larger than events.txt itself.
+	 */
+	private void compactIfLarge() {
+		if (journal == null || journal.size() <= Math.max(COMPACT_MIN_BYTES, snapshotSize)) {
+			return;
+		}
+		storeLock.writeLock().lock();
+		try {
+			// Another thread may have compacted while this one waited
+			if (journal.size() > Math.max(COMPACT_MIN_BYTES, snapshotSize)) {
+				compact();
+			}
+		} catch (IOException ex) {
+			LOG.log(Level.WARNING, "Cannot compact " + JOURNALFILE, ex);
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Checks for conflicting events in the tree map of events.
+	 * @param d		the date of the event to check
+	 * @param e		the event to check
+	 * @return		true if the event overlaps an existing event on that date
+	 */
+	public boolean checkConflict(String d, Event e) {
+		long start = System.nanoTime();
+		int day = toEpochDay(d);
+		boolean conflict = conflicts(day, getSchedule(day), e);
+		metrics.checkConflict.recordSince(start);
+		return conflict;
+	}
+	
+	/**
+	 * Checks if an event overlaps an event of a day or an occurrence of a recurring event
+	 * that day, and logs it.
+	 */
+	private boolean conflicts(int day, DaySchedule events, Event e) {
+		// If there is an event that day, check if there are conflicting events existing
+		if ((events != null && events.overlaps(e.getStartMinute(), e.getEndMinute()))
+				|| overlapsRecurring(day, e.getStartMinute(), e.getEndMinute())) {
+			printConflict();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Logs that an event cannot be created because of a conflict (off unless the level is
+	 * FINE, as conflicts are checked on every create).
+	 */
+	private static void printConflict() {
+		LOG.fine("The event you are trying to create is conflicting with an existing event.");
+	}
+	
+	/**
+	 * Checks if an occurrence of a recurring event on a day overlaps a time range. Each
+	 * rule is asked whether it occurs that day, so no occurrences are expanded.
+	 */
+	private boolean overlapsRecurring(int day, int start, int end) {
+		for (RecurringEvent r : recurring) {
+			if (r.overlaps(day, start, end)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Gets the existing events that conflict with an event.
+	 * @param d		the date of the event to check
+	 * @param e		the event to check
+	 * @return		the events and occurrences of recurring events on that date overlapping the
+	 * 				event, ordered by start time
+	 */
+	public List<Event> getConflicts(String d, Event e) {
+		int day = toEpochDay(d);
+		DaySchedule events = getSchedule(day);
+		List<Event> conflicts = events == null ? new ArrayList<Event>() : events.overlapping(e.getStartMinute(), e.getEndMinute());
+		List<Event> occurrences = new ArrayList<Event>();
+		for (RecurringEvent r : recurring) {
+			if (r.overlaps(day, e.getStartMinute(), e.getEndMinute())) {
+				occurrences.add(new Event(r.getFirst().getTitle(), day, r.getFirst().getStartMinute(), r.getFirst().getEndMinute()));
+			}
+		}
+		Collections.sort(occurrences, CHRONOLOGICAL);
+		return merge(conflicts, occurrences);
+	}
+	
+	/**
+	 * Creates a recurring event. Checking its occurrences for conflicts and adding it is
+	 * atomic, like create().
+	 * @param r		the recurring event to create
+	 * @return		true if the event was created, false if an occurrence conflicts with an
+	 * 				existing event (see getConflicts(RecurringEvent))
+	 */
+	public boolean createRecurring(RecurringEvent r) {
+		storeLock.writeLock().lock();
+		try {
+			if (!recurringConflicts(r, 1).isEmpty()) {
+				printConflict();
+				metrics.conflicts(1);
+				return false;
+			}
+			recurring.add(r);
+			saveRecurring();
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+		recurringChanged(r.getStartDay(), r.getUntil());
+		return true;
+	}
+	
+	/**
+	 * Creates the recurring events read from a file, once its single events are added, so
+	 * a single event wins over a rule it conflicts with wherever it is in the file. The
+	 * rules are checked against the single events in one pass over the days, and each
+	 * against the recurring events and the rules before it; the accepted rules are added at
+	 * once, and recurring.txt is written once. Rules that conflict are skipped and reported.
+	 * @param rules			the recurring events, in file order
+	 * @param lineNumbers	the line number of each rule in the file
+	 * @param source		the name of the file
+	 * @param report		the report to add the accepted and skipped rules to
+	 */
+	public void addAllRecurring(List<RecurringEvent> rules, List<Integer> lineNumbers, String source,
+			LoadReport report) {
+		if (rules.isEmpty()) {
+			return;
+		}
+		int firstDay = Integer.MAX_VALUE;
+		int lastDay = Integer.MIN_VALUE;
+		for (RecurringEvent r : rules) {
+			firstDay = Math.min(firstDay, r.getStartDay());
+			lastDay = Math.max(lastDay, r.getUntil());
+		}
+		List<RecurringEvent> added = new ArrayList<RecurringEvent>();
+		storeLock.writeLock().lock();
+		try {
+			boolean[] conflicting = singleConflicts(rules, firstDay, lastDay);
+			List<RecurringEvent> checked = new ArrayList<RecurringEvent>(recurring);
+			for (int i = 0; i < rules.size(); i++) {
+				RecurringEvent r = rules.get(i);
+				for (int k = 0; k < checked.size() && !conflicting[i]; k++) {
+					conflicting[i] = firstConflict(r, checked.get(k)) != null;
+				}
+				if (conflicting[i]) {
+					metrics.conflicts(1);
+					report.conflict(source, lineNumbers.get(i), r.printRule(), "Conflicts with an existing event");
+				} else {
+					checked.add(r);
+					added.add(r);
+					report.accept();
+				}
+			}
+			if (added.isEmpty()) {
+				return;
+			}
+			recurring.addAll(added);
+			saveRecurring();
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+		recurringChanged(firstDay, lastDay);
+	}
+	
+	/**
+	 * Removes one occurrence of a recurring event by adding an exception to its rule.
+	 * @param r			the recurring event
+	 * @param epochDay	the epoch day of the occurrence to remove
+	 * @return			true if the occurrence was removed, false if r is not on the calendar
+	 * 					or has no occurrence that day
+	 */
+	public boolean skipOccurrence(RecurringEvent r, int epochDay) {
+		storeLock.writeLock().lock();
+		try {
+			int i = recurring.indexOf(r);
+			if (i < 0 || !r.occursOn(epochDay)) {
+				return false;
+			}
+			recurring.set(i, r.except(epochDay));
+			saveRecurring();
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+		recurringChanged(epochDay, epochDay);
+		return true;
+	}
+	
+	/**
+	 * Gets the recurring events of this calendar model.
+	 * @return	the recurring events, in the order they were created
+	 */
+	public List<RecurringEvent> getRecurring() {
+		return Collections.unmodifiableList(recurring);
+	}
+	
+	/**
+	 * Gets the existing events that conflict with the occurrences of a recurring event.
+	 * Occurrences are compared with every single event, and with the other recurring events
+	 * (see firstCommonDay).
+	 * @param r		the recurring event to check
+	 * @return		the conflicting events, in chronological order; for another recurring
+	 * 				event, only its first conflicting occurrence
+	 */
+	public List<Event> getConflicts(RecurringEvent r) {
+		return recurringConflicts(r, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Finds up to limit events that conflict with the occurrences of a recurring event.
+	 * Days of events.snap that are not decoded are read without decoding them, and only
+	 * if the rule occurs on them, so a rule without an end does not load the rest of the
+	 * calendar.
+	 */
+	private List<Event> recurringConflicts(RecurringEvent r, int limit) {
+		List<Event> found = new ArrayList<Event>();
+		int start = r.getFirst().getStartMinute();
+		int end = r.getFirst().getEndMinute();
+		EventTree version;
+		EventSnapshot s;
+		BitSet decoded;
+		synchronized (snapshotLock) {
+			version = dateToEvents.get();
+			s = snapshot;
+			decoded = s == null ? null : (BitSet) decodedDays.clone();
+		}
+		// Only the days that have events are asked for an occurrence
+		for (Map.Entry<Integer, DaySchedule> day : version.entries(r.getStartDay(), r.getUntil())) {
+			if (found.size() < limit && r.occursOn(day.getKey())) {
+				found.addAll(day.getValue().overlapping(start, end));
+			}
+		}
+		for (int i = s == null ? 0 : s.firstDayAtOrAfter(r.getStartDay());
+				s != null && i < s.getDayCount() && s.getDay(i) <= r.getUntil() && found.size() < limit; i++) {
+			if (!decoded.get(i) && r.occursOn(s.getDay(i))) {
+				DaySchedule events = new DaySchedule();
+				s.readDay(i, events);
+				found.addAll(events.overlapping(start, end));
+			}
+		}
+		for (RecurringEvent q : recurring) {
+			Event occurrence = found.size() < limit ? firstConflict(r, q) : null;
+			if (occurrence != null) {
+				found.add(occurrence);
+			}
+		}
+		Collections.sort(found, CHRONOLOGICAL);
+		return found.size() > limit ? found.subList(0, limit) : found;
+	}
+	
+	/**
+	 * Finds which of several recurring events conflict with single events, in one pass over
+	 * the days they may occur on, so each day of events.snap that is not decoded is read
+	 * at most once however many rules occur on it.
+	 * @return	for each rule, whether it conflicts with a single event
+	 */
+	private boolean[] singleConflicts(List<RecurringEvent> rules, int firstDay, int lastDay) {
+		boolean[] conflicting = new boolean[rules.size()];
+		EventTree version;
+		EventSnapshot s;
+		BitSet decoded;
+		synchronized (snapshotLock) {
+			version = dateToEvents.get();
+			s = snapshot;
+			decoded = s == null ? null : (BitSet) decodedDays.clone();
+		}
+		for (Map.Entry<Integer, DaySchedule> day : version.entries(firstDay, lastDay)) {
+			markConflicts(rules, conflicting, day.getKey(), day.getValue());
+		}
+		for (int i = s == null ? 0 : s.firstDayAtOrAfter(firstDay);
+				s != null && i < s.getDayCount() && s.getDay(i) <= lastDay; i++) {
+			if (decoded.get(i)) {
+				continue;
+			}
+			for (int k = 0; k < conflicting.length; k++) {
+				if (!conflicting[k] && rules.get(k).occursOn(s.getDay(i))) {
+					DaySchedule events = new DaySchedule();
+					s.readDay(i, events);
+					markConflicts(rules, conflicting, s.getDay(i), events);
+					break;
+				}
+			}
+		}
+		return conflicting;
+	}
+	
+	/**
+	 * Marks the rules not yet marked that occur on a day at the time of one of its events.
+	 */
+	private static void markConflicts(List<RecurringEvent> rules, boolean[] conflicting, int day,
+			DaySchedule events) {
+		for (int k = 0; k < conflicting.length; k++) {
+			RecurringEvent r = rules.get(k);
+			if (!conflicting[k] && r.occursOn(day)
+					&& !events.overlapping(r.getFirst().getStartMinute(), r.getFirst().getEndMinute()).isEmpty()) {
+				conflicting[k] = true;
+			}
+		}
+	}
+	
+	/**
+	 * Finds the first occurrence of a recurring event that conflicts with one of another.
+	 * @return	the occurrence of q, or null if the two never conflict
+	 */
+	private static Event firstConflict(RecurringEvent r, RecurringEvent q) {
+		Event other = q.getFirst();
+		if (other.getStartMinute() > r.getFirst().getEndMinute() || r.getFirst().getStartMinute() > other.getEndMinute()) {
+			return null;
+		}
+		int day = firstCommonDay(r, q);
+		return day == RecurringEvent.FOREVER ? null
+				: new Event(other.getTitle(), day, other.getStartMinute(), other.getEndMinute());
+	}
+	
+	/**
+	 * Finds the first day two recurring events both occur on. Apart from their ends, counts
+	 * and exceptions, the days of both rules repeat together after the least common
+	 * multiple of their periods, so only that many days after the later start and the
+	 * last exception are looked at, and no further than the last date a calendar date can
+	 * be written for. The occurrences of the sparser rule are walked, and the other rule
+	 * is asked about each.
+	 * @return	the epoch day, or RecurringEvent.FOREVER if there is none
+	 */
+	private static int firstCommonDay(RecurringEvent r, RecurringEvent q) {
+		int from = Math.max(r.getStartDay(), q.getStartDay());
+		long period = r.getPeriodDays() / RecurringEvent.gcd(r.getPeriodDays(), q.getPeriodDays()) * q.getPeriodDays();
+		long lastException = from;
+		for (RecurringEvent rule : new RecurringEvent[] {r, q}) {
+			int[] exceptions = rule.getExceptions();
+			if (exceptions.length > 0) {
+				lastException = Math.max(lastException, exceptions[exceptions.length - 1]);
+			}
+		}
+		long to = Math.min(Math.min(r.getUntil(), q.getUntil()), Math.min(lastException + period, LAST_DAY));
+		RecurringEvent sparse = occurrencesPerDay(r) <= occurrencesPerDay(q) ? r : q;
+		RecurringEvent other = sparse == r ? q : r;
+		for (int day = sparse.nextOccurrence(from); day <= to; day = sparse.nextOccurrence(day + 1)) {
+			if (other.occursOn(day)) {
+				return day;
+			}
+		}
+		return RecurringEvent.FOREVER;
+	}
+	
+	/**
+	 * Gets about how many times a recurring event occurs per day, to tell the sparser of two.
+	 */
+	private static double occurrencesPerDay(RecurringEvent r) {
+		switch (r.getFrequency()) {
+		case DAILY:
+			return 1.0 / r.getInterval();
+		case WEEKLY:
+			return Integer.bitCount(r.getWeekdays()) / (7.0 * r.getInterval());
+		default:
+			return 1.0 / (30.44 * r.getInterval());
+		}
+	}
+	
+	/**
+	 * Drops the expanded occurrences and month summaries after the recurring events
+	 * changed, and notifies the View.
+	 */
+	private void recurringChanged(int firstDay, int lastDay) {
+		// Cleared after the rules changed, so no summary is counted from stale occurrences
+		synchronized (expanded) {
+			expanded.clear();
+		}
+		synchronized (densities) {
+			densities.clear();
+		}
+		fireEventsChange(firstDay, lastDay);
+	}
+	
+	/**
+	 * Gets the occurrences of the recurring events between two epoch days (inclusive) in
+	 * chronological order. Occurrences are expanded by month, and the months most recently
+	 * looked at are kept expanded.
+	 * @param fromDay	the first epoch day of the range
+	 * @param toDay		the last epoch day of the range
+	 * @return			the occurrences in the range, ordered by date and start time
+	 */
+	public List<Event> occurrencesBetween(int fromDay, int toDay) {
+		List<Event> result = new ArrayList<Event>();
+		int firstStart = Integer.MAX_VALUE;
+		int lastUntil = Integer.MIN_VALUE;
+		for (RecurringEvent r : recurring) {
+			firstStart = Math.min(firstStart, r.getStartDay());
+			lastUntil = Math.max(lastUntil, r.getUntil());
+		}
+		fromDay = Math.max(fromDay, firstStart);
+		toDay = Math.min(toDay, lastUntil);
+		if (fromDay > toDay) {
+			return result;
+		}
+		int date = Event.toYearMonthDay(fromDay);
+		int firstDay = fromDay - date % 100 + 1;
+		while (firstDay <= toDay) {
+			date = Event.toYearMonthDay(firstDay);
+			int lastDay = firstDay + Event.lengthOfMonth(date / 10000, date / 100 % 100) - 1;
+			for (Event e : occurrencesInMonth(firstDay, lastDay)) {
+				if (e.getEpochDay() >= fromDay && e.getEpochDay() <= toDay) {
+					result.add(e);
+				}
+			}
+			if (lastDay >= toDay) {
+				break;
+			}
+			firstDay = lastDay + 1;
+		}
+		return result;
+	}
+	
+	/**
+	 * Gets the occurrences of the recurring events in a month, expanding them if the month
+	 * is not cached.
+	 */
+	private List<Event> occurrencesInMonth(int firstDay, int lastDay) {
+		synchronized (expanded) {
+			List<Event> month = expanded.get(firstDay);
+			if (month == null) {
+				List<Event> occurrences = new ArrayList<Event>();
+				for (RecurringEvent r : recurring) {
+					r.occurrences(firstDay, lastDay, occurrences);
+				}
+				Collections.sort(occurrences, CHRONOLOGICAL);
+				month = Collections.unmodifiableList(occurrences);
+				expanded.put(firstDay, month);
+			}
+			return month;
+		}
+	}
+	
+	/**
+	 * Merges two lists of events that are each in chronological order.
+	 */
+	private static List<Event> merge(List<Event> a, List<Event> b) {
+		if (b.isEmpty()) {
+			return a;
+		}
+		List<Event> merged = new ArrayList<Event>(a.size() + b.size());
+		int i = 0;
+		int j = 0;
+		while (i < a.size() || j < b.size()) {
+			if (j == b.size() || (i < a.size() && CHRONOLOGICAL.compare(a.get(i), b.get(j)) <= 0)) {
+				merged.add(a.get(i++));
+			} else {
+				merged.add(b.get(j++));
+			}
+		}
+		return merged;
+	}
+	
+	/**
+	 * Writes the recurring events into recurring.txt, once the stored events are loaded.
+	 * Called while holding the write lock.
+	 */
+	private void saveRecurring() {
+		if (journal == null) {
+			return;
+		}
+		try {
+			writeRecurringFile(Paths.get(RECURRINGFILE));
+		} catch (IOException ex) {
+			LOG.log(Level.WARNING, "Cannot write " + RECURRINGFILE, ex);
+		}
+	}
+	
+	/**
+	 * Gets the events on this calendar model's current date.
+	 * @return	the events on this calendar model's current date
+	 * 			format: MM/dd/yyyy
+	 * 					start time - end time	title of event 1
+	 * 					start time - end time	title of event 2
+	 * 					etc.
+	 */
+	public String getEvents() {
+		return getEvents(getEpochDay());
+	}
+	
+	/**
+	 * Gets the events on a date, formatted like getEvents().
+	 * @param epochDay	the date as a day count since 01/01/1970
+	 * @return			the date followed by one line per event
+	 */
+	public String getEvents(int epochDay) {
+		long start = System.nanoTime();
+		StringBuilder events = new StringBuilder();
+		for (Event e : eventsBetween(epochDay, epochDay)) {
+			events.append(e.getStartTime() + " - " + e.getEndTime() + "\t" + e.getTitle());
+			events.append("\n");
+		}
+		String list = Event.formatDate(epochDay) + "\n" + events.toString();
+		metrics.getEvents.recordSince(start);
+		return list;
+	}
+	
+	/**
+	 * Gets the events between two dates (inclusive) in chronological order.
+	 * @param from	the first date of the range
+	 * @param to	the last date of the range
+	 * @return		the events in the range, ordered by date
+	 */
+	public List<Event> eventsBetween(LocalDate from, LocalDate to) {
+		return eventsBetween((int) from.toEpochDay(), (int) to.toEpochDay());
+	}
+	
+	/**
+	 * Gets the events between two epoch days (inclusive) in chronological order, with the
+	 * occurrences of recurring events in the range.
+	 * @param fromDay	the first epoch day of the range
+	 * @param toDay		the last epoch day of the range
+	 * @return			the events in the range, ordered by date
+	 */
+	public List<Event> eventsBetween(int fromDay, int toDay) {
+		List<Event> result = new ArrayList<Event>();
+		if (fromDay > toDay) {
+			return result;
+		}
+		for (DaySchedule events : decode(fromDay, toDay).values(fromDay, toDay)) {
+			for (Event e : events) {
+				result.add(e);
+			}
+		}
+		return merge(result, occurrencesBetween(fromDay, toDay));
+	}
+	
+	/**
+	 * Gets the events in a month in chronological order.
+	 * @param year	the year of the month
+	 * @param month	the month (0 for January, as in Calendar.MONTH)
+	 * @return		the events in the month, ordered by date
+	 */
+	public List<Event> eventsInMonth(int year, int month) {
+		LocalDate first = LocalDate.of(year, month + 1, 1);
+		return eventsBetween(first, first.withDayOfMonth(first.lengthOfMonth()));
+	}
+	
+	/**
+	 * Finds the first free slots between two dates (inclusive) that are long enough for an
+	 * event, within working hours.
+	 * @param from				the first date to search
+	 * @param to				the last date to search
+	 * @param durationMinutes	the length of the event in minutes
+	 * @param workStart			the start of the working hours in minutes since midnight
+	 * @param workEnd			the end of the working hours in minutes since midnight
+	 * @param max				the largest number of slots to find
+	 * @return					the free slots, ordered by date
+	 */
+	public List<TimeSlot> findFreeSlots(LocalDate from, LocalDate to, int durationMinutes, int workStart, int workEnd, int max) {
+		return findFreeSlots((int) from.toEpochDay(), (int) to.toEpochDay(), durationMinutes, workStart, workEnd, max);
+	}
+	
+	/**
+	 * Finds the first free slots between two epoch days (inclusive) that are long enough
+	 * for an event, within working hours. Each day's events and occurrences of recurring
+	 * events are walked once in start order, and each gap between them is a slot if it
+	 * fits the event. An event created anywhere in a slot does not conflict: slots start
+	 * after the end of the previous event, rounded up to 5 minutes, and end before the
+	 * start of the next one.
+	 * @param fromDay			the first epoch day to search
+	 * @param toDay				the last epoch day to search
+	 * @param durationMinutes	the length of the event in minutes
+	 * @param workStart			the start of the working hours in minutes since midnight
+	 * @param workEnd			the end of the working hours in minutes since midnight
+	 * @param max				the largest number of slots to find
+	 * @return					the free slots, each a whole gap between events, ordered by date
+	 * @throws IllegalArgumentException	if the duration or working hours are not valid
+	 */
+	public List<TimeSlot> findFreeSlots(int fromDay, int toDay, int durationMinutes, int workStart, int workEnd, int max) {
+		if (durationMinutes < 1 || workStart < 0 || workEnd >= 24 * 60 || workStart > workEnd) {
+			throw new IllegalArgumentException("Invalid duration or working hours");
+		}
+		List<TimeSlot> slots = new ArrayList<TimeSlot>();
+		if (fromDay > toDay || max <= 0) {
+			return slots;
+		}
+		EventTree version = decode(fromDay, toDay);
+		List<Event> occurrences = occurrencesBetween(fromDay, toDay);
+		int o = 0;		// next occurrence
+		for (int day = fromDay; day <= toDay && day >= fromDay; day++) {
+			DaySchedule events = version.get(day);
+			int size = events == null ? 0 : events.size();
+			int i = 0;		// next event of the day
+			int free = roundUp(workStart);		// earliest start of a slot
+			while (true) {
+				// The next busy time is the event or occurrence starting first
+				Event next = i < size ? events.get(i) : null;
+				if (o < occurrences.size() && occurrences.get(o).getEpochDay() == day
+						&& (next == null || occurrences.get(o).getStartMinute() < next.getStartMinute())) {
+					next = occurrences.get(o++);
+				} else if (next != null) {
+					i++;
+				}
+				int end = next == null ? workEnd : Math.min(workEnd, next.getStartMinute() - 1);
+				if (end - free >= durationMinutes) {
+					slots.add(new TimeSlot(day, free, end));
+					if (slots.size() == max) {
+						return slots;
+					}
+				}
+				if (next == null || next.getStartMinute() > workEnd) {
+					break;
+				}
+				free = Math.max(free, roundUp(next.getEndMinute() + 1));
+			}
+			while (o < occurrences.size() && occurrences.get(o).getEpochDay() <= day) {
+				o++;
+			}
+		}
+		return slots;
+	}
+	
+	private static int roundUp(int minute) {
+		return (minute + SLOT_ROUNDING - 1) / SLOT_ROUNDING * SLOT_ROUNDING;
+	}
+	
+	/**
+	 * Lists the events on this calendar model.
+	 * @return	the list of events on this calendar model
+	 */
+	public String eventList() {
+		StringBuilder list = new StringBuilder();
+		
+		if (isEmpty()) {
+			LOG.fine("There are no scheduled events to show.");
+		}
+		
+		try {
+			writeEvents(list);
+			writeRecurring(list);
+		} catch (IOException e) {
+			// StringBuilder does not throw
+			throw new IllegalStateException(e);
+		}
+		return list.toString();
+	}
+	
+	/**
+	 * Writes the list of events on this calendar model, one per line in chronological
+	 * order, under a heading.
+	 * @param out	where to write the list
+	 * @throws IOException	if out cannot be written to
+	 */
+	public void eventList(Appendable out) throws IOException {
+		out.append("List of all scheduled events: \n");
+		if (isEmpty()) {
+			out.append("\tThere are no scheduled events to show.\n");
+		}
+		writeEvents(out);
+		writeRecurring(out);
+	}
+	
+	/**
+	 * Writes the recurring events in the recurring.txt format, one per line.
+	 */
+	private void writeRecurring(Appendable out) throws IOException {
+		for (RecurringEvent r : recurring) {
+			out.append(r.printRule()).append('\n');
+		}
+	}
+	
+	/**
+	 * Writes every event on this calendar model in the events.txt format, one per line in
+	 * chronological order. Events are formatted straight into out, so the memory used
+	 * does not grow with the number of events.
+	 * @param out	where to write the events
+	 * @throws IOException	if out cannot be written to
+	 */
+	public void writeEvents(Appendable out) throws IOException {
+		for (Event e : events()) {
+			e.appendTo(out);
+			out.append('\n');
+		}
+	}
+	
+	/**
+	 * Gets a sequential stream of the events on this calendar model in chronological order.
+	 * @return	a stream of the events, ordered by date and start time
+	 */
+	public Stream<Event> eventStream() {
+		return StreamSupport.stream(events().spliterator(), false);
+	}
+	
+	/**
+	 * Checks if there are no events on this calendar model.
+	 * @return	true if there are no events and no recurring events
+	 */
+	public boolean isEmpty() {
+		return dateToEvents.get().isEmpty() && (snapshot == null || snapshot.getDayCount() == 0) && recurring.isEmpty();
+	}
+	
+	/**
+	 * Gets the number of single events on this calendar model, including those not yet
+	 * decoded from events.snap.
+	 * @return	the number of single events
+	 */
+	public int getEventCount() {
+		return eventCount.get();
+	}
+	
+	/**
+	 * Gets the number of days with single events on this calendar model, including those
+	 * not yet decoded from events.snap.
+	 * @return	the number of days with events
+	 */
+	public int getDayCount() {
+		synchronized (snapshotLock) {
+			int undecoded = snapshot == null ? 0 : snapshot.getDayCount() - decodedCount;
+			return dateToEvents.get().size() + undecoded;
+		}
+	}
+	
+	/**
+	 * Gets the counters and latency histograms of this calendar model.
+	 * @return	the metrics of this calendar model
+	 */
+	public CalendarMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Exits the calendar application and saves all created events. Events are already
+	 * recorded in the journal, so only its pending entries are written; without a journal
+	 * all events are written into events.txt, and recurring events into recurring.txt.
+	 */
+	public void quit() {
+		long start = System.nanoTime();
+		try {
+			if (journal != null) {
+				journal.sync();
+				metrics.saved(start, journal.size());
+				LOG.info("Events successfully saved. (" + JOURNALFILE + ")");
+			}
+			else {
+				writeEventFile(Paths.get(EVENTFILE));
+				LOG.info("File successfully created. (events.txt)");
+				if (!recurring.isEmpty()) {
+					writeRecurringFile(Paths.get(RECURRINGFILE));
+					LOG.info("File successfully created. (" + RECURRINGFILE + ")");
+				}
+				metrics.saved(start, size(Paths.get(EVENTFILE)) + size(Paths.get(RECURRINGFILE)));
+			}
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Cannot save the events", e);
 		}
 		
 	}	// end of quit method
@@ -0,0 +1,479 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP server answering JSON requests about a calendar model, so other tools on
+ * the same machine can read and book events while the calendar runs. It only listens on
+ * the loopback address. Requests run on virtual threads where the JDK has them (21 and
+ * later), otherwise on a pool of a few threads per core; the model is safe to use from
+ * them while the View uses it.
+ *
+ * 		GET  /events?date=MM/dd/yyyy					the events of a day
+ * 		GET  /events?month=MM/yyyy						the events of a month
+ * 		GET  /events?from=MM/dd/yyyy&to=MM/dd/yyyy		the events of a range of days
+ * 		POST /events  {"title":..,"date":"MM/dd/yyyy","start":"HH:mm","end":"HH:mm"}
+ * 			creates an event: 201 with the event, or 409 with the conflicting events
+ * 		GET  /freebusy?from=..&to=..[&duration=60&workStart=08:00&workEnd=18:00&max=50]
+ * 			the busy times and the free slots of a range of days
+ *
+ * Listening on the loopback address does not keep out web pages open in a browser on the
+ * same machine, so requests must name a loopback Host, which a page reaching the port
+ * through a rebound DNS name cannot, and must not come from a foreign Origin. A POST body
+ * must be JSON, which a page cannot send to another origin without asking first.
+ *
+ * Events cannot be booked while the calendar is still loading its stored events, since
+ * they would not be saved; such requests are answered with 503.
+ *
+ * Errors are answered with {"error": message} and status 400, 403, 404, 405, 415, 500
+ * or 503.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class CalendarServer {
+
+	private static final int BACKLOG = 1024;				// connections waiting to be accepted
+	private static final int MAX_RANGE_DAYS = 10 * 366;		// longest range of days answered
+	private static final int MAX_BODY_BYTES = 64 * 1024;
+	private static final Set<String> LOOPBACK_HOSTS = new HashSet<String>(Arrays.asList("localhost", "127.0.0.1", "[::1]"));
+	private static final Logger LOG = Logger.getLogger(CalendarServer.class.getName());
+
+	static {
+		// Without it each response waits for a delayed ACK (about 40 ms) on a kept-alive connection
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final CalendarModel model;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * Constructs a server for a calendar model on a loopback port.
+	 * @param model		the calendar model to serve
+	 * @param port		the port to listen on, or 0 for any free port
+	 * @throws IOException	if the port cannot be bound
+	 */
+	public CalendarServer(CalendarModel model, int port) throws IOException {
+		this.model = model;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+		this.executor = newRequestExecutor();
+		server.setExecutor(executor);
+		server.createContext("/events", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, "/events");
+			}
+		});
+		server.createContext("/freebusy", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, "/freebusy");
+			}
+		});
+	}
+
+	/**
+	 * Starts answering requests.
+	 */
+	public void start() {
+		server.start();
+		LOG.info("Calendar API listening on http://" + server.getAddress().getHostString() + ":" + getPort() + "/");
+	}
+
+	/**
+	 * Stops the server, waiting up to a second for the requests being answered.
+	 */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+	}
+
+	/**
+	 * Gets the port the server listens on.
+	 * @return	the port
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Creates an executor that runs each task on a new virtual thread if the JDK has them,
+	 * or else on a fixed pool of daemon threads.
+	 * @return	the executor
+	 */
+	public static ExecutorService newRequestExecutor() {
+		try {
+			Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtual.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			// Before JDK 21: requests are short, so a few threads per core keep up
+		}
+		return Executors.newFixedThreadPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+			private int count;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "calendar-http-" + ++count);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Answers a request, turning invalid parameters and unreadable bodies into a 400
+	 * response and failures of the model into a 500 response. The exchange is always closed.
+	 */
+	private void respond(HttpExchange exchange, String context) throws IOException {
+		int status;
+		String body;
+		try {
+			if (!isLocal(exchange)) {
+				status = 403;
+				body = error("Forbidden");
+			} else if (!exchange.getRequestURI().getPath().equals(context)) {
+				status = 404;
+				body = error("Not found");
+			} else if (context.equals("/events") && exchange.getRequestMethod().equals("POST") && model.isLoading()) {
+				status = 503;
+				body = error("The stored events are still loading");
+			} else if (context.equals("/events") && exchange.getRequestMethod().equals("POST")) {
+				String type = exchange.getRequestHeaders().getFirst("Content-Type");
+				if (type == null || !type.toLowerCase(Locale.ROOT).matches("application/json\\s*(;.*)?")) {
+					status = 415;
+					body = error("Expected Content-Type: application/json");
+				} else {
+					Map<String, String> fields = parseJson(readBody(exchange));
+					Event e = new Event(required(fields, "title"), required(fields, "date"), required(fields, "start"),
+							required(fields, "end"));
+					if (model.create(e.getDate(), e)) {
+						status = 201;
+						body = "{\"created\":" + json(e) + "}";
+					} else {
+						status = 409;
+						body = "{\"error\":\"Conflicts with an existing event\",\"conflicts\":"
+								+ json(model.getConflicts(e.getDate(), e)) + "}";
+					}
+				}
+			} else if (!exchange.getRequestMethod().equals("GET")) {
+				status = 405;
+				body = error("Method not allowed");
+			} else {
+				Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+				status = 200;
+				body = context.equals("/events") ? events(query) : freeBusy(query);
+			}
+		} catch (IllegalArgumentException e) {
+			status = 400;
+			body = error(e.getMessage());
+		} catch (IOException e) {
+			// The request body could not be read
+			status = 400;
+			body = error("Cannot read the request: " + e.getMessage());
+		} catch (RuntimeException e) {
+			LOG.log(Level.WARNING, "Failed to answer " + exchange.getRequestMethod() + " " + exchange.getRequestURI(), e);
+			status = 500;
+			body = error("Internal error");
+		}
+		try {
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(status, bytes.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(bytes);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Tells whether a request names a loopback Host and, if it has an Origin, a loopback
+	 * origin, so it cannot come from a web page of another site.
+	 */
+	private static boolean isLocal(HttpExchange exchange) {
+		String host = exchange.getRequestHeaders().getFirst("Host");
+		if (host == null || !LOOPBACK_HOSTS.contains(stripPort(host.trim().toLowerCase(Locale.ROOT)))) {
+			return false;
+		}
+		String origin = exchange.getRequestHeaders().getFirst("Origin");
+		if (origin == null) {
+			return true;
+		}
+		origin = origin.trim().toLowerCase(Locale.ROOT);
+		String scheme = origin.startsWith("http://") ? "http://" : origin.startsWith("https://") ? "https://" : null;
+		return scheme != null && LOOPBACK_HOSTS.contains(stripPort(origin.substring(scheme.length())));
+	}
+
+	/**
+	 * Removes the port from a host and port, as in a Host header.
+	 */
+	private static String stripPort(String host) {
+		int colon = host.lastIndexOf(':');
+		return colon > host.lastIndexOf(']') ? host.substring(0, colon) : host;
+	}
+
+	/**
+	 * Answers GET /events.
+	 */
+	private String events(Map<String, String> query) {
+		int[] range = range(query);
+		return "{\"from\":\"" + Event.formatDate(range[0]) + "\",\"to\":\"" + Event.formatDate(range[1])
+				+ "\",\"events\":" + json(model.eventsBetween(range[0], range[1])) + "}";
+	}
+
+	/**
+	 * Answers GET /freebusy.
+	 */
+	private String freeBusy(Map<String, String> query) {
+		int[] range = range(query);
+		int duration = query.containsKey("duration") ? parseInt(query.get("duration")) : 60;
+		int workStart = query.containsKey("workStart") ? Event.parseMinuteOfDay(query.get("workStart")) : 8 * 60;
+		int workEnd = query.containsKey("workEnd") ? Event.parseMinuteOfDay(query.get("workEnd")) : 18 * 60;
+		int max = query.containsKey("max") ? parseInt(query.get("max")) : 50;
+		StringBuilder json = new StringBuilder("{\"busy\":[");
+		String comma = "";
+		for (Event e : model.eventsBetween(range[0], range[1])) {
+			json.append(comma).append("{\"date\":\"").append(e.getDate()).append("\",\"start\":\"")
+					.append(e.getStartTime()).append("\",\"end\":\"").append(e.getEndTime()).append("\"}");
+			comma = ",";
+		}
+		json.append("],\"free\":[");
+		comma = "";
+		for (TimeSlot slot : model.findFreeSlots(range[0], range[1], duration, workStart, workEnd, max)) {
+			json.append(comma).append("{\"date\":\"").append(slot.getDate()).append("\",\"start\":\"")
+					.append(slot.getStartTime()).append("\",\"end\":\"").append(slot.getEndTime()).append("\"}");
+			comma = ",";
+		}
+		return json.append("]}").toString();
+	}
+
+	/**
+	 * Gets the range of epoch days of a query: a date, a month or from/to dates.
+	 */
+	private static int[] range(Map<String, String> query) {
+		int from;
+		int to;
+		if (query.containsKey("date")) {
+			from = Event.parseEpochDay(query.get("date"));
+			to = from;
+		} else if (query.containsKey("month")) {
+			String month = query.get("month");
+			if (month.length() != 7 || month.charAt(2) != '/') {
+				throw new IllegalArgumentException("Invalid month (expected MM/yyyy): " + month);
+			}
+			from = Event.parseEpochDay(month.substring(0, 3) + "01" + month.substring(2));
+			int date = Event.toYearMonthDay(from);
+			to = from + Event.lengthOfMonth(date / 10000, date / 100 % 100) - 1;
+		} else if (query.containsKey("from") && query.containsKey("to")) {
+			from = Event.parseEpochDay(query.get("from"));
+			to = Event.parseEpochDay(query.get("to"));
+		} else {
+			throw new IllegalArgumentException("Expected date, month or from and to");
+		}
+		if (to < from || to - from >= MAX_RANGE_DAYS) {
+			throw new IllegalArgumentException("Invalid range (at most " + MAX_RANGE_DAYS + " days)");
+		}
+		return new int[] {from, to};
+	}
+
+	private static String required(Map<String, String> fields, String name) {
+		String value = fields.get(name);
+		if (value == null) {
+			throw new IllegalArgumentException("Missing " + name);
+		}
+		return value;
+	}
+
+	private static int parseInt(String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number: " + value);
+		}
+	}
+
+	/**
+	 * Reads the body of a request, refusing overly long bodies.
+	 */
+	private static String readBody(HttpExchange exchange) throws IOException {
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			body.write(buffer, 0, n);
+			if (body.size() > MAX_BODY_BYTES) {
+				throw new IllegalArgumentException("Request body too long");
+			}
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Parses a query string.
+	 */
+	private static Map<String, String> parseForm(String form) {
+		Map<String, String> values = new HashMap<String, String>();
+		if (form == null || form.isEmpty()) {
+			return values;
+		}
+		try {
+			for (String pair : form.split("&")) {
+				int equals = pair.indexOf('=');
+				if (equals > 0) {
+					values.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+							URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+				}
+			}
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+		return values;
+	}
+
+	/**
+	 * Parses a JSON object whose values are strings, as sent to POST /events.
+	 */
+	private static Map<String, String> parseJson(String json) {
+		Map<String, String> values = new HashMap<String, String>();
+		int[] at = {skipSpaces(json, 0)};
+		expect(json, at, '{');
+		if (peek(json, at) == '}') {
+			at[0]++;
+		} else {
+			while (true) {
+				String name = parseString(json, at);
+				expect(json, at, ':');
+				values.put(name, parseString(json, at));
+				if (peek(json, at) != ',') {
+					break;
+				}
+				at[0]++;
+			}
+			expect(json, at, '}');
+		}
+		if (skipSpaces(json, at[0]) != json.length()) {
+			throw new IllegalArgumentException("Invalid JSON: text after the object");
+		}
+		return values;
+	}
+
+	/**
+	 * Parses a JSON string literal at a position, moving the position past it.
+	 */
+	private static String parseString(String json, int[] at) {
+		expect(json, at, '"');
+		StringBuilder s = new StringBuilder();
+		for (int i = at[0]; i < json.length(); i++) {
+			char c = json.charAt(i);
+			if (c == '"') {
+				at[0] = i + 1;
+				return s.toString();
+			} else if (c != '\\') {
+				s.append(c);
+			} else if (++i < json.length()) {
+				c = json.charAt(i);
+				int escape = "\"\\/bfnrt".indexOf(c);
+				if (escape >= 0) {
+					s.append("\"\\/\b\f\n\r\t".charAt(escape));
+				} else if (c == 'u' && i + 4 < json.length()) {
+					try {
+						s.append((char) Integer.parseInt(json.substring(i + 1, i + 5), 16));
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("Invalid JSON: bad \\u escape");
+					}
+					i += 4;
+				} else {
+					throw new IllegalArgumentException("Invalid JSON: bad escape \\" + c);
+				}
+			}
+		}
+		throw new IllegalArgumentException("Invalid JSON: unterminated string");
+	}
+
+	private static void expect(String json, int[] at, char c) {
+		if (peek(json, at) != c) {
+			throw new IllegalArgumentException("Invalid JSON: expected " + c + " at " + at[0]);
+		}
+		at[0]++;
+	}
+
+	/**
+	 * Skips spaces at a position and gets the next character, or 0 at the end.
+	 */
+	private static char peek(String json, int[] at) {
+		at[0] = skipSpaces(json, at[0]);
+		return at[0] < json.length() ? json.charAt(at[0]) : 0;
+	}
+
+	private static int skipSpaces(String json, int i) {
+		while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private static String error(String message) {
+		StringBuilder json = new StringBuilder("{\"error\":");
+		appendString(json, message);
+		return json.append("}").toString();
+	}
+
+	private static String json(List<Event> events) {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < events.size(); i++) {
+			json.append(i == 0 ? "" : ",").append(json(events.get(i)));
+		}
+		return json.append("]").toString();
+	}
+
+	private static String json(Event e) {
+		StringBuilder json = new StringBuilder("{\"title\":");
+		appendString(json, e.getTitle());
+		return json.append(",\"date\":\"").append(e.getDate()).append("\",\"start\":\"").append(e.getStartTime())
+				.append("\",\"end\":\"").append(e.getEndTime()).append("\"}").toString();
+	}
+
+	/**
+	 * Appends a string as a JSON string literal.
+	 */
+	private static void appendString(StringBuilder json, String s) {
+		json.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+}	// end of CalendarServer class
@@ -0,0 +1,351 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Command-line tool for working with events files without the GUI. Files are loaded with
+ * the same rules as the calendar (unparsable lines and conflicting events are skipped
+ * and reported), so a file the tool accepts loads cleanly in the calendar.
+ *
+ * Files are read in chunks of lines that are parsed on all cores while earlier chunks
+ * are added to the calendar, with a bounded number of chunks in flight, so the memory
+ * used grows with the number of events kept rather than the size of the files.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class CalendarTool {
+
+	private static final int CHUNK_LINES = 8192;		// lines parsed together by one thread
+	private static final int CHUNKS_PER_THREAD = 2;		// chunks in flight per parsing thread
+
+	private static final String USAGE =
+			"Usage: java SimpleCalendar <command> [options] <file>...\n"
+			+ "Commands:\n"
+			+ "  validate <file>...          check that every line parses and no events conflict\n"
+			+ "  conflicts <file>...         list the events that conflict with an earlier event\n"
+			+ "  merge --out <file> <file>...\n"
+			+ "                              merge files into one calendar in chronological order\n"
+			+ "Options:\n"
+			+ "  --format text|snap|ics      format of the merged file (default: text)\n"
+			+ "  --threads <n>               number of parsing threads (default: all cores)\n"
+			+ "Input files are in the events.txt format, events.snap snapshots if they end in .snap,\n"
+			+ "or iCalendar files if they end in .ics.";
+
+	private final PrintStream out;
+	private final int threads;
+
+	/**
+	 * Constructs a tool that reports to a stream.
+	 * @param out		where to report
+	 * @param threads	the number of parsing threads
+	 */
+	public CalendarTool(PrintStream out, int threads) {
+		this.out = out;
+		this.threads = threads;
+	}
+
+	/**
+	 * Runs the tool from the command line and exits with its status.
+	 * @param args	the command, options and files
+	 */
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+
+	/**
+	 * Runs a command.
+	 * @param args	the command, options and files
+	 * @return		0 if the command succeeded, 1 if lines were rejected, 2 if the command
+	 * 				could not run
+	 */
+	public static int run(String[] args) {
+		if (args.length == 0) {
+			System.err.println(USAGE);
+			return 2;
+		}
+		String command = args[0];
+		String format = "text";
+		Path output = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<Path> files = new ArrayList<Path>();
+		try {
+			for (int i = 1; i < args.length; i++) {
+				if (args[i].equals("--out") && i + 1 < args.length) {
+					output = Paths.get(args[++i]);
+				} else if (args[i].equals("--format") && i + 1 < args.length) {
+					format = args[++i];
+				} else if (args[i].equals("--threads") && i + 1 < args.length) {
+					threads = Integer.parseInt(args[++i]);
+				} else if (args[i].startsWith("--")) {
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+				} else {
+					files.add(Paths.get(args[i]));
+				}
+			}
+			if (files.isEmpty()) {
+				throw new IllegalArgumentException("No files given");
+			}
+			if (threads < 1) {
+				throw new IllegalArgumentException("Invalid number of threads: " + threads);
+			}
+			if (!format.equals("text") && !format.equals("snap") && !format.equals("ics")) {
+				throw new IllegalArgumentException("Unknown format " + format);
+			}
+			if (command.equals("merge") && output == null) {
+				throw new IllegalArgumentException("merge needs --out <file>");
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			return 2;
+		}
+
+		CalendarTool tool = new CalendarTool(System.out, threads);
+		try {
+			switch (command) {
+			case "validate":
+				return tool.validate(files, false);
+			case "conflicts":
+				return tool.validate(files, true);
+			case "merge":
+				return tool.merge(files, output, format);
+			default:
+				System.err.println("Unknown command " + command);
+				System.err.println(USAGE);
+				return 2;
+			}
+		} catch (IOException e) {
+			System.err.println("Error: " + e);
+			return 2;
+		}
+	}
+
+	/**
+	 * Loads files and reports the lines that would be skipped by the calendar.
+	 * @param files			the files to check
+	 * @param conflictsOnly	true to report only conflicting events, not unparsable lines
+	 * @return				0 if nothing is reported, 1 otherwise
+	 * @throws IOException	if a file cannot be read
+	 */
+	public int validate(List<Path> files, boolean conflictsOnly) throws IOException {
+		LoadReport report = new LoadReport();
+		load(files, report);
+		int reported = 0;
+		for (LoadReport.Rejection r : report.getRejected()) {
+			if (!conflictsOnly || r.isConflict()) {
+				out.println(r);
+				reported++;
+			}
+		}
+		out.println(report.getLoadedCount() + " events, " + (report.getRejectedCount() - report.getConflictCount())
+				+ " invalid lines, " + report.getConflictCount() + " conflicts");
+		return reported == 0 ? 0 : 1;
+	}
+
+	/**
+	 * Merges files into one file in chronological order. Lines that would be skipped by
+	 * the calendar are left out and reported.
+	 * @param files		the files to merge
+	 * @param output	the merged file
+	 * @param format	"text" for the events.txt format, "snap" for an events.snap snapshot,
+	 * 					"ics" for an iCalendar file
+	 * @return			0 if every line was merged, 1 if lines were left out
+	 * @throws IOException	if a file cannot be read or written
+	 */
+	public int merge(List<Path> files, Path output, String format) throws IOException {
+		LoadReport report = new LoadReport();
+		CalendarModel model = load(files, report);
+		for (LoadReport.Rejection r : report.getRejected()) {
+			out.println("Skipped " + r);
+		}
+		if (format.equals("snap")) {
+			EventSnapshot.write(output, model.events());
+		} else {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(output.toFile()), StandardCharsets.UTF_8), 1 << 16);
+			try {
+				if (format.equals("ics")) {
+					model.exportICalendar(writer);
+				} else {
+					model.writeEvents(writer);
+				}
+			} finally {
+				writer.close();
+			}
+		}
+		if (!format.equals("ics") && !model.getRecurring().isEmpty()) {
+			out.println(model.getRecurring().size() + " recurring events left out (only --format ics holds them)");
+		}
+		out.println(report.getLoadedCount() + " events written to " + output + ", "
+				+ report.getRejectedCount() + " lines skipped");
+		return report.getRejectedCount() == 0 ? 0 : 1;
+	}
+
+	/**
+	 * Loads files in order into a new calendar model.
+	 */
+	private CalendarModel load(List<Path> files, LoadReport report) throws IOException {
+		CalendarModel model = new CalendarModel();
+		ExecutorService parsers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count;
+
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "event-parser-" + ++count);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			for (Path file : files) {
+				if (file.getFileName().toString().endsWith(".snap")) {
+					readSnapshot(file, model, report);
+				} else if (file.getFileName().toString().endsWith(".ics")) {
+					readICalendar(file, model, report);
+				} else {
+					readText(file, model, report, parsers);
+				}
+			}
+		} finally {
+			parsers.shutdownNow();
+		}
+		return model;
+	}
+
+	/**
+	 * Reads a text file in chunks that are parsed in parallel and added to the model in
+	 * file order.
+	 */
+	private void readText(Path file, CalendarModel model, final LoadReport report, ExecutorService parsers) throws IOException {
+		final String source = file.getFileName().toString();
+		Deque<Future<EventBatch>> pending = new ArrayDeque<Future<EventBatch>>();
+		BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+		try {
+			String[] lines = new String[CHUNK_LINES];
+			int count = 0;
+			int lineNumber = 0;
+			String line;
+			while ((line = br.readLine()) != null) {
+				lines[count++] = line;
+				lineNumber++;
+				if (count == CHUNK_LINES) {
+					pending.add(submit(parsers, lines, count, lineNumber - count + 1, source, report));
+					lines = new String[CHUNK_LINES];
+					count = 0;
+					// Keep a bounded number of chunks in memory
+					if (pending.size() >= threads * CHUNKS_PER_THREAD) {
+						model.addAll(next(pending), report);
+					}
+				}
+			}
+			if (count > 0) {
+				pending.add(submit(parsers, lines, count, lineNumber - count + 1, source, report));
+			}
+			while (!pending.isEmpty()) {
+				model.addAll(next(pending), report);
+			}
+		} finally {
+			br.close();
+			for (Future<EventBatch> f : pending) {
+				f.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Reads an iCalendar file one VEVENT at a time, adding its events to the model in chunks.
+	 */
+	private static void readICalendar(Path file, final CalendarModel model, final LoadReport report) throws IOException {
+		final String source = file.getFileName().toString();
+		final List<RecurringEvent> rules = new ArrayList<RecurringEvent>();
+		final List<Integer> lineNumbers = new ArrayList<Integer>();
+		BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+		try {
+			ICalendar.read(br, source, report, CHUNK_LINES, new ICalendar.Handler() {
+				public void events(EventBatch batch) {
+					model.addAll(batch, report);
+				}
+
+				public void recurring(RecurringEvent r, int lineNumber) {
+					rules.add(r);
+					lineNumbers.add(lineNumber);
+				}
+			});
+			model.addAllRecurring(rules, lineNumbers, source, report);
+		} finally {
+			br.close();
+		}
+	}
+
+	private static Future<EventBatch> submit(ExecutorService parsers, final String[] lines, final int count,
+			final int firstLineNumber, final String source, final LoadReport report) {
+		return parsers.submit(new Callable<EventBatch>() {
+			public EventBatch call() {
+				return EventBatch.parse(lines, count, firstLineNumber, source, report);
+			}
+		});
+	}
+
+	/**
+	 * Waits for the oldest chunk to be parsed.
+	 */
+	private static EventBatch next(Deque<Future<EventBatch>> pending) throws IOException {
+		try {
+			return pending.poll().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while parsing events", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not parse events", e.getCause());
+		}
+	}
+
+	/**
+	 * Reads the events of a snapshot file, adding them to the model in chunks of about
+	 * CHUNK_LINES events, a day at a time. The position of an event in the snapshot stands
+	 * in for its line number.
+	 */
+	private static void readSnapshot(Path file, CalendarModel model, LoadReport report) throws IOException {
+		String source = file.getFileName().toString();
+		EventBatch batch = new EventBatch(source);
+		int position = 0;
+		EventSnapshot snapshot = EventSnapshot.open(file);
+		try {
+			for (int i = 0; i < snapshot.getDayCount(); i++) {
+				DaySchedule day = new DaySchedule();
+				snapshot.readDay(i, day);
+				for (Event e : day) {
+					batch.add(e, ++position);
+				}
+				if (batch.size() >= CHUNK_LINES) {
+					model.addAll(batch, report);
+					batch = new EventBatch(source);
+				}
+			}
+			if (batch.size() > 0) {
+				model.addAll(batch, report);
+			}
+		} finally {
+			snapshot.close();
+		}
+	}
+
+}	// end of CalendarTool class
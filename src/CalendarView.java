@@ -1,5 +1,3 @@
-import java.text.ParseException;
-import java.util.regex.Pattern;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
@@ -9,28 +7,47 @@ import java.awt.Font;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.GridLayout;
+import java.awt.Point;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.io.IOException;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 
 import javax.swing.Box;
 import javax.swing.BorderFactory;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JComboBox;
 import javax.swing.JDialog;
+import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.KeyStroke;
 import javax.swing.SwingConstants;
-import javax.swing.border.Border;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 /**
  * View/Controller of the calendar.
@@ -47,14 +64,33 @@ public class CalendarView implements ChangeListener {
 	private String currentMonth;
 	private int currentMonthInt;
 	private String currentYear;
-	private Dimension d = new Dimension(75, 50);		// to change button size in the future
-	private ArrayList<JButton> dayButtons;				// buttons for each day of the month
-	private JPanel dayPanel = new JPanel();				// panel to hold the day buttons
+	private Dimension d = new Dimension(75, 50);		// to change day size in the future
+	private static final Font DAY_FONT = new Font("Helvetica", Font.PLAIN, 12);
+	private static final Dimension YEAR_DAY_SIZE = new Dimension(24, 18);	// days of the year overview
+	private static final Font YEAR_FONT = new Font("Helvetica", Font.PLAIN, 10);
+	private static final String[] MONTH_NAMES = {"January", "February", "March", "April", "May", "June",
+			"July", "August", "September", "October", "November", "December"};
+	private static final int SEARCH_PAGE = 8;			// search results shown at a time
+	private static final int SEARCH_DELAY = 250;		// pause in typing before searching, in ms
+	private static final Logger LOG = Logger.getLogger(CalendarView.class.getName());
+	private static final int AGENDA_ROW_HEIGHT = 20;	// height of a row of the agenda, in pixels
+	private static final int WORK_START = 8 * 60;		// working hours searched for a suggested time
+	private static final int WORK_END = 18 * 60;
+	private static final int SUGGESTED_MINUTES = 60;	// length suggested when no times are entered
+	private static final String[] REPEAT_CHOICES = {"Does not repeat", "Daily", "Weekly", "Monthly"};
+	private MonthGrid monthGrid;						// days of the current month
 	private ArrayList<JTextField> textFields = new ArrayList<>(); // for create button fields
 	private JLabel monthYearLabel;
 	private JTextArea eventList;
 	private JFrame calendarFrame;
 	private JPanel calendarPanel;
+	private boolean loading;							// stored events are still being loaded
+	private ArrayList<JButton> changeButtons = new ArrayList<>();	// disabled while loading
+	private JTextField searchField;
+	private int searchPage;								// page of the search results shown
+	private Timer searchTimer;							// searches once typing pauses
+	private int searchCount;							// searches started, to drop stale results
+	private boolean moreResults;						// there are results after this page
 
 	/**
 	 * Constructs the GUI View of the calendar model.
@@ -71,18 +107,6 @@ public class CalendarView implements ChangeListener {
 		calendarFrame.setLayout(new FlowLayout());
 		calendarFrame.setSize(900, 450);
 		
-		// Load events onto calendar
-		try {
-			model.load();
-		} catch (IOException e) {
-			e.printStackTrace();
-		} catch (ParseException e) {
-			e.printStackTrace();
-		}
-		
-		// Outputs list of events in the console
-		System.out.println(model.eventList());
-
 		// Create the label for the month and year
 		currentMonth = model.getMonth();
 		currentYear = model.getYear();
@@ -101,17 +125,55 @@ public class CalendarView implements ChangeListener {
 		eventList.setBorder(BorderFactory.createLineBorder(Color.GRAY));
 		eventList.setPreferredSize(new Dimension(300, 150));
 		eventList.setLineWrap(true);
-		showEvents();	// display the events on the current day
 		
-		// Panel for the day buttons, back/forward buttons, create event button
-		dayPanel.setLayout(new GridLayout(0, 7, 3, 3)); // 7 columns, 3 pixel gap
-		dayPanel.setBorder(BorderFactory.createEtchedBorder());
+		// Create a search box; while it has text, the event list shows the matching events
+		searchField = new JTextField();
+		searchField.setBorder(BorderFactory.createTitledBorder("Search events"));
+		searchField.setMaximumSize(new Dimension(300, 45));
+		searchTimer = new Timer(SEARCH_DELAY, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				showEvents();
+			}
+		});
+		searchTimer.setRepeats(false);
+		searchField.getDocument().addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent e) {
+				searchPage = 0;
+				searchTimer.restart();
+			}
+			public void removeUpdate(DocumentEvent e) {
+				searchPage = 0;
+				searchTimer.restart();
+			}
+			public void changedUpdate(DocumentEvent e) {
+			}
+		});
+		searchField.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				// Enter shows the next page of results, then starts over
+				searchPage = moreResults ? searchPage + 1 : 0;
+				searchTimer.stop();
+				showEvents();
+			}
+		});
+		showEvents();	// display the events on the current day
+		JPanel eventPanel = new JPanel();
+		eventPanel.setLayout(new BoxLayout(eventPanel, BoxLayout.Y_AXIS));
+		eventPanel.add(searchField);
+		eventPanel.add(eventList);
 		
-		// Initialize an array list for holding buttons for each day
-		dayButtons = new ArrayList<JButton>();	// create an array list of buttons
-		createDayButtons();		// create the day buttons for the current month
-		addDayButtons();		// add buttons to the day panel
-		selectDayButton(model.getDayInt());		// select and highlight today
+		// Grid of the days of the month, painted as one component; clicking a day selects it
+		monthGrid = new MonthGrid(d, DAY_FONT, false);
+		monthGrid.setBorder(BorderFactory.createEtchedBorder());
+		monthGrid.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				// show the events on that date in the text field
+				// set the date of the calendar to the selected day
+				model.setDay(monthGrid.getSelectedDay());
+			}
+		});
+		monthGrid.setMonth(model.getMonthDensity());	// show the current month in the grid
+		monthGrid.setSelectedDay(model.getDayInt());	// select and highlight today
 		
 		// Create the calendar buttons
 		JPanel calendarButtons = new JPanel();
@@ -134,6 +196,47 @@ public class CalendarView implements ChangeListener {
 				createEvent();
 			}
 		});
+		JButton edit = new JButton("Edit");
+		edit.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				editEvent();
+			}
+		});
+		JButton agenda = new JButton("Agenda");
+		agenda.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				showAgenda();
+			}
+		});
+		JButton year = new JButton("Year");
+		year.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				showYear();
+			}
+		});
+		JButton undo = new JButton("Undo");
+		JButton redo = new JButton("Redo");
+		ActionListener undoAction = new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (!loading) {
+					model.undo();
+				}
+			}
+		};
+		ActionListener redoAction = new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				if (!loading) {
+					model.redo();
+				}
+			}
+		};
+		undo.addActionListener(undoAction);
+		redo.addActionListener(redoAction);
+		// Ctrl+Z and Ctrl+Y work anywhere in the window
+		calendarFrame.getRootPane().registerKeyboardAction(undoAction,
+				KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), JComponent.WHEN_IN_FOCUSED_WINDOW);
+		calendarFrame.getRootPane().registerKeyboardAction(redoAction,
+				KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), JComponent.WHEN_IN_FOCUSED_WINDOW);
 		JButton quit = new JButton("Quit");
 		quit.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
@@ -156,10 +259,20 @@ public class CalendarView implements ChangeListener {
 				quit.setVisible(true);
 			}
 		});
+		changeButtons.add(create);
+		changeButtons.add(edit);
+		changeButtons.add(undo);
+		changeButtons.add(redo);
+		changeButtons.add(quit);
 		calendarButtons.add(back);
 		calendarButtons.add(forward);
 		calendarButtons.add(create);
-		calendarButtons.add(Box.createRigidArea(new Dimension(175, 0)));
+		calendarButtons.add(edit);
+		calendarButtons.add(agenda);
+		calendarButtons.add(year);
+		calendarButtons.add(undo);
+		calendarButtons.add(redo);
+		calendarButtons.add(Box.createRigidArea(new Dimension(25, 0)));
 		calendarButtons.add(quit);
 		
 		// Create a panel that holds the month/year/days of week labels & calendar buttons
@@ -170,58 +283,48 @@ public class CalendarView implements ChangeListener {
 		calendarPanel.add(calendarButtons);
 		calendarPanel.add(Box.createRigidArea(new Dimension(0, 10)));
 		calendarPanel.add(daysOfWeekLabel);
-		calendarPanel.add(dayPanel);
+		calendarPanel.add(monthGrid);
 
 		// Add all components to the calendar frame
 		calendarFrame.add(calendarPanel);
-		calendarFrame.add(eventList);
+		calendarFrame.add(eventPanel);
 		calendarFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		calendarFrame.setVisible(true);
+		
+		// Load events onto calendar in the background once the frame is showing
+		loadEvents();
 	}
 	
-    /**
-     * Creates day buttons for each day of the month.
-     */
-	public void createDayButtons() {
-		// Create empty buttons to fill gaps before starting day
-		for (int i = 0; i < model.getStartingDay(); i++) {
-			JButton blankButton = new JButton();
-			blankButton.setBorder(BorderFactory.createRaisedBevelBorder());
-			dayButtons.add(blankButton);
-		}
-		for (int i = 0; i < daysInMonth; i++) {
-			JButton dayButton = new JButton(Integer.toString(i + 1) + " ");
-
-			// Look of button
-			dayButton.setHorizontalAlignment(SwingConstants.LEFT);	// align number top left
-			dayButton.setVerticalAlignment(SwingConstants.TOP);
-			dayButton.setPreferredSize(d);
-			dayButton.setFont(new Font("Helvetica", Font.PLAIN, 12));
-			dayButton.setOpaque(true);
-			dayButton.setBackground(Color.WHITE);
-			dayButton.setBorder(BorderFactory.createRaisedBevelBorder());
-			
-			// Action listener when selecting button
-			dayButton.addActionListener(new ActionListener() {
-				public void actionPerformed(ActionEvent e) {
-					// show the events on that date in the text field
-					// highlight the daybutton
-					// set the date of the calendar to the selected day
-					model.setDay(Integer.valueOf(dayButton.getText().trim()));
-					deselectDayButtons();
-					selectDayButton(Integer.valueOf(dayButton.getText().trim()));
+	/**
+	 * Loads the stored events onto the calendar without blocking the GUI. The current
+	 * month's events appear first; the event list shows a loading state until the rest
+	 * are loaded. Events cannot be created, edited, undone or saved until then, since the
+	 * journal that records changes is only opened once the stored events are replayed.
+	 */
+	public void loadEvents() {
+		SwingWorker<LoadReport, Runnable> loader = model.loadInBackground();
+		loader.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent e) {
+				if ("state".equals(e.getPropertyName()) && e.getNewValue() == SwingWorker.StateValue.DONE) {
+					loading = false;
+					setChangesEnabled(true);
+					showEvents();
+					indexTitles();
 				}
-			});
-			dayButtons.add(dayButton);
-		}
+			}
+		});
+		loading = true;
+		setChangesEnabled(false);
+		showEvents();
+		loader.execute();
 	}
 	
 	/**
-	 * Adds the buttons in the dayButtons array list onto the dayPanel.
+	 * Enables or disables the buttons that change the events or save them.
 	 */
-	public void addDayButtons() {
-		for (JButton b : dayButtons) {
-			dayPanel.add(b);
+	private void setChangesEnabled(boolean enabled) {
+		for (JButton b : changeButtons) {
+			b.setEnabled(enabled);
 		}
 	}
 	
@@ -265,6 +368,56 @@ public class CalendarView implements ChangeListener {
 		c.anchor = GridBagConstraints.LINE_END;
 		eventDialog.add(endTime, c);
 
+		JComboBox<String> repeat = new JComboBox<String>(REPEAT_CHOICES);
+		c.gridx = 0;
+		c.gridy = 2;
+		c.anchor = GridBagConstraints.CENTER;
+		eventDialog.add(repeat, c);
+
+		JButton suggestButton = new JButton("Suggest time");
+		c.gridx = 0;
+		c.gridy = 3;
+		c.ipady = 1;
+		c.ipadx = 1;
+		eventDialog.add(suggestButton, c);
+		suggestButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				// Keeps the length of the entered times, if there are any
+				int duration = SUGGESTED_MINUTES;
+				try {
+					int start = Event.parseMinuteOfDay(startTime.getText());
+					int end = Event.parseMinuteOfDay(endTime.getText());
+					if (end > start) {
+						duration = end - start;
+					}
+				} catch (IllegalArgumentException ex) {
+					// Not entered yet, so the default length is suggested
+				}
+				int day = model.getEpochDay();
+				List<TimeSlot> slots = model.findFreeSlots(day, day, duration, WORK_START, WORK_END, 1);
+				if (slots.isEmpty()) {
+					JDialog noSlot = new JDialog();
+					noSlot.setLayout(new BorderLayout());
+					JLabel message = new JLabel("There is no free time of " + duration + " minutes between "
+							+ Event.formatTime(WORK_START) + " and " + Event.formatTime(WORK_END) + " on this day.");
+					JButton backButton = new JButton("Back");
+					backButton.addActionListener(new ActionListener() {
+						public void actionPerformed(ActionEvent e) {
+							noSlot.dispose();
+						}
+					});
+					noSlot.setTitle("Suggest time");
+					noSlot.add(message, BorderLayout.NORTH);
+					noSlot.add(backButton, BorderLayout.SOUTH);
+					noSlot.pack();
+					noSlot.setVisible(true);
+				} else {
+					startTime.setText(slots.get(0).getStartTime());
+					endTime.setText(Event.formatTime(slots.get(0).getStartMinute() + duration));
+				}
+			}
+		});
+
 		JButton cancelButton = new JButton("Cancel");
 		c.gridx = 1;
 		c.gridy = 3;
@@ -286,16 +439,52 @@ public class CalendarView implements ChangeListener {
 		createButton.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 					String date = model.getDate();
-					Event ev = new Event(title.getText(), model.getDate(), startTime.getText(), endTime.getText());
-					Pattern timePattern = Pattern.compile("\\d{2}:\\d{2}");
-					boolean startTimeMatch = timePattern.matcher(startTime.getText()).matches();
-					boolean endTimeMatch = timePattern.matcher(endTime.getText()).matches();
+					Event ev;
+					try {
+						ev = new Event(title.getText(), date, startTime.getText(), endTime.getText());
+					} catch (IllegalArgumentException ex) {
+						// If start time or end time aren't entered properly
+						JDialog formatError = new JDialog();
+						formatError.setLayout(new BorderLayout());
+						JLabel errorMessage = new JLabel("Please enter a valid time in "
+								+ "HH:mm format. (" + ex.getMessage() + ")");
+						JButton backButton2 = new JButton("Back");
+						backButton2.addActionListener(new ActionListener() {
+							public void actionPerformed(ActionEvent e) {
+								formatError.dispose();
+							}
+						});
+						formatError.setTitle("Error");
+						formatError.add(errorMessage, BorderLayout.NORTH);
+						formatError.add(backButton2, BorderLayout.SOUTH);
+						formatError.pack();
+						formatError.setVisible(true);
+						return;
+					}
+					// A repeating event is created as a recurring event starting on this date
+					RecurringEvent rule = null;
+					List<Event> conflicts;
+					if (repeat.getSelectedIndex() > 0) {
+						rule = new RecurringEvent(ev, RecurringEvent.Frequency.values()[repeat.getSelectedIndex() - 1],
+								1, 0, RecurringEvent.FOREVER, 0, new int[0]);
+						conflicts = model.getConflicts(rule);
+					} else {
+						conflicts = model.getConflicts(date, ev);
+					}
 					// If the event time is conflicting, open conflict dialog
-					if (model.checkConflict(date, ev) == true) {
+					if (!conflicts.isEmpty()) {
 						JDialog conflict = new JDialog();
 						conflict.setLayout(new BorderLayout());
 						JLabel conflictMessage = new JLabel("The event you are trying to create "
 								+ "is conflicting with an existing event.");
+						JTextArea conflictList = new JTextArea();
+						conflictList.setEditable(false);
+						for (Event c : conflicts) {
+							if (rule != null) {
+								conflictList.append(c.getDate() + " ");
+							}
+							conflictList.append(c.getStartTime() + " - " + c.getEndTime() + "\t" + c.getTitle() + "\n");
+						}
 						JButton backButton = new JButton("Back");
 						backButton.addActionListener(new ActionListener() {
 							public void actionPerformed(ActionEvent e) {
@@ -304,31 +493,18 @@ public class CalendarView implements ChangeListener {
 						});
 						conflict.setTitle("Error");
 						conflict.add(conflictMessage, BorderLayout.NORTH);
+						conflict.add(conflictList, BorderLayout.CENTER);
 						conflict.add(backButton, BorderLayout.SOUTH);
 						conflict.pack();
 						conflict.setVisible(true);
 					}
-					// If start time or end time aren't entered properly
-					else if (startTimeMatch == false || endTimeMatch == false) {
-						JDialog formatError = new JDialog();
-						formatError.setLayout(new BorderLayout());
-						JLabel errorMessage = new JLabel("Please enter a valid time in "
-								+ "HH:mm format");
-						JButton backButton2 = new JButton("Back");
-						backButton2.addActionListener(new ActionListener() {
-							public void actionPerformed(ActionEvent e) {
-								formatError.dispose();
-							}
-						});
-						formatError.setTitle("Error");
-						formatError.add(errorMessage, BorderLayout.NORTH);
-						formatError.add(backButton2, BorderLayout.SOUTH);
-						formatError.pack();
-						formatError.setVisible(true);
-					}
 					else {
 						// If there's no conflict, create the event
-						model.create(date, ev);
+						if (rule != null) {
+							model.createRecurring(rule);
+						} else {
+							model.create(date, ev);
+						}
 						eventDialog.dispose();
 					}
 			}
@@ -349,6 +525,337 @@ public class CalendarView implements ChangeListener {
 		eventDialog.setVisible(true);
 	}
 	
+	/**
+	 * JDialog for changing, moving or deleting an event on the selected date of this
+	 * calendar. Invoked when "Edit" button is clicked. Occurrences of recurring events
+	 * are not listed, as they cannot be changed one by one.
+	 */
+	public void editEvent() {
+		List<Event> events = model.getSingleEvents(model.getEpochDay());
+		if (events.isEmpty()) {
+			showMessage("Edit Event", "There are no events on this day to edit.");
+			return;
+		}
+		// Create an event dialog
+		JDialog eventDialog = new JDialog();
+		eventDialog.setLayout(new GridBagLayout());
+		GridBagConstraints c = new GridBagConstraints();
+		eventDialog.setTitle("Edit Event");
+		
+		String[] choices = new String[events.size()];
+		for (int i = 0; i < choices.length; i++) {
+			Event e = events.get(i);
+			choices[i] = e.getStartTime() + " - " + e.getEndTime() + "  " + e.getTitle();
+		}
+		JComboBox<String> chosen = new JComboBox<String>(choices);
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.gridx = 0;
+		c.gridy = 0;
+		c.gridwidth = 3;
+		c.ipady = 5;
+		eventDialog.add(chosen, c);
+		
+		JTextField title = new JTextField();
+		c.gridy = 1;
+		c.ipadx = 100;
+		eventDialog.add(title, c);
+		
+		// The date can be changed to move the event to another day
+		JTextField date = new JTextField();
+		c.gridwidth = 1;
+		c.gridy = 2;
+		c.ipadx = 10;
+		eventDialog.add(date, c);
+		
+		JTextField startTime = new JTextField();
+		c.gridx = 1;
+		c.ipadx = 20;
+		eventDialog.add(startTime, c);
+		
+		JTextField endTime = new JTextField();
+		c.gridx = 2;
+		eventDialog.add(endTime, c);
+		
+		ActionListener fill = new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				Event ev = events.get(chosen.getSelectedIndex());
+				title.setText(ev.getTitle());
+				date.setText(ev.getDate());
+				startTime.setText(ev.getStartTime());
+				endTime.setText(ev.getEndTime());
+			}
+		};
+		chosen.addActionListener(fill);
+		fill.actionPerformed(null);
+		
+		JButton deleteButton = new JButton("Delete");
+		c.gridx = 0;
+		c.gridy = 3;
+		c.ipady = 1;
+		c.ipadx = 1;
+		eventDialog.add(deleteButton, c);
+		deleteButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				Event old = events.get(chosen.getSelectedIndex());
+				eventDialog.dispose();
+				if (!model.delete(old.getId(), old)) {
+					showMessage("Error", "The event was changed or deleted meanwhile.");
+				}
+			}
+		});
+		
+		JButton cancelButton = new JButton("Cancel");
+		c.gridx = 1;
+		eventDialog.add(cancelButton, c);
+		cancelButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				eventDialog.dispose();
+			}
+		});
+		
+		JButton saveButton = new JButton("Save");
+		c.gridx = 2;
+		eventDialog.add(saveButton, c);
+		saveButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				Event old = events.get(chosen.getSelectedIndex());
+				Event ev;
+				try {
+					ev = new Event(title.getText(), date.getText(), startTime.getText(), endTime.getText());
+				} catch (IllegalArgumentException ex) {
+					showMessage("Error", "Please enter a valid date in MM/dd/yyyy format and valid times "
+							+ "in HH:mm format. (" + ex.getMessage() + ")");
+					return;
+				}
+				if (model.update(old.getId(), old, ev)) {
+					eventDialog.dispose();
+					return;
+				}
+				if (!old.equals(model.getEvent(old.getId()))) {
+					showMessage("Error", "The event was changed or deleted meanwhile.");
+					return;
+				}
+				// The changed event conflicts with another event, or the event is gone
+				JDialog conflict = new JDialog();
+				conflict.setLayout(new BorderLayout());
+				JTextArea conflictList = new JTextArea();
+				conflictList.setEditable(false);
+				for (Event c : model.getConflicts(ev.getDate(), ev)) {
+					if (!c.equals(old)) {
+						conflictList.append(c.getStartTime() + " - " + c.getEndTime() + "\t" + c.getTitle() + "\n");
+					}
+				}
+				JLabel conflictMessage = new JLabel("The changed event is conflicting with an existing event.");
+				JButton backButton = new JButton("Back");
+				backButton.addActionListener(new ActionListener() {
+					public void actionPerformed(ActionEvent e) {
+						conflict.dispose();
+					}
+				});
+				conflict.setTitle("Error");
+				conflict.add(conflictMessage, BorderLayout.NORTH);
+				conflict.add(conflictList, BorderLayout.CENTER);
+				conflict.add(backButton, BorderLayout.SOUTH);
+				conflict.pack();
+				conflict.setVisible(true);
+			}
+		});
+		
+		eventDialog.pack();
+		eventDialog.setVisible(true);
+	}
+	
+	/**
+	 * Opens a window listing every single event of the calendar in chronological order,
+	 * starting at the selected date. Invoked when "Agenda" button is clicked. The list
+	 * only asks the model for the rows it shows, so it opens and scrolls as quickly with
+	 * a hundred thousand events as with ten.
+	 */
+	public void showAgenda() {
+		AgendaListModel agenda = new AgendaListModel(model);
+		model.attach(agenda);
+		JList<Event> list = new JList<Event>(agenda);
+		// Fixed cell sizes, so the list does not render every row to measure it
+		list.setFixedCellHeight(AGENDA_ROW_HEIGHT);
+		list.setFixedCellWidth(420);
+		list.setVisibleRowCount(20);
+		list.setCellRenderer(new DefaultListCellRenderer() {
+			private static final long serialVersionUID = 1L;
+
+			public Component getListCellRendererComponent(JList<?> l, Object value, int index,
+					boolean isSelected, boolean cellHasFocus) {
+				String text = "";
+				if (value instanceof Event) {
+					Event e = (Event) value;
+					text = e.getDate() + "   " + e.getStartTime() + " - " + e.getEndTime() + "   " + e.getTitle();
+				}
+				return super.getListCellRendererComponent(l, text, index, isSelected, cellHasFocus);
+			}
+		});
+		JScrollPane scroller = new JScrollPane(list);
+		
+		JTextField date = new JTextField(Event.formatDate(model.getEpochDay()), 10);
+		JButton go = new JButton("Go");
+		ActionListener jump = new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				int row;
+				try {
+					row = agenda.rowOf(Event.parseEpochDay(date.getText()));
+				} catch (IllegalArgumentException ex) {
+					showMessage("Error", "Please enter a valid date in MM/dd/yyyy format.");
+					return;
+				}
+				if (row >= 0) {
+					// Scroll the row to the top rather than just into view
+					list.setSelectedIndex(row);
+					int top = Math.min(row * AGENDA_ROW_HEIGHT,
+							Math.max(0, list.getHeight() - scroller.getViewport().getExtentSize().height));
+					scroller.getViewport().setViewPosition(new Point(0, top));
+				}
+			}
+		};
+		go.addActionListener(jump);
+		date.addActionListener(jump);
+		JPanel jumpPanel = new JPanel();
+		jumpPanel.add(new JLabel("Go to date:"));
+		jumpPanel.add(date);
+		jumpPanel.add(go);
+		
+		JFrame agendaFrame = new JFrame("Agenda");
+		agendaFrame.setLayout(new BorderLayout());
+		agendaFrame.add(jumpPanel, BorderLayout.NORTH);
+		agendaFrame.add(scroller, BorderLayout.CENTER);
+		agendaFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		agendaFrame.addWindowListener(new WindowAdapter() {
+			public void windowClosed(WindowEvent e) {
+				model.detach(agenda);
+			}
+		});
+		agendaFrame.pack();
+		agendaFrame.setVisible(true);
+		jump.actionPerformed(null);
+	}
+	
+	/**
+	 * Opens a window with the twelve months of the selected year, each day shaded by how
+	 * busy it is. Clicking a day selects that date in the calendar. Invoked when "Year"
+	 * button is clicked.
+	 */
+	public void showYear() {
+		MonthGrid[] grids = new MonthGrid[MONTH_NAMES.length];
+		JLabel yearLabel = new JLabel("", SwingConstants.CENTER);
+		yearLabel.setFont(new Font("Helvetica", Font.BOLD, 20));
+		int[] shown = {model.getCalendar().get(Calendar.YEAR)};		// year of the grids
+		
+		JPanel monthsPanel = new JPanel(new GridLayout(3, 4, 10, 10));
+		for (int m = 0; m < grids.length; m++) {
+			MonthGrid grid = new MonthGrid(YEAR_DAY_SIZE, YEAR_FONT, true);
+			grid.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					model.setDate(grid.getMonth().getFirstDay() + grid.getSelectedDay() - 1);
+				}
+			});
+			grids[m] = grid;
+			JPanel monthPanel = new JPanel(new BorderLayout());
+			monthPanel.add(new JLabel(MONTH_NAMES[m], SwingConstants.CENTER), BorderLayout.NORTH);
+			monthPanel.add(grid, BorderLayout.CENTER);
+			monthsPanel.add(monthPanel);
+		}
+		
+		// Shows a year in the grids, with the selected date highlighted if it is in that year
+		Runnable bind = new Runnable() {
+			public void run() {
+				yearLabel.setText(Integer.toString(shown[0]));
+				for (int m = 0; m < grids.length; m++) {
+					grids[m].setMonth(model.getMonthDensity(shown[0], m));
+					boolean selected = model.getCalendar().get(Calendar.YEAR) == shown[0] && model.getMonthInt() == m;
+					grids[m].setSelectedDay(selected ? model.getDayInt() : 0);
+				}
+			}
+		};
+		bind.run();
+		
+		JButton back = new JButton("<");
+		JButton forward = new JButton(">");
+		back.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				shown[0]--;
+				bind.run();
+			}
+		});
+		forward.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				shown[0]++;
+				bind.run();
+			}
+		});
+		JPanel yearPanel = new JPanel(new BorderLayout());
+		yearPanel.add(back, BorderLayout.WEST);
+		yearPanel.add(yearLabel, BorderLayout.CENTER);
+		yearPanel.add(forward, BorderLayout.EAST);
+		
+		// Follows the calendar: the selected date and the days whose events changed are repainted
+		ChangeListener follow = new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				if (!(e instanceof CalendarChangeEvent)) {
+					bind.run();
+					return;
+				}
+				CalendarChangeEvent change = (CalendarChangeEvent) e;
+				for (int m = 0; m < grids.length; m++) {
+					MonthGrid grid = grids[m];
+					if (change.eventsChangedBetween(grid.getMonth().getFirstDay(), grid.getMonth().getLastDay())) {
+						MonthDensity density = model.getMonthDensity(shown[0], m);
+						if (density == grid.getMonth()) {
+							grid.repaintDays(change.getFirstChangedDay(), change.getLastChangedDay());
+						} else {
+							grid.setMonth(density);
+						}
+					}
+					if (change.is(CalendarChangeEvent.Kind.DAY_SELECTED)) {
+						boolean selected = model.getCalendar().get(Calendar.YEAR) == shown[0] && model.getMonthInt() == m;
+						grid.setSelectedDay(selected ? model.getDayInt() : 0);
+					}
+				}
+			}
+		};
+		model.attach(follow);
+		
+		JFrame yearFrame = new JFrame("Year");
+		yearFrame.setLayout(new BorderLayout());
+		yearFrame.add(yearPanel, BorderLayout.NORTH);
+		yearFrame.add(monthsPanel, BorderLayout.CENTER);
+		yearFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		yearFrame.addWindowListener(new WindowAdapter() {
+			public void windowClosed(WindowEvent e) {
+				model.detach(follow);
+			}
+		});
+		yearFrame.pack();
+		yearFrame.setVisible(true);
+	}
+	
+	/**
+	 * Shows a message in a JDialog with a button to close it.
+	 * @param title		the title of the dialog
+	 * @param message	the message to show
+	 */
+	private void showMessage(String title, String message) {
+		JDialog dialog = new JDialog();
+		dialog.setLayout(new BorderLayout());
+		JButton backButton = new JButton("Back");
+		backButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				dialog.dispose();
+			}
+		});
+		dialog.setTitle(title);
+		dialog.add(new JLabel(message), BorderLayout.NORTH);
+		dialog.add(backButton, BorderLayout.SOUTH);
+		dialog.pack();
+		dialog.setVisible(true);
+	}
+	
 	/**
 	 * Class for clearing the JTextFields in the JDialog for creating events.
 	 * @author prisng
@@ -373,53 +880,127 @@ public class CalendarView implements ChangeListener {
 	 * in the event list text field.
 	 */
 	public void showEvents() {
-		eventList.setText(model.getEvents());
+		searchCount++;		// a search still running is out of date
+		if (!searchField.getText().trim().isEmpty()) {
+			showSearchResults();
+		} else if (loading) {
+			eventList.setText(model.getEvents() + "\nLoading events...");
+		} else {
+			eventList.setText(model.getEvents());
+		}
 	}
 	
 	/**
-	 * Selects and highlights a day button.
-	 * @param date	the date of the button to be selected and highlighted
+	 * Displays a page of the events whose title contains the text of the search box in the
+	 * event list text field. The search runs in the background, since the first one waits
+	 * for the title index to be built; its results are dropped if another search or the
+	 * day's events were shown meanwhile.
 	 */
-	public void selectDayButton(int date) {
-		Border buttonBorder = BorderFactory.createBevelBorder(1);
-		for (JButton b : dayButtons) {
-			if (b.getText().trim().equals(String.valueOf(date))) {
-				b.setBorder(buttonBorder);
+	public void showSearchResults() {
+		final String query = searchField.getText().trim();
+		final int page = searchPage;
+		final int search = ++searchCount;
+		new SwingWorker<List<Event>, Void>() {
+			protected List<Event> doInBackground() {
+				// One more than a page, to know if there is a next page
+				return model.search(query, page * SEARCH_PAGE, SEARCH_PAGE + 1);
 			}
-		}
+			protected void done() {
+				if (search != searchCount) {
+					return;
+				}
+				try {
+					showSearchResults(query, page, get());
+				} catch (InterruptedException | ExecutionException e) {
+					LOG.log(Level.WARNING, "Cannot search for \"" + query + "\"", e);
+					eventList.setText("Events matching \"" + query + "\"\n\tThe search failed.\n");
+				}
+			}
+		}.execute();
 	}
 	
 	/**
-	 * Deselects all of the buttons on the calendar.
+	 * Displays a page of search results in the event list text field.
 	 */
-	public void deselectDayButtons() {
-		Border buttonBorderDeselect = BorderFactory.createRaisedBevelBorder(); // repeated code?
-		for (int i = 0; i < dayButtons.size(); i++) {
-			JButton button = dayButtons.get(i);
-			// for all the buttons, set the border to the original border
-			button.setBorder(buttonBorderDeselect);
+	private void showSearchResults(String query, int page, List<Event> found) {
+		moreResults = found.size() > SEARCH_PAGE;
+		StringBuilder results = new StringBuilder("Events matching \"" + query + "\"");
+		if (page > 0) {
+			results.append(" (page " + (page + 1) + ")");
 		}
+		results.append("\n");
+		for (int i = 0; i < Math.min(found.size(), SEARCH_PAGE); i++) {
+			Event e = found.get(i);
+			results.append(e.getDate() + " " + e.getStartTime() + " - " + e.getEndTime() + "\t" + e.getTitle() + "\n");
+		}
+		if (found.isEmpty()) {
+			results.append("\tNo matching events.\n");
+		} else if (moreResults) {
+			results.append("Press Enter for more.\n");
+		}
+		eventList.setText(results.toString());
 	}
-
+	
+	/**
+	 * Builds the model's title index in the background once the events are loaded, so the
+	 * first search does not wait for it.
+	 */
+	public void indexTitles() {
+		new SwingWorker<Void, Void>() {
+			protected Void doInBackground() {
+				model.indexTitles();
+				return null;
+			}
+		}.execute();
+	}
+	
 	/**
 	 * (Method overridden from implementing ChangeListener)
 	 * Updates the calendar view when information from the calendar model gets changed.
+	 * A CalendarChangeEvent says what changed, so only the affected parts are redrawn.
 	 */
 	public void stateChanged(ChangeEvent e) {
-		int modelMonth = model.getCalendar().get(Calendar.MONTH);
+		boolean monthChanged;
+		boolean daySelected;
+		boolean eventsChanged;
+		boolean monthEventsChanged;
+		if (e instanceof CalendarChangeEvent) {
+			CalendarChangeEvent change = (CalendarChangeEvent) e;
+			monthChanged = change.is(CalendarChangeEvent.Kind.MONTH_CHANGED);
+			daySelected = change.is(CalendarChangeEvent.Kind.DAY_SELECTED);
+			eventsChanged = change.eventsChangedOn(model.getEpochDay());
+			int firstOfMonth = model.getEpochDay() - model.getDayInt() + 1;
+			monthEventsChanged = change.eventsChangedBetween(firstOfMonth, firstOfMonth + daysInMonth - 1);
+		} else {
+			monthChanged = model.getCalendar().get(Calendar.MONTH) != currentMonthInt;
+			daySelected = true;
+			eventsChanged = true;
+			monthEventsChanged = true;
+		}
 		// Change month views if necessary
-		if (modelMonth != currentMonthInt) {
-			currentMonthInt = modelMonth;
+		if (monthChanged) {
+			currentMonthInt = model.getCalendar().get(Calendar.MONTH);
 			daysInMonth = model.getDaysInMonth();
-			dayPanel.removeAll();
-			dayButtons.clear();
-			createDayButtons();
-			addDayButtons();
+			monthGrid.setMonth(model.getMonthDensity());
 			monthYearLabel.setText(model.getMonth() + " " + model.getYear());
 		}
-		deselectDayButtons();				// Deselects the previously selected day
-		selectDayButton(model.getDayInt());	// Highlights the currently selected day
-		showEvents();						// Show events on currently selected day
+		else if (monthEventsChanged) {
+			MonthDensity density = model.getMonthDensity();
+			if (density == monthGrid.getMonth() && e instanceof CalendarChangeEvent) {
+				// Repaint only the days whose events changed
+				CalendarChangeEvent change = (CalendarChangeEvent) e;
+				monthGrid.repaintDays(change.getFirstChangedDay(), change.getLastChangedDay());
+			} else {
+				// Summaries are dropped when recurring events change, so the month is shown anew
+				monthGrid.setMonth(density);
+			}
+		}
+		if (monthChanged || daySelected) {
+			monthGrid.setSelectedDay(model.getDayInt());	// Highlights the currently selected day
+		}
+		if (daySelected || eventsChanged) {
+			showEvents();						// Show events on currently selected day
+		}
 	}
 	
 }	// end of CalendarView class
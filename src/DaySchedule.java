@@ -0,0 +1,231 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The events of a single day kept sorted by start time. Events on a day never overlap
+ * (the calendar model refuses conflicting events), so the end times are sorted as well
+ * and overlap queries are answered with a binary search over the start/end times instead
+ * of scanning every event of the day.
+ *
+ * The calendar model never changes a schedule once other threads can see it: it adds
+ * and removes events on a copy and then replaces the schedule, so a schedule can be read
+ * without locking, and old versions of the model keep the schedules they had. Adding and
+ * removing are therefore package-private, for filling schedules that are not shared yet;
+ * to anyone else a schedule is read-only.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class DaySchedule implements Iterable<Event> {
+
+	private Event[] events;
+	private int[] startTimes;	// start minutes of the events, same order as events
+	private int[] endTimes;		// end minutes of the events, same order as events
+	private int size;
+
+	/**
+	 * Constructs an empty day schedule.
+	 */
+	public DaySchedule() {
+		this.events = new Event[4];
+		this.startTimes = new int[4];
+		this.endTimes = new int[4];
+		this.size = 0;
+	}
+
+	/**
+	 * Constructs a copy of a day schedule with room for one more event.
+	 * @param other		the day schedule to copy
+	 */
+	public DaySchedule(DaySchedule other) {
+		int capacity = Math.max(4, other.size + 1);
+		this.events = Arrays.copyOf(other.events, capacity);
+		this.startTimes = Arrays.copyOf(other.startTimes, capacity);
+		this.endTimes = Arrays.copyOf(other.endTimes, capacity);
+		this.size = other.size;
+	}
+
+	/**
+	 * Gets the number of events on this day.
+	 * @return	the number of events on this day
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Checks if there are no events on this day.
+	 * @return	true if there are no events on this day
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the event at a position of this day, ordered by start time.
+	 * @param i		the position of the event
+	 * @return		the event at that position
+	 */
+	public Event get(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		}
+		return events[i];
+	}
+
+	/**
+	 * Gets the event of this day that starts at a time. Events do not overlap, so there is
+	 * at most one.
+	 * @param start		the start time in minutes since midnight
+	 * @return			the event starting then, or null if there is none
+	 */
+	public Event startingAt(int start) {
+		int i = firstEndingAtOrAfter(start);
+		return i < size && startTimes[i] == start ? events[i] : null;
+	}
+
+	/**
+	 * Checks if a time range overlaps any event on this day. Touching events
+	 * (one ends when the other starts) count as overlapping.
+	 * @param start		the start time of the range in minutes since midnight
+	 * @param end		the end time of the range in minutes since midnight
+	 * @return			true if an event overlaps the range
+	 */
+	public boolean overlaps(int start, int end) {
+		int i = firstEndingAtOrAfter(start);
+		return i < size && startTimes[i] <= end;
+	}
+
+	/**
+	 * Gets the events on this day that overlap a time range.
+	 * @param start		the start time of the range in minutes since midnight
+	 * @param end		the end time of the range in minutes since midnight
+	 * @return			the overlapping events, ordered by start time
+	 */
+	public List<Event> overlapping(int start, int end) {
+		List<Event> result = new ArrayList<Event>();
+		for (int i = firstEndingAtOrAfter(start); i < size && startTimes[i] <= end; i++) {
+			result.add(events[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Checks if an event equal to the given one is on this day.
+	 * @param e		the event to look for
+	 * @return		true if an equal event is on this day
+	 */
+	public boolean contains(Event e) {
+		int start = e.getStartMinute();
+		for (int i = firstEndingAtOrAfter(start); i < size && startTimes[i] == start; i++) {
+			if (events[i].equals(e)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds an event to this day, keeping the events sorted by start time. Only for a
+	 * schedule no other thread or version can see yet, such as a new copy.
+	 * @param e			the event to add
+	 * @precondition	e must not overlap any event on this day
+	 */
+	void add(Event e) {
+		int start = e.getStartMinute();
+		int i = firstStartingAfter(start);
+		if (size == events.length) {
+			int capacity = size * 2;
+			events = Arrays.copyOf(events, capacity);
+			startTimes = Arrays.copyOf(startTimes, capacity);
+			endTimes = Arrays.copyOf(endTimes, capacity);
+		}
+		System.arraycopy(events, i, events, i + 1, size - i);
+		System.arraycopy(startTimes, i, startTimes, i + 1, size - i);
+		System.arraycopy(endTimes, i, endTimes, i + 1, size - i);
+		events[i] = e;
+		startTimes[i] = start;
+		endTimes[i] = e.getEndMinute();
+		size++;
+	}
+
+	/**
+	 * Removes an event equal to the given one from this day. Only for a schedule no other
+	 * thread or version can see yet, such as a new copy.
+	 * @param e		the event to remove
+	 * @return		true if the event was on this day
+	 */
+	boolean remove(Event e) {
+		int start = e.getStartMinute();
+		for (int i = firstEndingAtOrAfter(start); i < size && startTimes[i] == start; i++) {
+			if (events[i].equals(e)) {
+				System.arraycopy(events, i + 1, events, i, size - i - 1);
+				System.arraycopy(startTimes, i + 1, startTimes, i, size - i - 1);
+				System.arraycopy(endTimes, i + 1, endTimes, i, size - i - 1);
+				events[--size] = null;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets an iterator over the events of this day, ordered by start time.
+	 * @return	an iterator over the events of this day
+	 */
+	public Iterator<Event> iterator() {
+		return new Iterator<Event>() {
+			private int next = 0;
+
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			public Event next() {
+				if (next >= size) {
+					throw new NoSuchElementException();
+				}
+				return events[next++];
+			}
+		};
+	}
+
+	/**
+	 * Binary search for the first event that ends at or after a time.
+	 * Relies on the end times being sorted, which holds since events don't overlap.
+	 */
+	private int firstEndingAtOrAfter(int time) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (endTimes[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Binary search for the first event that starts after a time.
+	 */
+	private int firstStartingAfter(int time) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (startTimes[mid] <= time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+}	// end of DaySchedule class
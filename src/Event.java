@@ -1,30 +1,57 @@
+import java.io.IOException;
+
 /**
  * A class that represents a single calendar event.
- * 
+ * The date is held as a day count since 01/01/1970 and the start/end times as minutes
+ * since midnight, parsed and validated once at construction. The String getters format
+ * these fields on demand, and titles are interned so repeated titles share one String.
+ * Events are immutable, since the model shares them between its versions, its indexes
+ * and its undo history; changing an event means replacing it with a new one.
+ *
  * @author 		Priscilla Ng
- * 
+ *
  */
 public class Event {
-	
-	private String title;
-	private String date;
-	private String startTime;
-	private String endTime;
-	
+
+	private static final int MINUTES_PER_DAY = 24 * 60;
+	private final String title;
+	private final int epochDay;			// days since 01/01/1970
+	private final short startMinute;	// minutes since midnight
+	private final short endMinute;		// minutes since midnight
+
 	/**
 	 * Constructs an event with a title, date, start time, and end time.
 	 * @param title		the title of the event
 	 * @param date		the date of the event in format MM/dd/yyyy
-	 * @param startTime	the start time of the event
-	 * @param endTime	the end time of the event
+	 * @param startTime	the start time of the event in format HH:mm
+	 * @param endTime	the end time of the event in format HH:mm
+	 * @throws IllegalArgumentException	if the title is missing or not a single line, the
+	 * 									date or times are not valid, or the event ends
+	 * 									before it starts
 	 */
 	public Event(String title, String date, String startTime, String endTime) {
-		this.title = title;
-		this.date = date;
-		this.startTime = startTime;
-		this.endTime = endTime;
+		this(title, parseEpochDay(date), parseMinuteOfDay(startTime), parseMinuteOfDay(endTime));
+	}
+
+	/**
+	 * Constructs an event from its compact form.
+	 * @param title			the title of the event
+	 * @param epochDay		the date of the event as days since 01/01/1970
+	 * @param startMinute	the start time of the event as minutes since midnight
+	 * @param endMinute		the end time of the event as minutes since midnight
+	 * @throws IllegalArgumentException	if the title is missing or not a single line, the
+	 * 									times are not within a day, or the event ends
+	 * 									before it starts
+	 */
+	public Event(String title, int epochDay, int startMinute, int endMinute) {
+		checkTitle(title);
+		checkTimes(startMinute, endMinute);
+		this.title = title.intern();
+		this.epochDay = epochDay;
+		this.startMinute = (short) startMinute;
+		this.endMinute = (short) endMinute;
 	}
-	
+
 	/**
 	 * Gets the title of the event.
 	 * @return	the title of the event
@@ -32,69 +59,81 @@ public class Event {
 	public String getTitle() {
 		return this.title;
 	}
-	
-	/**
-	 * Sets a new title for the event.
-	 * @param newTitle	the new title to be set to
-	 * @precondition	newTitle must not be empty
-	 * @postcondition	the title of the event will be changed to newTitle
-	 */
-	public void setTitle(String newTitle) {
-		this.title = newTitle;
-	}
-	
+
 	/**
 	 * Gets the date of the event.
 	 * @return	the date of the event
 	 */
 	public String getDate() {
-		return this.date;
+		return formatDate(epochDay);
 	}
-	
+
 	/**
-	 * Sets a new date for the event.
-	 * @param newDate	the new date to be set to
-	 * @precondition	newDate must be a valid string in the form MM/dd/yyyy
-	 * @postcondition	the date of the event will be changed to newDate
+	 * Gets the date of the event as days since 01/01/1970.
+	 * @return	the epoch day of the event
 	 */
-	public void setDate(String newDate) {
-		this.date = newDate;
+	public int getEpochDay() {
+		return this.epochDay;
 	}
-	
+
 	/**
 	 * Gets the start time of the event.
 	 * @return	the start time of the event
 	 */
 	public String getStartTime() {
-		return this.startTime;
-	}
-	
-	/**
-	 * Sets a new start time of the event.
-	 * @param newStartTime	the new start time of the event
-	 * @precondition		newStartTime must be a valid string in the form MM/dd/yyyy
-	 * @postcondition		the start time of the event will be changed to newStartTime
-	 */
-	public void setStartTime(String newStartTime) {
-		this.startTime = newStartTime;
+		return formatTime(startMinute);
 	}
-	
+
 	/**
 	 * Gets the end time of the event.
 	 * @return	the end time of the event
 	 */
 	public String getEndTime() {
-		return this.endTime;
+		return formatTime(endMinute);
+	}
+
+	/**
+	 * Gets the start time of the event as minutes since midnight.
+	 * @return	the start time of the event in minutes
+	 */
+	public int getStartMinute() {
+		return this.startMinute;
 	}
-	
+
 	/**
-	 * Sets a new end time of the event.
-	 * @param newEndTime	the new end time of the event
-	 * @precondition		newEndTime must be a valid string in the form MM/dd/yyyy
-	 * @postcondition		the end time of the event will be changed to newEndTime
+	 * Gets the end time of the event as minutes since midnight.
+	 * @return	the end time of the event in minutes
 	 */
-	public void setEndTime(String newEndTime) {
-		this.endTime = newEndTime;
+	public int getEndMinute() {
+		return this.endMinute;
+	}
+
+	/**
+	 * Gets the id of the event: its date and start time as minutes since 01/01/1970.
+	 * Events of a calendar never overlap, so no two share an id, and the id leads straight
+	 * to the event. It changes when the event moves to another date or start time.
+	 * @return	the id of the event
+	 */
+	public long getId() {
+		return (long) epochDay * MINUTES_PER_DAY + startMinute;
+	}
+
+	/**
+	 * Gets the date of an event from its id.
+	 * @param id	the id of the event (see getId)
+	 * @return		the epoch day of the event
+	 */
+	public static int dayOfId(long id) {
+		return (int) Math.floorDiv(id, MINUTES_PER_DAY);
+	}
+
+	/**
+	 * Gets the start time of an event from its id.
+	 * @param id	the id of the event (see getId)
+	 * @return		the start time of the event in minutes since midnight
+	 */
+	public static int startMinuteOfId(long id) {
+		return (int) Math.floorMod(id, (long) MINUTES_PER_DAY);
 	}
 
 	/**
@@ -103,42 +142,320 @@ public class Event {
 	 * @return			the start time of the event in integer form
 	 */
 	public int stringToIntStartTime(String startTime) {
-		int startTimeInt = Integer.parseInt(startTime.replaceAll(":", ""));
-		return startTimeInt;
+		return toHHmm(parseMinuteOfDay(startTime));
 	}
-	
+
 	/**
 	 * Converts the string representation of the end time to an integer representation.
 	 * @param endTime	the end time of the event in string form
 	 * @return			the end time of the event in integer form
 	 */
 	public int stringToIntEndTime(String endTime) {
-		int endTimeInt = Integer.parseInt(endTime.replaceAll(":", ""));
-		return endTimeInt;
+		return toHHmm(parseMinuteOfDay(endTime));
 	}
-	
+
 	/**
 	 * Gets the start time of the event as an integer.
 	 * @return	the start time of the event
 	 */
 	public int getStartTimeInt() {
-		return stringToIntStartTime(startTime);
+		return toHHmm(startMinute);
 	}
-	
+
 	/**
 	 * Gets the end time of the event as an integer.
 	 * @return	the end time of the event
 	 */
 	public int getEndTimeInt() {
-		return stringToIntEndTime(endTime);
+		return toHHmm(endMinute);
 	}
-	
+
 	/**
 	 * Prints a string representation of the event.
 	 * @return	a string representation of the event
 	 */
 	public String printEvent() {
-		return date + " " + startTime + " - " + endTime + " " + title;
+		return getDate() + " " + getStartTime() + " - " + getEndTime() + " " + title;
+	}
+
+	/**
+	 * Writes the string representation of the event without building it first.
+	 * @param out	where to write the event
+	 * @throws IOException	if out cannot be written to
+	 */
+	public void appendTo(Appendable out) throws IOException {
+		appendDate(out, epochDay);
+		out.append(' ');
+		appendTime(out, startMinute);
+		out.append(" - ");
+		appendTime(out, endMinute);
+		out.append(' ').append(title);
+	}
+
+	/**
+	 * Checks if another object is an event with the same title, date and times.
+	 * @param o		the object to compare with
+	 * @return		true if o is an equal event
+	 */
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof Event)) {
+			return false;
+		}
+		Event other = (Event) o;
+		return epochDay == other.epochDay && startMinute == other.startMinute
+				&& endMinute == other.endMinute && title.equals(other.title);
+	}
+
+	/**
+	 * Gets a hash code consistent with equals.
+	 * @return	the hash code of the event
+	 */
+	public int hashCode() {
+		return ((epochDay * 31 + startMinute) * 31 + endMinute) * 31 + title.hashCode();
+	}
+
+	/**
+	 * Parses an event from a line written by printEvent().
+	 * format: MM/dd/yyyy HH:mm - HH:mm title
+	 * @param line	the line to parse
+	 * @return		the event on that line
+	 * @throws IllegalArgumentException	if the line is not in the event format, or its date or
+	 * 									times are not valid
+	 */
+	public static Event parseEvent(String line) {
+		if (line.length() < 24 || line.charAt(10) != ' ' || !line.startsWith(" - ", 16)
+				|| (line.length() > 24 && line.charAt(24) != ' ')) {
+			throw new IllegalArgumentException("Invalid event (expected MM/dd/yyyy HH:mm - HH:mm title)");
+		}
+		int epochDay = parseEpochDay(line, 0);
+		int startMinute = parseMinuteOfDay(line, 11);
+		int endMinute = parseMinuteOfDay(line, 19);
+		String title = line.length() > 25 ? line.substring(25) : "";
+		return new Event(title, epochDay, startMinute, endMinute);
+	}
+
+	/**
+	 * Parses a date in MM/dd/yyyy format to a day count since 01/01/1970.
+	 * @param date	the date in MM/dd/yyyy format
+	 * @return		the epoch day of the date
+	 * @throws IllegalArgumentException	if the date is not a valid MM/dd/yyyy date
+	 */
+	public static int parseEpochDay(String date) {
+		if (date == null || date.length() != 10) {
+			throw new IllegalArgumentException("Invalid date (expected MM/dd/yyyy): " + date);
+		}
+		return parseEpochDay(date, 0);
 	}
-	
+
+	/**
+	 * Parses a time in HH:mm format to minutes since midnight.
+	 * @param time	the time in HH:mm format
+	 * @return		the minutes since midnight
+	 * @throws IllegalArgumentException	if the time is not a valid HH:mm time
+	 */
+	public static int parseMinuteOfDay(String time) {
+		if (time == null || time.length() != 5) {
+			throw new IllegalArgumentException("Invalid time (expected HH:mm): " + time);
+		}
+		return parseMinuteOfDay(time, 0);
+	}
+
+	/**
+	 * Parses the MM/dd/yyyy date starting at an offset of a string.
+	 */
+	private static int parseEpochDay(String s, int off) {
+		int month = digits(s, off, off + 2);
+		int day = digits(s, off + 3, off + 5);
+		int year = digits(s, off + 6, off + 10);
+		if (s.charAt(off + 2) != '/' || s.charAt(off + 5) != '/'
+				|| year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+			throw new IllegalArgumentException("Invalid date (expected MM/dd/yyyy): "
+					+ s.substring(off, off + 10));
+		}
+		return toEpochDay(year, month, day);
+	}
+
+	/**
+	 * Parses the HH:mm time starting at an offset of a string.
+	 */
+	private static int parseMinuteOfDay(String s, int off) {
+		int hour = digits(s, off, off + 2);
+		int minute = digits(s, off + 3, off + 5);
+		if (s.charAt(off + 2) != ':' || hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+			throw new IllegalArgumentException("Invalid time (expected HH:mm): "
+					+ s.substring(off, off + 5));
+		}
+		return hour * 60 + minute;
+	}
+
+	/**
+	 * Converts a year, month and day of month to a day count since 01/01/1970.
+	 * @param year	the year
+	 * @param month	the month (1 for January)
+	 * @param day	the day of the month
+	 * @return		the epoch day of the date
+	 */
+	public static int toEpochDay(int year, int month, int day) {
+		// Shift the year to start in March so the leap day is the last day of the year
+		int y = month <= 2 ? year - 1 : year;
+		int era = Math.floorDiv(y, 400);
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/**
+	 * Converts a day count since 01/01/1970 to a year, month and day of month, packed
+	 * into one number as yyyyMMdd (e.g. 20171213 for 12/13/2017).
+	 * @param epochDay	the epoch day
+	 * @return			the date as yyyyMMdd
+	 */
+	public static int toYearMonthDay(int epochDay) {
+		int z = epochDay + 719468;
+		int era = Math.floorDiv(z, 146097);
+		int dayOfEra = z - era * 146097;
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int mp = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		return year * 10000 + month * 100 + day;
+	}
+
+	/**
+	 * Formats a day count since 01/01/1970 as a date in MM/dd/yyyy format.
+	 * @param epochDay	the epoch day
+	 * @return			the date in MM/dd/yyyy format
+	 */
+	public static String formatDate(int epochDay) {
+		StringBuilder date = new StringBuilder(10);
+		try {
+			appendDate(date, epochDay);
+		} catch (IOException e) {
+			// StringBuilder does not throw
+			throw new IllegalStateException(e);
+		}
+		return date.toString();
+	}
+
+	/**
+	 * Formats minutes since midnight as a time in HH:mm format.
+	 * @param minuteOfDay	the minutes since midnight
+	 * @return				the time in HH:mm format
+	 */
+	public static String formatTime(int minuteOfDay) {
+		StringBuilder time = new StringBuilder(5);
+		try {
+			appendTime(time, minuteOfDay);
+		} catch (IOException e) {
+			// StringBuilder does not throw
+			throw new IllegalStateException(e);
+		}
+		return time.toString();
+	}
+
+	/**
+	 * Writes a day count since 01/01/1970 as a date in MM/dd/yyyy format.
+	 * @param out		where to write the date
+	 * @param epochDay	the epoch day
+	 * @throws IOException	if out cannot be written to
+	 */
+	public static void appendDate(Appendable out, int epochDay) throws IOException {
+		int date = toYearMonthDay(epochDay);
+		int year = date / 10000;
+		int month = date / 100 % 100;
+		int day = date % 100;
+
+		out.append((char) ('0' + month / 10)).append((char) ('0' + month % 10)).append('/');
+		out.append((char) ('0' + day / 10)).append((char) ('0' + day % 10)).append('/');
+		out.append((char) ('0' + year / 1000 % 10)).append((char) ('0' + year / 100 % 10));
+		out.append((char) ('0' + year / 10 % 10)).append((char) ('0' + year % 10));
+	}
+
+	/**
+	 * Writes minutes since midnight as a time in HH:mm format.
+	 * @param out			where to write the time
+	 * @param minuteOfDay	the minutes since midnight
+	 * @throws IOException	if out cannot be written to
+	 */
+	public static void appendTime(Appendable out, int minuteOfDay) throws IOException {
+		int hour = minuteOfDay / 60;
+		int minute = minuteOfDay % 60;
+		out.append((char) ('0' + hour / 10)).append((char) ('0' + hour % 10)).append(':');
+		out.append((char) ('0' + minute / 10)).append((char) ('0' + minute % 10));
+	}
+
+	/**
+	 * Gets the number of days in a month.
+	 * @param year	the year
+	 * @param month	the month (1 for January)
+	 * @return		the number of days in the month
+	 */
+	public static int lengthOfMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+			return leap ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * Converts minutes since midnight to the HHmm integer form (e.g. 9:45 to 945).
+	 */
+	private static int toHHmm(int minuteOfDay) {
+		return minuteOfDay / 60 * 100 + minuteOfDay % 60;
+	}
+
+	/**
+	 * Checks that a title can be written as part of a line of events.txt and the journal.
+	 */
+	private static void checkTitle(String title) {
+		if (title == null) {
+			throw new IllegalArgumentException("Missing title");
+		}
+		if (title.indexOf('\n') >= 0 || title.indexOf('\r') >= 0) {
+			throw new IllegalArgumentException("Titles must be a single line");
+		}
+	}
+
+	/**
+	 * Checks that the times are within a day and the end is not before the start.
+	 */
+	private static void checkTimes(int startMinute, int endMinute) {
+		if (startMinute < 0 || startMinute >= 24 * 60 || endMinute < 0 || endMinute >= 24 * 60) {
+			throw new IllegalArgumentException("Time out of range: " + startMinute + " - " + endMinute);
+		}
+		if (endMinute < startMinute) {
+			throw new IllegalArgumentException("End time " + formatTime(endMinute)
+					+ " is before start time " + formatTime(startMinute));
+		}
+	}
+
+	/**
+	 * Reads the decimal digits s[from, to) as an integer, or -1 if a character is not a digit.
+	 */
+	private static int digits(String s, int from, int to) {
+		int value = 0;
+		for (int i = from; i < to; i++) {
+			char ch = s.charAt(i);
+			if (ch < '0' || ch > '9') {
+				return -1;
+			}
+			value = value * 10 + (ch - '0');
+		}
+		return value;
+	}
+
 }
@@ -0,0 +1,215 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A batch of parsed events waiting to be added to the calendar model, together with
+ * the line number each event was read from. The batch can be ordered by date and start
+ * time so that conflicts are found with a single sweep over each day.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class EventBatch {
+
+	// Sort keys pack the date, start time and position of an event into one long
+	private static final int INDEX_BITS = 30;
+	private static final int MINUTE_BITS = 11;
+	private static final int MAX_EVENTS = 1 << INDEX_BITS;
+	private static final int DAY_OFFSET = 719528;	// epoch day of 01/01/0000
+
+	private String source;		// file the events were read from
+	private Event[] events;
+	private int[] lineNumbers;
+	private int size;
+	private boolean sorted;
+
+	/**
+	 * Constructs an empty batch.
+	 * @param source	the name of the file the events are read from, or null if they
+	 * 					are not from a file
+	 */
+	public EventBatch(String source) {
+		this.source = source;
+		this.events = new Event[16];
+		this.lineNumbers = new int[16];
+		this.size = 0;
+		this.sorted = true;
+	}
+
+	/**
+	 * Reads every line of a stream of events in the events.txt format into a batch.
+	 * Lines that cannot be parsed are recorded in the report; blank lines are skipped.
+	 * @param in		the stream to read from
+	 * @param source	the name of the file the stream reads, or null if it is not a file
+	 * @param report	the report for rejected lines
+	 * @return			the parsed events
+	 * @throws IOException	if the stream cannot be read
+	 */
+	public static EventBatch read(Reader in, String source, LoadReport report) throws IOException {
+		BufferedReader br = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+		EventBatch batch = new EventBatch(source);
+		String line;
+		int lineNumber = 0;
+		while ((line = br.readLine()) != null) {
+			lineNumber++;
+			batch.addLine(line, lineNumber, report);
+		}
+		return batch;
+	}
+
+	/**
+	 * Parses lines of events in the events.txt format into a batch. Lines that cannot be
+	 * parsed are recorded in the report; blank lines are skipped.
+	 * @param lines				the lines to parse
+	 * @param count				the number of lines to parse from the start of lines
+	 * @param firstLineNumber	the line number of the first line
+	 * @param source			the name of the file the lines are from, or null if it is not a file
+	 * @param report			the report for rejected lines
+	 * @return					the parsed events
+	 */
+	public static EventBatch parse(String[] lines, int count, int firstLineNumber, String source, LoadReport report) {
+		EventBatch batch = new EventBatch(source);
+		for (int i = 0; i < count; i++) {
+			batch.addLine(lines[i], firstLineNumber + i, report);
+		}
+		return batch;
+	}
+
+	/**
+	 * Parses a line into this batch, or records it in the report if it cannot be parsed.
+	 */
+	private void addLine(String line, int lineNumber, LoadReport report) {
+		if (line.isEmpty()) {
+			return;
+		}
+		try {
+			add(Event.parseEvent(line), lineNumber);
+		} catch (IllegalArgumentException e) {
+			report.reject(source, lineNumber, line, e.getMessage());
+		}
+	}
+
+	/**
+	 * Adds an event to this batch.
+	 * @param e				the event to add
+	 * @param lineNumber	the line number the event was read from
+	 */
+	public void add(Event e, int lineNumber) {
+		if (size == events.length) {
+			if (size == MAX_EVENTS) {
+				throw new IllegalStateException("Too many events in one batch: " + size);
+			}
+			int capacity = (int) Math.min((long) size * 2, MAX_EVENTS);
+			events = Arrays.copyOf(events, capacity);
+			lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+		}
+		if (size > 0 && sorted) {
+			Event last = events[size - 1];
+			sorted = last.getEpochDay() < e.getEpochDay()
+					|| last.getEpochDay() == e.getEpochDay() && last.getStartMinute() <= e.getStartMinute();
+		}
+		events[size] = e;
+		lineNumbers[size] = lineNumber;
+		size++;
+	}
+
+	/**
+	 * Gets the name of the file the events of this batch were read from.
+	 * @return	the name of the file, or null if the events are not from a file
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Gets the number of events in this batch.
+	 * @return	the number of events in this batch
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets an event of this batch.
+	 * @param i		the position of the event
+	 * @return		the event at that position
+	 */
+	public Event get(int i) {
+		return events[i];
+	}
+
+	/**
+	 * Gets the line number an event of this batch was read from.
+	 * @param i		the position of the event
+	 * @return		the line number of the event at that position
+	 */
+	public int getLineNumber(int i) {
+		return lineNumbers[i];
+	}
+
+	/**
+	 * Sorts this batch by date, then start time, then the order the events were added.
+	 */
+	public void sort() {
+		if (sorted) {
+			return;
+		}
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++) {
+			Event e = events[i];
+			keys[i] = ((long) (e.getEpochDay() + DAY_OFFSET) << (INDEX_BITS + MINUTE_BITS))
+					| ((long) e.getStartMinute() << INDEX_BITS) | i;
+		}
+		Arrays.sort(keys);
+
+		Event[] sortedEvents = new Event[events.length];
+		int[] sortedLines = new int[lineNumbers.length];
+		for (int i = 0; i < size; i++) {
+			int from = (int) (keys[i] & (MAX_EVENTS - 1));
+			sortedEvents[i] = events[from];
+			sortedLines[i] = lineNumbers[from];
+		}
+		events = sortedEvents;
+		lineNumbers = sortedLines;
+		sorted = true;
+	}
+
+	/**
+	 * Binary search for the first event of this sorted batch on or after an epoch day.
+	 * @param epochDay	the epoch day to search for
+	 * @return			the position of the first event on or after epochDay, or the size
+	 * 					of the batch if there is none
+	 */
+	public int firstOnOrAfter(int epochDay) {
+		sort();
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (events[mid].getEpochDay() < epochDay) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Copies a range of this batch into a new batch from the same file.
+	 * @param from	the position of the first event to copy
+	 * @param to	the position after the last event to copy
+	 * @return		a batch with the events in the range
+	 */
+	public EventBatch slice(int from, int to) {
+		EventBatch slice = new EventBatch(source);
+		slice.events = Arrays.copyOfRange(events, from, Math.max(to, from + 1));
+		slice.lineNumbers = Arrays.copyOfRange(lineNumbers, from, Math.max(to, from + 1));
+		slice.size = to - from;
+		slice.sorted = sorted;
+		return slice;
+	}
+
+}	// end of EventBatch class
@@ -0,0 +1,234 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An append-only journal of the changes made to the calendar since the last snapshot
+ * of events.txt. Each entry is one line: an operation character (+ to create an event,
+ * - to delete one), a space, and the event in the events.txt format. Entries are buffered
+ * and forced to disk in groups, either when enough entries are pending or shortly after
+ * the first one, so a change costs an append instead of a rewrite of every event.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class EventJournal implements Closeable {
+
+	/** Operation of an entry that creates an event. */
+	public static final char CREATE = '+';
+	/** Operation of an entry that deletes an event. */
+	public static final char DELETE = '-';
+
+	private static final int GROUP_SIZE = 64;			// pending entries that force a sync
+	private static final long SYNC_DELAY_MILLIS = 200;	// longest time an entry stays pending
+	private static final Logger LOG = Logger.getLogger(EventJournal.class.getName());
+
+	private final Path path;
+	private final FileChannel channel;
+	private final ScheduledExecutorService syncer;
+	private StringBuilder pending = new StringBuilder();
+	private int pendingEntries;
+	private long size;			// bytes in the journal file, including pending entries
+	private boolean syncScheduled;
+
+	/**
+	 * Opens a journal for appending, creating the file if it does not exist.
+	 * @param path	the path of the journal file
+	 * @throws IOException	if the journal cannot be opened
+	 */
+	public EventJournal(Path path) throws IOException {
+		this.path = path;
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		this.size = channel.size();
+		this.syncer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "event-journal-sync");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Receives the entries of a journal in order, for replay.
+	 */
+	public interface Replay {
+		/**
+		 * Receives consecutive entries that create events.
+		 * @param batch		the created events, in journal order
+		 */
+		void create(EventBatch batch);
+
+		/**
+		 * Receives an entry that deletes an event.
+		 * @param e		the deleted event
+		 */
+		void delete(Event e);
+	}
+
+	/**
+	 * Reads the entries of a journal file for replay. Consecutive entries that create
+	 * events are handed over as one batch. Lines that cannot be parsed are recorded in the
+	 * report.
+	 * @param path		the path of the journal file
+	 * @param report	the report for rejected lines
+	 * @param replay	receives the entries in journal order
+	 * @throws IOException	if the journal cannot be read
+	 */
+	public static void read(Path path, LoadReport report, Replay replay) throws IOException {
+		String source = path.getFileName().toString();
+		EventBatch batch = new EventBatch(source);
+		if (!Files.exists(path)) {
+			return;
+		}
+		BufferedReader br = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = br.readLine()) != null) {
+				lineNumber++;
+				if (line.isEmpty()) {
+					continue;
+				}
+				char op = line.charAt(0);
+				if (line.length() < 2 || (op != CREATE && op != DELETE) || line.charAt(1) != ' ') {
+					report.reject(source, lineNumber, line, "Unknown journal entry");
+					continue;
+				}
+				Event e;
+				try {
+					e = Event.parseEvent(line.substring(2));
+				} catch (IllegalArgumentException ex) {
+					report.reject(source, lineNumber, line, ex.getMessage());
+					continue;
+				}
+				if (op == CREATE) {
+					batch.add(e, lineNumber);
+				} else {
+					// The events created before the deletion go first
+					if (batch.size() > 0) {
+						replay.create(batch);
+						batch = new EventBatch(source);
+					}
+					replay.delete(e);
+				}
+			}
+		} finally {
+			br.close();
+		}
+		if (batch.size() > 0) {
+			replay.create(batch);
+		}
+	}
+
+	/**
+	 * Appends an entry to the journal. The entry reaches the disk with the next group sync.
+	 * @param op	the operation of the entry
+	 * @param e		the event of the entry
+	 * @throws IOException	if a group sync fails, or the journal is closed
+	 */
+	public synchronized void append(char op, Event e) throws IOException {
+		if (!channel.isOpen()) {
+			throw new IOException("Cannot append to " + path + ": it is closed");
+		}
+		int start = pending.length();
+		pending.append(op).append(' ').append(e.printEvent()).append('\n');
+		pendingEntries++;
+		size += pending.length() - start;
+		if (pendingEntries >= GROUP_SIZE) {
+			sync();
+		}
+		else if (!syncScheduled) {
+			syncScheduled = true;
+			syncer.schedule(new Runnable() {
+				public void run() {
+					try {
+						sync();
+					} catch (IOException e) {
+						LOG.log(Level.WARNING, "Cannot write the journal " + path, e);
+					}
+				}
+			}, SYNC_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Writes the pending entries and forces them to disk.
+	 * @throws IOException	if the journal cannot be written, or is closed while entries
+	 * 						are pending
+	 */
+	public synchronized void sync() throws IOException {
+		syncScheduled = false;
+		if (pendingEntries == 0) {
+			return;
+		}
+		if (!channel.isOpen()) {
+			throw new IOException(pendingEntries + " journal entries not written: " + path + " is closed");
+		}
+		ByteBuffer bytes = StandardCharsets.UTF_8.encode(pending.toString());
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		channel.force(false);
+		pending.setLength(0);
+		pendingEntries = 0;
+	}
+
+	/**
+	 * Empties the journal once its entries are part of a snapshot.
+	 * @throws IOException	if the journal cannot be truncated
+	 */
+	public synchronized void truncate() throws IOException {
+		pending.setLength(0);
+		pendingEntries = 0;
+		size = 0;
+		channel.truncate(0);
+		channel.force(true);
+	}
+
+	/**
+	 * Gets the size of the journal, including entries not yet synced.
+	 * @return	the size of the journal in bytes
+	 */
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * Gets the path of the journal file.
+	 * @return	the path of the journal file
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Syncs the pending entries and closes the journal.
+	 * @throws IOException	if the journal cannot be written
+	 */
+	public synchronized void close() throws IOException {
+		if (!channel.isOpen()) {
+			return;
+		}
+		try {
+			sync();
+		} finally {
+			syncer.shutdown();
+			channel.close();
+		}
+	}
+
+}	// end of EventJournal class
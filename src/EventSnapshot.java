@@ -0,0 +1,323 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A binary snapshot of the calendar's events that is opened with a memory mapping, so
+ * that only the header is read up front and the events of a day are decoded when they
+ * are first needed.
+ *
+ * Layout (all numbers big-endian):
+ * 		header		magic "CALS", version, day count, record count, title count,
+ * 					day table offset, title table offset, title bytes offset
+ * 		records		per event: title index (int), start minute (short), end minute (short),
+ * 					sorted by epoch day, then start time
+ * 		day table	per day: epoch day (int), first record (int), record count (int),
+ * 					sorted by epoch day
+ * 		title table	title count + 1 offsets (int) into the title bytes
+ * 		title bytes	the distinct titles in UTF-8
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class EventSnapshot implements Closeable {
+
+	private static final int MAGIC = 0x43414C53;	// "CALS"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final int RECORD_SIZE = 8;
+	private static final int DAY_ENTRY_SIZE = 12;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int dayCount;
+	private final int recordCount;
+	private final int dayTable;
+	private final int titleTable;
+	private final int titleBytes;
+	private final String[] titles;	// titles decoded so far, by title index
+
+	/**
+	 * Opens a snapshot file and reads its header.
+	 * @param path	the path of the snapshot file
+	 * @return		the opened snapshot
+	 * @throws IOException	if the file cannot be read or is not a snapshot of this version
+	 */
+	public static EventSnapshot open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			return new EventSnapshot(channel);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private EventSnapshot(FileChannel channel) throws IOException {
+		this.channel = channel;
+		long length = channel.size();
+		if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+			throw new IOException("Not an event snapshot (size " + length + ")");
+		}
+		this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not an event snapshot");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported event snapshot version " + buffer.getInt(4));
+		}
+		this.dayCount = buffer.getInt(8);
+		this.recordCount = buffer.getInt(12);
+		this.titles = new String[buffer.getInt(16)];
+		this.dayTable = buffer.getInt(20);
+		this.titleTable = buffer.getInt(24);
+		this.titleBytes = buffer.getInt(28);
+	}
+
+	/**
+	 * Gets the number of days with events in this snapshot.
+	 * @return	the number of days with events
+	 */
+	public int getDayCount() {
+		return dayCount;
+	}
+
+	/**
+	 * Gets the number of events in this snapshot.
+	 * @return	the number of events
+	 */
+	public int getEventCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Gets the epoch day of an entry of the day table.
+	 * @param dayIndex	the position in the day table
+	 * @return			the epoch day at that position
+	 */
+	public int getDay(int dayIndex) {
+		return buffer.getInt(dayTable + dayIndex * DAY_ENTRY_SIZE);
+	}
+
+	/**
+	 * Gets the number of events of an entry of the day table.
+	 * @param dayIndex	the position in the day table
+	 * @return			the number of events that day
+	 */
+	public int getEventCount(int dayIndex) {
+		return buffer.getInt(dayTable + dayIndex * DAY_ENTRY_SIZE + 8);
+	}
+
+	/**
+	 * Binary search for the first entry of the day table on or after an epoch day.
+	 * @param epochDay	the epoch day to search for
+	 * @return			the position of the first day on or after epochDay, or the
+	 * 					day count if there is none
+	 */
+	public int firstDayAtOrAfter(int epochDay) {
+		int low = 0;
+		int high = dayCount;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (getDay(mid) < epochDay) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Decodes the events of an entry of the day table into a day schedule.
+	 * @param dayIndex	the position in the day table
+	 * @param into		a day schedule not shared yet, such as a new one, to add the events to
+	 */
+	public void readDay(int dayIndex, DaySchedule into) {
+		int entry = dayTable + dayIndex * DAY_ENTRY_SIZE;
+		int epochDay = buffer.getInt(entry);
+		int first = buffer.getInt(entry + 4);
+		int count = buffer.getInt(entry + 8);
+		for (int r = first; r < first + count; r++) {
+			int record = HEADER_SIZE + r * RECORD_SIZE;
+			into.add(new Event(getTitle(buffer.getInt(record)), epochDay,
+					buffer.getShort(record + 4), buffer.getShort(record + 6)));
+		}
+	}
+
+	/**
+	 * Closes the snapshot's file. The mapping stays readable until the snapshot itself is
+	 * no longer referenced, so a thread still reading days from it is not cut off.
+	 * @throws IOException	if the file cannot be closed
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Decodes a title of the title pool, once.
+	 */
+	private String getTitle(int titleIndex) {
+		String title = titles[titleIndex];
+		if (title == null) {
+			int from = buffer.getInt(titleTable + titleIndex * 4);
+			int to = buffer.getInt(titleTable + titleIndex * 4 + 4);
+			byte[] bytes = new byte[to - from];
+			ByteBuffer b = buffer.duplicate();
+			b.position(titleBytes + from);
+			b.get(bytes);
+			title = new String(bytes, StandardCharsets.UTF_8).intern();
+			titles[titleIndex] = title;
+		}
+		return title;
+	}
+
+	/**
+	 * Writes events into a snapshot file. The file is written under a temporary name and
+	 * then moved over the old snapshot, so a crash never leaves a partial snapshot behind.
+	 * @param path		the path of the snapshot file
+	 * @param events	the events to write, ordered by epoch day and then start time
+	 * @throws IOException	if the file cannot be written
+	 */
+	public static void write(Path path, Iterable<Event> events) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		Map<String, Integer> titleIndexes = new HashMap<String, Integer>();
+		List<byte[]> titlePool = new ArrayList<byte[]>();
+		int[] days = new int[64];	// day table, DAY_ENTRY_SIZE / 4 ints per day
+		int dayCount = 0;
+		int recordCount = 0;
+
+		FileOutputStream file = new FileOutputStream(temp.toFile());
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+			out.write(new byte[HEADER_SIZE]);	// header is filled in once the counts are known
+
+			for (Event e : events) {
+				if (dayCount == 0 || days[(dayCount - 1) * 3] != e.getEpochDay()) {
+					if (dayCount > 0 && days[(dayCount - 1) * 3] > e.getEpochDay()) {
+						throw new IllegalArgumentException("Events are not in chronological order");
+					}
+					if ((dayCount + 1) * 3 > days.length) {
+						days = Arrays.copyOf(days, days.length * 2);
+					}
+					days[dayCount * 3] = e.getEpochDay();
+					days[dayCount * 3 + 1] = recordCount;
+					dayCount++;
+				}
+				days[(dayCount - 1) * 3 + 2]++;
+
+				Integer titleIndex = titleIndexes.get(e.getTitle());
+				if (titleIndex == null) {
+					titleIndex = titlePool.size();
+					titleIndexes.put(e.getTitle(), titleIndex);
+					titlePool.add(e.getTitle().getBytes(StandardCharsets.UTF_8));
+				}
+				out.writeInt(titleIndex);
+				out.writeShort(e.getStartMinute());
+				out.writeShort(e.getEndMinute());
+				recordCount++;
+			}
+
+			int dayTable = HEADER_SIZE + recordCount * RECORD_SIZE;
+			for (int i = 0; i < dayCount * 3; i++) {
+				out.writeInt(days[i]);
+			}
+			int titleTable = dayTable + dayCount * DAY_ENTRY_SIZE;
+			int offset = 0;
+			out.writeInt(offset);
+			for (byte[] title : titlePool) {
+				offset += title.length;
+				out.writeInt(offset);
+			}
+			int titleBytes = titleTable + (titlePool.size() + 1) * 4;
+			for (byte[] title : titlePool) {
+				out.write(title);
+			}
+			out.flush();
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putInt(dayCount).putInt(recordCount)
+					.putInt(titlePool.size()).putInt(dayTable).putInt(titleTable).putInt(titleBytes);
+			header.flip();
+			FileChannel channel = file.getChannel();
+			channel.write(header, 0);
+			channel.force(true);
+		} finally {
+			file.close();
+		}
+		try {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Converts a text file in the events.txt format into a snapshot file. Lines that
+	 * cannot be parsed or that conflict with another event are skipped and recorded
+	 * in the report.
+	 * @param text		the path of the text file
+	 * @param snapshot	the path of the snapshot file
+	 * @param report	the report for converted and skipped lines
+	 * @throws IOException	if a file cannot be read or written
+	 */
+	public static void fromText(Path text, Path snapshot, LoadReport report) throws IOException {
+		// Load through a model so conflicting lines are dropped like they are on startup
+		CalendarModel model = new CalendarModel();
+		BufferedReader br = Files.newBufferedReader(text, StandardCharsets.UTF_8);
+		try {
+			model.addAll(EventBatch.read(br, text.getFileName().toString(), report), report);
+		} finally {
+			br.close();
+		}
+		write(snapshot, model.events());
+	}
+
+	/**
+	 * Converts a snapshot file into a text file in the events.txt format.
+	 * @param snapshot	the path of the snapshot file
+	 * @param text		the path of the text file
+	 * @throws IOException	if a file cannot be read or written
+	 */
+	public static void toText(Path snapshot, Path text) throws IOException {
+		EventSnapshot s = open(snapshot);
+		try {
+			BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(text.toFile()), StandardCharsets.UTF_8));
+			try {
+				for (int i = 0; i < s.getDayCount(); i++) {
+					DaySchedule day = new DaySchedule();
+					s.readDay(i, day);
+					for (Event e : day) {
+						e.appendTo(writer);
+						writer.write('\n');
+					}
+				}
+			} finally {
+				writer.close();
+			}
+		} finally {
+			s.close();
+		}
+	}
+
+}	// end of EventSnapshot class
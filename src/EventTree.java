@@ -0,0 +1,286 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map from epoch days to the events of those days, in day order. Changing a
+ * day gives a new map that shares every node but the O(log n) nodes on the path to that
+ * day with the old one, so keeping old versions is cheap: a version costs only the nodes
+ * it does not share. The calendar model publishes a new version for each change, which
+ * readers can keep and iterate without locks while the model changes.
+ *
+ * The map is a persistent AVL tree, so lookups and changes take O(log n) in the worst case.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public final class EventTree extends AbstractMap<Integer, DaySchedule> {
+
+	/** The map without any days. */
+	public static final EventTree EMPTY = new EventTree(null);
+	private static final int MAX_DEPTH = 64;		// deeper than an AVL tree of 2^31 nodes
+
+	private final Node root;
+
+	private EventTree(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Gets the events of a day.
+	 * @param day	the epoch day
+	 * @return		the events of the day, or null if there are none
+	 */
+	public DaySchedule get(int day) {
+		Node n = root;
+		while (n != null) {
+			if (day < n.day) {
+				n = n.left;
+			} else if (day > n.day) {
+				n = n.right;
+			} else {
+				return n.events;
+			}
+		}
+		return null;
+	}
+
+	public DaySchedule get(Object key) {
+		return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+	}
+
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Gets the number of days with events, in constant time.
+	 * @return	the number of days
+	 */
+	public int size() {
+		return size(root);
+	}
+
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	/**
+	 * Gets a map with the events of a day replaced. This map is not changed.
+	 * @param day		the epoch day
+	 * @param events	the events of the day, or null to remove the day
+	 * @return			the changed map
+	 */
+	public EventTree with(int day, DaySchedule events) {
+		if (events == null) {
+			Node changed = remove(root, day);
+			return changed == root ? this : new EventTree(changed);
+		}
+		return new EventTree(put(root, day, events));
+	}
+
+	/**
+	 * Gets the events of a range of days, in day order.
+	 * @param fromDay	the first epoch day of the range
+	 * @param toDay		the last epoch day of the range
+	 * @return			the events of each day of the range that has any
+	 */
+	public Iterable<DaySchedule> values(final int fromDay, final int toDay) {
+		return new Iterable<DaySchedule>() {
+			public Iterator<DaySchedule> iterator() {
+				final Cursor nodes = new Cursor(root, fromDay, toDay);
+				return new Iterator<DaySchedule>() {
+					public boolean hasNext() {
+						return nodes.hasNext();
+					}
+
+					public DaySchedule next() {
+						return nodes.next().events;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Gets the days of a range and their events, in day order.
+	 * @param fromDay	the first epoch day of the range
+	 * @param toDay		the last epoch day of the range
+	 * @return			the days of the range that have events
+	 */
+	public Iterable<Map.Entry<Integer, DaySchedule>> entries(final int fromDay, final int toDay) {
+		return new Iterable<Map.Entry<Integer, DaySchedule>>() {
+			public Iterator<Map.Entry<Integer, DaySchedule>> iterator() {
+				return new Cursor(root, fromDay, toDay);
+			}
+		};
+	}
+
+	public Set<Map.Entry<Integer, DaySchedule>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, DaySchedule>>() {
+			public Iterator<Map.Entry<Integer, DaySchedule>> iterator() {
+				return new Cursor(root, Integer.MIN_VALUE, Integer.MAX_VALUE);
+			}
+
+			public int size() {
+				return EventTree.this.size();
+			}
+		};
+	}
+
+	private static int height(Node n) {
+		return n == null ? 0 : n.height;
+	}
+
+	private static int size(Node n) {
+		return n == null ? 0 : n.size;
+	}
+
+	/**
+	 * Copies the path to a day, with the day's events replaced or added.
+	 */
+	private static Node put(Node n, int day, DaySchedule events) {
+		if (n == null) {
+			return new Node(day, events, null, null);
+		}
+		if (day < n.day) {
+			return balance(n.day, n.events, put(n.left, day, events), n.right);
+		}
+		if (day > n.day) {
+			return balance(n.day, n.events, n.left, put(n.right, day, events));
+		}
+		return new Node(day, events, n.left, n.right);
+	}
+
+	/**
+	 * Copies the path to a day without the day, or returns n itself if the day is not there.
+	 */
+	private static Node remove(Node n, int day) {
+		if (n == null) {
+			return null;
+		}
+		if (day < n.day) {
+			Node left = remove(n.left, day);
+			return left == n.left ? n : balance(n.day, n.events, left, n.right);
+		}
+		if (day > n.day) {
+			Node right = remove(n.right, day);
+			return right == n.right ? n : balance(n.day, n.events, n.left, right);
+		}
+		if (n.left == null) {
+			return n.right;
+		}
+		if (n.right == null) {
+			return n.left;
+		}
+		Node next = n.right;
+		while (next.left != null) {
+			next = next.left;
+		}
+		return balance(next.day, next.events, n.left, removeFirst(n.right));
+	}
+
+	private static Node removeFirst(Node n) {
+		if (n.left == null) {
+			return n.right;
+		}
+		return balance(n.day, n.events, removeFirst(n.left), n.right);
+	}
+
+	/**
+	 * Makes a node from subtrees whose heights differ by at most 2, rotating so that
+	 * they differ by at most 1.
+	 */
+	private static Node balance(int day, DaySchedule events, Node left, Node right) {
+		if (height(left) > height(right) + 1) {
+			if (height(left.left) >= height(left.right)) {
+				return new Node(left.day, left.events, left.left, new Node(day, events, left.right, right));
+			}
+			Node middle = left.right;
+			return new Node(middle.day, middle.events, new Node(left.day, left.events, left.left, middle.left),
+					new Node(day, events, middle.right, right));
+		}
+		if (height(right) > height(left) + 1) {
+			if (height(right.right) >= height(right.left)) {
+				return new Node(right.day, right.events, new Node(day, events, left, right.left), right.right);
+			}
+			Node middle = right.left;
+			return new Node(middle.day, middle.events, new Node(day, events, left, middle.left),
+					new Node(right.day, right.events, middle.right, right.right));
+		}
+		return new Node(day, events, left, right);
+	}
+
+	/**
+	 * A day and its events. Nodes are never changed, so versions of the map share them.
+	 */
+	private static final class Node implements Map.Entry<Integer, DaySchedule> {
+		final int day;
+		final DaySchedule events;
+		final Node left;
+		final Node right;
+		final int height;
+		final int size;
+
+		Node(int day, DaySchedule events, Node left, Node right) {
+			this.day = day;
+			this.events = events;
+			this.left = left;
+			this.right = right;
+			this.height = Math.max(height(left), height(right)) + 1;
+			this.size = size(left) + size(right) + 1;
+		}
+
+		public Integer getKey() {
+			return day;
+		}
+
+		public DaySchedule getValue() {
+			return events;
+		}
+
+		public DaySchedule setValue(DaySchedule value) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Walks the nodes of a range of days in order, keeping the path of nodes still to visit.
+	 */
+	private static final class Cursor implements Iterator<Map.Entry<Integer, DaySchedule>> {
+		private final Node[] stack = new Node[MAX_DEPTH];
+		private int depth;
+		private final int toDay;
+
+		Cursor(Node root, int fromDay, int toDay) {
+			this.toDay = toDay;
+			for (Node n = root; n != null; ) {
+				if (n.day < fromDay) {
+					n = n.right;
+				} else {
+					stack[depth++] = n;
+					n = n.left;
+				}
+			}
+		}
+
+		public boolean hasNext() {
+			return depth > 0 && stack[depth - 1].day <= toDay;
+		}
+
+		public Node next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Node n = stack[--depth];
+			for (Node child = n.right; child != null; child = child.left) {
+				stack[depth++] = child;
+			}
+			return n;
+		}
+	}
+
+}	// end of EventTree class
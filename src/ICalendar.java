@@ -0,0 +1,606 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads and writes calendars in the iCalendar format (RFC 5545, .ics files). Both work
+ * one component at a time: the reader hands events to a handler in chunks and the writer
+ * formats each event straight into the stream, so files of any size take bounded memory.
+ *
+ * Only what the calendar can hold is read: VEVENTs that start and end on the same day
+ * (an end at midnight counts as the end of the start day), with DAILY, WEEKLY (BYDAY) or
+ * MONTHLY recurrence rules. Other VEVENTs are skipped and reported; other components are
+ * ignored. Times in UTC or with a known TZID are converted to the local time zone;
+ * floating times are taken as local times.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class ICalendar {
+
+	/**
+	 * Receives what is read from an iCalendar stream.
+	 */
+	public interface Handler {
+		/**
+		 * Receives a chunk of single events, in file order.
+		 * @param batch		the events and the lines of their VEVENTs
+		 */
+		void events(EventBatch batch);
+
+		/**
+		 * Receives a recurring event.
+		 * @param r				the recurring event
+		 * @param lineNumber	the line of its VEVENT
+		 */
+		void recurring(RecurringEvent r, int lineNumber);
+	}
+
+	private static final String CRLF = "\r\n";
+	private static final int FOLD_OCTETS = 75;		// longest line, without the line break
+	private static final String PRODID = "-//Priscilla Ng//SimpleCalendar//EN";
+	private static final int MINUTES_PER_DAY = 24 * 60;
+
+	/**
+	 * Reads the events of an iCalendar stream. Events are handed to the handler in chunks
+	 * as they are read; VEVENTs the calendar cannot hold are recorded in the report.
+	 * @param in			the stream to read
+	 * @param source		the name of the stream, for the report
+	 * @param report		the report for skipped VEVENTs
+	 * @param chunkSize		the number of events handed over at a time
+	 * @param handler		receives the events
+	 * @throws IOException	if the stream cannot be read
+	 */
+	public static void read(Reader in, String source, LoadReport report, int chunkSize, Handler handler) throws IOException {
+		Parser parser = new Parser(source, report, chunkSize, handler);
+		BufferedReader br = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 1 << 16);
+		String logical = null;		// the content line being unfolded
+		int logicalLine = 0;
+		int lineNumber = 0;
+		String line;
+		while ((line = br.readLine()) != null) {
+			lineNumber++;
+			if (!line.isEmpty() && (line.charAt(0) == ' ' || line.charAt(0) == '\t')) {
+				// A folded line continues the previous one
+				if (logical != null) {
+					logical = logical + line.substring(1);
+				}
+				continue;
+			}
+			if (logical != null) {
+				parser.property(logical, logicalLine);
+			}
+			logical = line;
+			logicalLine = lineNumber;
+		}
+		if (logical != null) {
+			parser.property(logical, logicalLine);
+		}
+		parser.flush();
+	}
+
+	/**
+	 * Writes events and recurring events as an iCalendar stream.
+	 * @param out		where to write
+	 * @param events	the single events
+	 * @param recurring	the recurring events
+	 * @throws IOException	if out cannot be written to
+	 */
+	public static void write(Writer out, Iterable<Event> events, List<RecurringEvent> recurring) throws IOException {
+		LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+		StringBuilder stamp = new StringBuilder("DTSTAMP:");
+		appendDateTime(stamp, (int) now.toLocalDate().toEpochDay(), now.getHour() * 60 + now.getMinute());
+		String dtstamp = stamp.append('Z').toString();
+
+		out.write("BEGIN:VCALENDAR" + CRLF + "VERSION:2.0" + CRLF + "PRODID:" + PRODID + CRLF);
+		StringBuilder line = new StringBuilder(128);
+		for (Event e : events) {
+			writeEvent(out, line, dtstamp, e, null, "");
+		}
+		for (int i = 0; i < recurring.size(); i++) {
+			RecurringEvent r = recurring.get(i);
+			writeEvent(out, line, dtstamp, r.getFirst(), r, "-R" + i);
+		}
+		out.write("END:VCALENDAR" + CRLF);
+	}
+
+	/**
+	 * Writes one VEVENT. The UID is made from the start, which no other single event has.
+	 */
+	private static void writeEvent(Writer out, StringBuilder line, String dtstamp, Event e, RecurringEvent r,
+			String uidSuffix) throws IOException {
+		out.write("BEGIN:VEVENT" + CRLF);
+		line.setLength(0);
+		line.append("UID:");
+		appendDateTime(line, e.getEpochDay(), e.getStartMinute());
+		writeLine(out, line.append(uidSuffix).append("@simplecalendar"));
+		out.write(dtstamp);
+		out.write(CRLF);
+		line.setLength(0);
+		appendDateTime(line.append("DTSTART:"), e.getEpochDay(), e.getStartMinute());
+		writeLine(out, line);
+		line.setLength(0);
+		appendDateTime(line.append("DTEND:"), e.getEpochDay(), e.getEndMinute());
+		writeLine(out, line);
+		line.setLength(0);
+		appendText(line.append("SUMMARY:"), e.getTitle());
+		writeLine(out, line);
+		if (r != null) {
+			line.setLength(0);
+			line.append("RRULE:FREQ=").append(r.getFrequency().name()).append(";INTERVAL=").append(r.getInterval());
+			if (r.getFrequency() == RecurringEvent.Frequency.WEEKLY) {
+				line.append(";BYDAY=").append(RecurringEvent.formatWeekdays(r.getWeekdays()));
+			}
+			// UNTIL and COUNT must not both be given; the one that ends the series first is
+			if (r.endsByCount()) {
+				line.append(";COUNT=").append(r.getCount());
+			} else if (r.getUntil() != RecurringEvent.FOREVER) {
+				// UNTIL has the value type of DTSTART: the end of the last day
+				appendDateTime(line.append(";UNTIL="), r.getUntil(), MINUTES_PER_DAY - 1);
+			}
+			writeLine(out, line);
+			int[] exceptions = r.getExceptions();
+			if (exceptions.length > 0) {
+				line.setLength(0);
+				line.append("EXDATE:");
+				for (int i = 0; i < exceptions.length; i++) {
+					appendDateTime(line.append(i == 0 ? "" : ","), exceptions[i], e.getStartMinute());
+				}
+				writeLine(out, line);
+			}
+		}
+		out.write("END:VEVENT" + CRLF);
+	}
+
+	/**
+	 * Writes a content line, folded so no line is longer than 75 octets of UTF-8.
+	 */
+	private static void writeLine(Writer out, CharSequence line) throws IOException {
+		int octets = 0;
+		int from = 0;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			// A surrogate pair is 4 octets, counted on its first char so it is never split
+			int size = c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isHighSurrogate(c) ? 4
+					: Character.isLowSurrogate(c) ? 0 : 3;
+			if (octets + size > FOLD_OCTETS) {
+				out.append(line, from, i).append(CRLF).append(' ');
+				from = i;
+				octets = 1;		// the space that starts the folded line
+			}
+			octets += size;
+		}
+		out.append(line, from, line.length()).append(CRLF);
+	}
+
+	/**
+	 * Appends text with the characters that iCalendar text values escape.
+	 */
+	private static void appendText(StringBuilder line, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\\' || c == ';' || c == ',') {
+				line.append('\\').append(c);
+			} else if (c == '\n') {
+				line.append("\\n");
+			} else {
+				line.append(c);
+			}
+		}
+	}
+
+	private static void appendDate(StringBuilder line, int epochDay) {
+		int date = Event.toYearMonthDay(epochDay);
+		pad(line, date / 10000, 4);
+		pad(line, date / 100 % 100, 2);
+		pad(line, date % 100, 2);
+	}
+
+	private static void appendDateTime(StringBuilder line, int epochDay, int minuteOfDay) {
+		appendDate(line, epochDay);
+		line.append('T');
+		pad(line, minuteOfDay / 60, 2);
+		pad(line, minuteOfDay % 60, 2);
+		line.append("00");
+	}
+
+	private static void pad(StringBuilder line, int value, int width) {
+		for (int limit = 10; width > 1; width--, limit *= 10) {
+			if (value < limit) {
+				line.append('0');
+			}
+		}
+		line.append(value);
+	}
+
+	/**
+	 * Turns content lines into events, one VEVENT at a time.
+	 */
+	private static class Parser {
+		private final String source;
+		private final LoadReport report;
+		private final int chunkSize;
+		private final Handler handler;
+		private final ZoneId local = ZoneId.systemDefault();
+		private final Map<String, ZoneId> zones = new HashMap<String, ZoneId>();	// known TZIDs, null if unknown
+		private EventBatch batch;
+
+		// The VEVENT being read
+		private boolean inEvent;
+		private int nested;					// depth of components inside the VEVENT (VALARM)
+		private int eventLine;
+		private String summary;
+		private String start;
+		private String startParams;
+		private String end;
+		private String endParams;
+		private String duration;
+		private String rrule;
+		private StringBuilder exdates;
+		private String invalid;				// why a property of the VEVENT could not be read
+
+		Parser(String source, LoadReport report, int chunkSize, Handler handler) {
+			this.source = source;
+			this.report = report;
+			this.chunkSize = chunkSize;
+			this.handler = handler;
+			this.batch = new EventBatch(source);
+		}
+
+		/**
+		 * Handles an unfolded content line: NAME[;PARAM=VALUE...]:VALUE
+		 */
+		void property(String line, int lineNumber) {
+			int colon = valueStart(line);
+			if (colon < 0) {
+				return;
+			}
+			int semicolon = line.indexOf(';');
+			int nameEnd = semicolon >= 0 && semicolon < colon ? semicolon : colon;
+			// Names are compared in place: most lines of a large file are skipped
+			if (named(line, nameEnd, "BEGIN")) {
+				if (!inEvent && isVEvent(line, colon)) {
+					begin(lineNumber);
+				} else if (inEvent) {
+					nested++;
+				}
+				return;
+			}
+			if (named(line, nameEnd, "END")) {
+				if (inEvent && nested > 0) {
+					nested--;
+				} else if (inEvent && isVEvent(line, colon)) {
+					inEvent = false;
+					finish();
+				}
+				return;
+			}
+			if (!inEvent || nested > 0) {
+				return;
+			}
+			if (named(line, nameEnd, "SUMMARY")) {
+				summary = unescape(line.substring(colon + 1));
+			} else if (named(line, nameEnd, "DTSTART")) {
+				start = line.substring(colon + 1);
+				startParams = line.substring(nameEnd, colon);
+			} else if (named(line, nameEnd, "DTEND")) {
+				end = line.substring(colon + 1);
+				endParams = line.substring(nameEnd, colon);
+			} else if (named(line, nameEnd, "DURATION")) {
+				duration = line.substring(colon + 1);
+			} else if (named(line, nameEnd, "RRULE")) {
+				rrule = line.substring(colon + 1);
+			} else if (named(line, nameEnd, "EXDATE")) {
+				// EXDATE may be repeated; its dates are at the time zone of its own TZID
+				String params = line.substring(nameEnd, colon);
+				try {
+					for (String date : line.substring(colon + 1).split(",")) {
+						exdates.append(exdates.length() == 0 ? "" : ",")
+								.append(Math.floorDiv(dateTime(date, params, true), MINUTES_PER_DAY));
+					}
+				} catch (IllegalArgumentException e) {
+					invalid = "Invalid EXDATE: " + e.getMessage();
+				}
+			}
+		}
+
+		private static boolean named(String line, int nameEnd, String name) {
+			return nameEnd == name.length() && line.regionMatches(true, 0, name, 0, nameEnd);
+		}
+
+		private static boolean isVEvent(String line, int colon) {
+			return line.length() == colon + 7 && line.regionMatches(true, colon + 1, "VEVENT", 0, 6);
+		}
+
+		private void begin(int lineNumber) {
+			inEvent = true;
+			nested = 0;
+			eventLine = lineNumber;
+			summary = "";
+			start = null;
+			startParams = "";
+			end = null;
+			endParams = "";
+			duration = null;
+			rrule = null;
+			exdates = new StringBuilder();
+			invalid = null;
+		}
+
+		/**
+		 * Turns the VEVENT just read into an event or a recurring event.
+		 */
+		private void finish() {
+			try {
+				if (invalid != null) {
+					throw new IllegalArgumentException(invalid);
+				}
+				if (start == null) {
+					throw new IllegalArgumentException("Missing DTSTART");
+				}
+				long from = dateTime(start, startParams, false);
+				long to = from;
+				if (end != null) {
+					to = dateTime(end, endParams, false);
+				} else if (duration != null) {
+					to = from + parseDuration(duration);
+				}
+				int day = (int) Math.floorDiv(from, MINUTES_PER_DAY);
+				int startMinute = (int) Math.floorMod(from, (long) MINUTES_PER_DAY);
+				int endMinute;
+				if (to == (day + 1L) * MINUTES_PER_DAY && to > from) {
+					endMinute = MINUTES_PER_DAY - 1;	// ends at midnight
+				} else if (Math.floorDiv(to, MINUTES_PER_DAY) == day) {
+					endMinute = (int) Math.floorMod(to, (long) MINUTES_PER_DAY);
+				} else {
+					throw new IllegalArgumentException("Events spanning several days are not supported");
+				}
+				// Titles are single lines in events.txt
+				Event e = new Event(summary.replace('\n', ' ').replace('\r', ' '), day, startMinute, endMinute);
+				if (rrule != null) {
+					handler.recurring(recurring(e), eventLine);
+					return;
+				}
+				batch.add(e, eventLine);
+				if (batch.size() >= chunkSize) {
+					flush();
+				}
+			} catch (IllegalArgumentException e) {
+				report.reject(source, eventLine, "VEVENT " + summary, e.getMessage());
+			}
+		}
+
+		/**
+		 * Hands the events read so far to the handler.
+		 */
+		void flush() {
+			if (batch.size() > 0) {
+				handler.events(batch);
+				batch = new EventBatch(source);
+			}
+		}
+
+		/**
+		 * Builds a recurring event from the RRULE and EXDATEs of the VEVENT.
+		 */
+		private RecurringEvent recurring(Event first) {
+			RecurringEvent.Frequency frequency = null;
+			int interval = 1;
+			int weekdays = 0;
+			int until = RecurringEvent.FOREVER;
+			int count = 0;
+			for (String part : rrule.split(";")) {
+				int equals = part.indexOf('=');
+				String key = equals < 0 ? part : part.substring(0, equals).toUpperCase(Locale.ROOT);
+				String value = equals < 0 ? "" : part.substring(equals + 1).toUpperCase(Locale.ROOT);
+				try {
+					switch (key) {
+					case "FREQ":
+						if (!value.equals("DAILY") && !value.equals("WEEKLY") && !value.equals("MONTHLY")) {
+							throw new IllegalArgumentException("Unsupported frequency " + value);
+						}
+						frequency = RecurringEvent.Frequency.valueOf(value);
+						break;
+					case "INTERVAL":
+						interval = Integer.parseInt(value);
+						break;
+					case "BYDAY":
+						weekdays = RecurringEvent.parseWeekdays(value);
+						break;
+					case "UNTIL":
+						until = (int) Math.floorDiv(dateTime(value, "", true), MINUTES_PER_DAY);
+						break;
+					case "COUNT":
+						count = Integer.parseInt(value);
+						break;
+					case "WKST":
+						break;		// weeks are counted from Sunday
+					default:
+						throw new IllegalArgumentException("Unsupported recurrence rule part " + key);
+					}
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Invalid number in " + part);
+				}
+			}
+			if (frequency == null) {
+				throw new IllegalArgumentException("Missing FREQ in RRULE");
+			}
+			String[] dates = exdates.length() == 0 ? new String[0] : exdates.toString().split(",");
+			int[] exceptions = new int[dates.length];
+			for (int i = 0; i < dates.length; i++) {
+				exceptions[i] = Integer.parseInt(dates[i]);
+			}
+			return new RecurringEvent(first, frequency, interval, weekdays, until, count, exceptions);
+		}
+
+		/**
+		 * Parses a DATE-TIME (yyyyMMddTHHmmss, Z for UTC) to local minutes since 01/01/1970.
+		 * A DATE (yyyyMMdd) is only allowed where a day is enough.
+		 */
+		private long dateTime(String value, String params, boolean dateAllowed) {
+			int year = digits(value, 0, 4);
+			int month = digits(value, 4, 6);
+			int day = digits(value, 6, 8);
+			if (value.length() < 8 || year < 0 || month < 1 || month > 12 || day < 1
+					|| day > Event.lengthOfMonth(year, month)) {
+				throw new IllegalArgumentException("Invalid date " + value);
+			}
+			int epochDay = Event.toEpochDay(year, month, day);
+			if (value.length() == 8) {
+				if (!dateAllowed) {
+					throw new IllegalArgumentException("All-day events are not supported");
+				}
+				return (long) epochDay * MINUTES_PER_DAY;
+			}
+			int hour = digits(value, 9, 11);
+			int minute = digits(value, 11, 13);
+			if (value.length() < 15 || value.charAt(8) != 'T' || hour < 0 || hour > 23 || minute < 0 || minute > 59
+					|| digits(value, 13, 15) < 0) {
+				throw new IllegalArgumentException("Invalid date-time " + value);
+			}
+			ZoneId zone = value.endsWith("Z") ? ZoneOffset.UTC : zone(params);
+			if (zone == null || zone.equals(local)) {
+				return (long) epochDay * MINUTES_PER_DAY + hour * 60 + minute;
+			}
+			LocalDateTime time = LocalDateTime.of(LocalDate.ofEpochDay(epochDay), LocalTime.of(hour, minute))
+					.atZone(zone).withZoneSameInstant(local).toLocalDateTime();
+			return time.toLocalDate().toEpochDay() * MINUTES_PER_DAY + time.getHour() * 60 + time.getMinute();
+		}
+
+		/**
+		 * Gets the time zone of a TZID parameter, or null if there is none or it is unknown.
+		 */
+		private ZoneId zone(String params) {
+			int at = params.toUpperCase(Locale.ROOT).indexOf(";TZID=");
+			if (at < 0) {
+				return null;
+			}
+			int valueEnd = params.indexOf(';', at + 6);
+			String tzid = params.substring(at + 6, valueEnd < 0 ? params.length() : valueEnd).replace("\"", "");
+			if (!zones.containsKey(tzid)) {
+				ZoneId zone;
+				try {
+					zone = ZoneId.of(tzid);
+				} catch (DateTimeException e) {
+					zone = null;		// taken as local time
+				}
+				zones.put(tzid, zone);
+			}
+			return zones.get(tzid);
+		}
+
+		/**
+		 * Parses a DURATION such as PT1H30M or P1D to minutes.
+		 */
+		private static long parseDuration(String value) {
+			int i = value.startsWith("+") ? 1 : 0;
+			if (value.length() <= i + 1 || value.charAt(i) != 'P') {
+				throw new IllegalArgumentException("Invalid duration " + value);
+			}
+			long minutes = 0;
+			long number = -1;
+			for (i++; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c >= '0' && c <= '9') {
+					number = (number < 0 ? 0 : number * 10) + (c - '0');
+					continue;
+				}
+				if (c == 'T') {
+					continue;
+				}
+				if (number < 0) {
+					throw new IllegalArgumentException("Invalid duration " + value);
+				}
+				switch (c) {
+				case 'W':
+					minutes += number * 7 * MINUTES_PER_DAY;
+					break;
+				case 'D':
+					minutes += number * MINUTES_PER_DAY;
+					break;
+				case 'H':
+					minutes += number * 60;
+					break;
+				case 'M':
+					minutes += number;
+					break;
+				case 'S':
+					minutes += number / 60;
+					break;
+				default:
+					throw new IllegalArgumentException("Invalid duration " + value);
+				}
+				number = -1;
+			}
+			return minutes;
+		}
+
+		/**
+		 * Finds the colon that starts the value, skipping colons in quoted parameter values.
+		 */
+		private static int valueStart(String line) {
+			int colon = line.indexOf(':');
+			int quote = line.indexOf('"');
+			if (quote < 0 || quote > colon) {
+				return colon;
+			}
+			boolean quoted = false;
+			for (int i = 0; i < line.length(); i++) {
+				char c = line.charAt(i);
+				if (c == '"') {
+					quoted = !quoted;
+				} else if (c == ':' && !quoted) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private static String unescape(String text) {
+			if (text.indexOf('\\') < 0) {
+				return text;
+			}
+			StringBuilder s = new StringBuilder(text.length());
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c == '\\' && i + 1 < text.length()) {
+					c = text.charAt(++i);
+					s.append(c == 'n' || c == 'N' ? '\n' : c);
+				} else {
+					s.append(c);
+				}
+			}
+			return s.toString();
+		}
+
+		/**
+		 * Reads the decimal digits s[from, to) as an integer, or -1 if there are none.
+		 */
+		private static int digits(String s, int from, int to) {
+			if (to > s.length()) {
+				return -1;
+			}
+			int value = 0;
+			for (int i = from; i < to; i++) {
+				char c = s.charAt(i);
+				if (c < '0' || c > '9') {
+					return -1;
+				}
+				value = value * 10 + (c - '0');
+			}
+			return value;
+		}
+	}
+
+}	// end of ICalendar class
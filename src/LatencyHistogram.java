@@ -0,0 +1,204 @@
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of operation latencies in nanoseconds, in the manner of an HDR histogram:
+ * each power of two is split into 32 buckets, so a recorded latency is kept to within
+ * about 3% whatever its size, in a fixed amount of memory. Latencies may be recorded from
+ * several threads at once without locking while another thread reads percentiles.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;		// buckets per power of two
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLongArray totals = new AtomicLongArray(2);	// count, sum of nanoseconds
+	private volatile long max;
+
+	/**
+	 * Records the latency of one operation.
+	 * @param nanos		the latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(bucket(nanos));
+		totals.incrementAndGet(0);
+		totals.addAndGet(1, nanos);
+		if (nanos > max) {
+			synchronized (this) {
+				if (nanos > max) {
+					max = nanos;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records the latency of an operation that started at a System.nanoTime() value.
+	 * @param startNanos	the value of System.nanoTime() when the operation started
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Forgets every latency recorded so far.
+	 */
+	public synchronized void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		totals.set(0, 0);
+		totals.set(1, 0);
+		max = 0;
+	}
+
+	/**
+	 * Gets the number of latencies recorded.
+	 * @return	the number of latencies recorded
+	 */
+	public long getCount() {
+		return totals.get(0);
+	}
+
+	/**
+	 * Gets the latency below which a fraction of the recorded latencies fall.
+	 * @param fraction	the fraction, from 0 to 1 (0.99 for the 99th percentile)
+	 * @return			the latency in nanoseconds, or 0 if none was recorded
+	 */
+	public long getValueAtPercentile(double fraction) {
+		long[] snapshot = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(highestValue(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Gets a summary of the recorded latencies in microseconds.
+	 * @return	the count, mean, percentiles and maximum of the latencies
+	 */
+	public Summary getSummary() {
+		long count = getCount();
+		return new Summary(count, count == 0 ? 0 : totals.get(1) / 1000.0 / count,
+				getValueAtPercentile(0.50) / 1000.0, getValueAtPercentile(0.90) / 1000.0,
+				getValueAtPercentile(0.99) / 1000.0, getValueAtPercentile(0.999) / 1000.0, max / 1000.0);
+	}
+
+	/**
+	 * Gets the bucket of a latency: the latency itself below 32, otherwise its power of
+	 * two and its top 5 bits after the leading one.
+	 */
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(nanos);		// at least SUB_BITS
+		int shift = magnitude - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (nanos >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * Gets the highest latency that falls in a bucket.
+	 */
+	private static long highestValue(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * The count, mean, percentiles and maximum of the latencies of a histogram, in
+	 * microseconds. JMX shows it as a composite value.
+	 */
+	public static class Summary {
+		private final long count;
+		private final double mean;
+		private final double p50;
+		private final double p90;
+		private final double p99;
+		private final double p999;
+		private final double max;
+
+		/**
+		 * Constructs a summary of latencies.
+		 * @param count		the number of latencies
+		 * @param mean		the mean latency in microseconds
+		 * @param p50		the median latency in microseconds
+		 * @param p90		the 90th percentile in microseconds
+		 * @param p99		the 99th percentile in microseconds
+		 * @param p999		the 99.9th percentile in microseconds
+		 * @param max		the highest latency in microseconds
+		 */
+		public Summary(long count, double mean, double p50, double p90, double p99, double p999, double max) {
+			this.count = count;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p90 = p90;
+			this.p99 = p99;
+			this.p999 = p999;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMeanMicros() {
+			return mean;
+		}
+
+		public double getP50Micros() {
+			return p50;
+		}
+
+		public double getP90Micros() {
+			return p90;
+		}
+
+		public double getP99Micros() {
+			return p99;
+		}
+
+		public double getP999Micros() {
+			return p999;
+		}
+
+		public double getMaxMicros() {
+			return max;
+		}
+
+		/**
+		 * Prints a string representation of the summary.
+		 * @return	the count and latencies of the summary
+		 */
+		public String toString() {
+			return String.format(Locale.ROOT, "%d calls, mean %.1f us, p50 %.1f us, p90 %.1f us, p99 %.1f us, "
+					+ "p99.9 %.1f us, max %.1f us", count, mean, p50, p90, p99, p999, max);
+		}
+	}
+
+}	// end of LatencyHistogram class
@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The outcome of loading events into the calendar model: how many events were loaded
+ * and which lines were rejected, with their file, line number and the reason. A report
+ * may be filled in by a loading thread and the Event Dispatch Thread at the same time.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class LoadReport {
+
+	private int loaded;
+	private int conflicts;		// rejected lines that conflict with another event
+	private List<Rejection> rejected;
+	private List<String> sources;	// files in the order lines were first rejected from them
+
+	/**
+	 * Constructs an empty load report.
+	 */
+	public LoadReport() {
+		this.loaded = 0;
+		this.rejected = new ArrayList<Rejection>();
+		this.sources = new ArrayList<String>();
+	}
+
+	/**
+	 * Records an event that was loaded onto the calendar.
+	 */
+	public synchronized void accept() {
+		loaded++;
+	}
+
+	/**
+	 * Records several events that were loaded onto the calendar at once.
+	 * @param count		the number of events loaded
+	 */
+	public synchronized void accept(int count) {
+		loaded += count;
+	}
+
+	/**
+	 * Records a line that was not loaded onto the calendar.
+	 * @param source		the name of the file the line was read from, or null if the
+	 * 						line is not from a file
+	 * @param lineNumber	the line number (starting at 1) of the rejected line
+	 * @param line			the rejected line
+	 * @param reason		why the line was rejected
+	 */
+	public synchronized void reject(String source, int lineNumber, String line, String reason) {
+		rejected.add(new Rejection(source, sourceIndex(source), lineNumber, line, reason, false));
+	}
+
+	/**
+	 * Records a line that was not loaded onto the calendar because its event conflicts
+	 * with another event.
+	 * @param source		the name of the file the line was read from, or null if the
+	 * 						line is not from a file
+	 * @param lineNumber	the line number (starting at 1) of the rejected line
+	 * @param line			the rejected line
+	 * @param reason		which event the line conflicts with
+	 */
+	public synchronized void conflict(String source, int lineNumber, String line, String reason) {
+		rejected.add(new Rejection(source, sourceIndex(source), lineNumber, line, reason, true));
+		conflicts++;
+	}
+
+	/**
+	 * Gets the position of a file in the order lines were first rejected from it.
+	 */
+	private int sourceIndex(String source) {
+		int sourceIndex = sources.indexOf(source);
+		if (sourceIndex < 0) {
+			sourceIndex = sources.size();
+			sources.add(source);
+		}
+		return sourceIndex;
+	}
+
+	/**
+	 * Gets the number of events that were loaded.
+	 * @return	the number of events loaded
+	 */
+	public synchronized int getLoadedCount() {
+		return loaded;
+	}
+
+	/**
+	 * Gets the number of lines rejected because they conflict with another event.
+	 * @return	the number of conflicting lines
+	 */
+	public synchronized int getConflictCount() {
+		return conflicts;
+	}
+
+	/**
+	 * Gets the number of lines that were rejected for any reason.
+	 * @return	the number of rejected lines
+	 */
+	public synchronized int getRejectedCount() {
+		return rejected.size();
+	}
+
+	/**
+	 * Gets the rejected lines ordered by file, then line number.
+	 * @return	the rejected lines
+	 */
+	public synchronized List<Rejection> getRejected() {
+		List<Rejection> sorted = new ArrayList<Rejection>(rejected);
+		Collections.sort(sorted, new Comparator<Rejection>() {
+			public int compare(Rejection a, Rejection b) {
+				// Keep the files in the order they were read
+				if (a.sourceIndex != b.sourceIndex) {
+					return Integer.compare(a.sourceIndex, b.sourceIndex);
+				}
+				return Integer.compare(a.lineNumber, b.lineNumber);
+			}
+		});
+		return sorted;
+	}
+
+	/**
+	 * Gets a summary of the load with one line per rejected line.
+	 * @return	a summary of the load
+	 */
+	public synchronized String toString() {
+		StringBuilder s = new StringBuilder();
+		s.append(loaded).append(" events loaded, ").append(rejected.size()).append(" lines rejected");
+		for (Rejection r : getRejected()) {
+			s.append("\n\t").append(r);
+		}
+		return s.toString();
+	}
+
+	/**
+	 * A line that was not loaded onto the calendar.
+	 */
+	public static class Rejection {
+		private String source;
+		private int sourceIndex;
+		private int lineNumber;
+		private String line;
+		private String reason;
+		private boolean conflict;
+
+		private Rejection(String source, int sourceIndex, int lineNumber, String line, String reason, boolean conflict) {
+			this.source = source;
+			this.sourceIndex = sourceIndex;
+			this.lineNumber = lineNumber;
+			this.line = line;
+			this.reason = reason;
+			this.conflict = conflict;
+		}
+
+		/**
+		 * Gets the name of the file the rejected line was read from.
+		 * @return	the name of the file, or null if the line was not from a file
+		 */
+		public String getSource() {
+			return source;
+		}
+
+		/**
+		 * Gets the line number (starting at 1) of the rejected line.
+		 * @return	the line number
+		 */
+		public int getLineNumber() {
+			return lineNumber;
+		}
+
+		/**
+		 * Gets the rejected line.
+		 * @return	the rejected line
+		 */
+		public String getLine() {
+			return line;
+		}
+
+		/**
+		 * Gets why the line was rejected.
+		 * @return	the reason the line was rejected
+		 */
+		public String getReason() {
+			return reason;
+		}
+
+		/**
+		 * Checks if the line was rejected because its event conflicts with another event.
+		 * @return	true if the line conflicts with another event, false if it could not be parsed
+		 */
+		public boolean isConflict() {
+			return conflict;
+		}
+
+		/**
+		 * Prints a string representation of the rejected line.
+		 * @return	a string representation of the rejected line
+		 */
+		public String toString() {
+			String where = "line " + lineNumber;
+			return (source == null ? where : source + " " + where) + ": " + reason + ": " + line;
+		}
+	}
+
+}	// end of LoadReport class
@@ -0,0 +1,107 @@
+/**
+ * A summary of how busy each day of a month is: the number of events and the minutes
+ * they take up. The calendar model keeps it up to date as events are added, so a View
+ * can shade every day of the month without looking up the events of each day.
+ * A summary may be updated by several threads while a View reads it.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class MonthDensity {
+
+	private final int firstDay;		// epoch day of the first of the month
+	private final int[] eventCounts;	// by day of month - 1
+	private final int[] busyMinutes;	// by day of month - 1
+
+	/**
+	 * Constructs an empty summary of a month.
+	 * @param firstDay		the epoch day of the first of the month
+	 * @param daysInMonth	the number of days in the month
+	 */
+	public MonthDensity(int firstDay, int daysInMonth) {
+		this.firstDay = firstDay;
+		this.eventCounts = new int[daysInMonth];
+		this.busyMinutes = new int[daysInMonth];
+	}
+
+	/**
+	 * Gets the epoch day of the first of the month.
+	 * @return	the epoch day of the first of the month
+	 */
+	public int getFirstDay() {
+		return firstDay;
+	}
+
+	/**
+	 * Gets the epoch day of the last day of the month.
+	 * @return	the epoch day of the last day of the month
+	 */
+	public int getLastDay() {
+		return firstDay + eventCounts.length - 1;
+	}
+
+	/**
+	 * Checks if an epoch day is in the month.
+	 * @param epochDay	the epoch day to check
+	 * @return			true if the day is in the month
+	 */
+	public boolean contains(int epochDay) {
+		return epochDay >= firstDay && epochDay - firstDay < eventCounts.length;
+	}
+
+	/**
+	 * Gets the number of events on a day of the month.
+	 * @param day	the day of the month (starting at 1)
+	 * @return		the number of events on that day
+	 */
+	public synchronized int getEventCount(int day) {
+		return eventCounts[day - 1];
+	}
+
+	/**
+	 * Gets the minutes taken up by events on a day of the month.
+	 * @param day	the day of the month (starting at 1)
+	 * @return		the total length of the events on that day in minutes
+	 */
+	public synchronized int getBusyMinutes(int day) {
+		return busyMinutes[day - 1];
+	}
+
+	/**
+	 * Sets the count of a day of the month from its events.
+	 * @param epochDay	the epoch day
+	 * @param events	the events of that day, or null if there are none
+	 */
+	public synchronized void set(int epochDay, DaySchedule events) {
+		int i = epochDay - firstDay;
+		eventCounts[i] = 0;
+		busyMinutes[i] = 0;
+		if (events != null) {
+			for (Event e : events) {
+				eventCounts[i]++;
+				busyMinutes[i] += e.getEndMinute() - e.getStartMinute();
+			}
+		}
+	}
+
+	/**
+	 * Counts an event that was added to the month.
+	 * @param e		the added event
+	 */
+	public synchronized void add(Event e) {
+		int i = e.getEpochDay() - firstDay;
+		eventCounts[i]++;
+		busyMinutes[i] += e.getEndMinute() - e.getStartMinute();
+	}
+
+	/**
+	 * Stops counting an event that was removed from the month.
+	 * @param e		the removed event
+	 */
+	public synchronized void remove(Event e) {
+		int i = e.getEpochDay() - firstDay;
+		eventCounts[i]--;
+		busyMinutes[i] -= e.getEndMinute() - e.getStartMinute();
+	}
+
+}	// end of MonthDensity class
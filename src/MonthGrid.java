@@ -0,0 +1,283 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.swing.BorderFactory;
+import javax.swing.JComponent;
+import javax.swing.border.Border;
+
+/**
+ * The grid of the days of a month, six weeks of seven days, painted by one component
+ * rather than built out of a button per day. Each day is shaded by how busy it is and
+ * marked with a dot for each of its first few events. Clicking a day selects it and
+ * notifies the ActionListeners.
+ *
+ * The cells are laid out once for each size of the component, and a change to one day
+ * repaints only that day's cell, so a year of grids is as cheap to show as one.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class MonthGrid extends JComponent {
+
+	private static final long serialVersionUID = 1L;
+	private static final int COLUMNS = 7;
+	private static final int ROWS = 6;				// 6 weeks of 7 days fit any month
+	private static final int GAP = 3;				// pixels between cells
+	private static final Border DAY_BORDER = BorderFactory.createRaisedBevelBorder();
+	private static final Border SELECTED_BORDER = BorderFactory.createBevelBorder(1);
+	private static final Color[] DAY_SHADES = {		// backgrounds of days, from free to busy
+			Color.WHITE, new Color(226, 238, 252), new Color(200, 222, 248),
+			new Color(172, 204, 242), new Color(144, 186, 236)};
+	private static final int SHADE_MINUTES = 120;	// busy minutes per shade
+	private static final int MAX_DOTS = 3;			// events marked on a day
+	private static final String[] WEEKDAYS = {"S", "M", "T", "W", "T", "F", "S"};
+	private static final String[] DAY_LABELS = new String[31];	// text of each day
+	static {
+		for (int i = 0; i < DAY_LABELS.length; i++) {
+			DAY_LABELS[i] = Integer.toString(i + 1);
+		}
+	}
+
+	private final Dimension cellSize;				// preferred size of a cell
+	private final boolean weekdays;					// a row of weekday initials heads the grid
+	private final CopyOnWriteArrayList<ActionListener> listeners = new CopyOnWriteArrayList<ActionListener>();
+	private MonthDensity month;
+	private int firstCell;							// cell of the first day of the month
+	private int daysInMonth;
+	private int selectedDay;						// day of the month selected, or 0
+	private final Rectangle[] cells = new Rectangle[ROWS * COLUMNS];
+	private int laidOutWidth = -1;					// size the cells were laid out for
+	private int laidOutHeight = -1;
+
+	/**
+	 * Constructs a month grid with no month to show.
+	 * @param cellSize		the preferred size of the cell of a day
+	 * @param font			the font of the day numbers
+	 * @param weekdays		true to head the columns with the initials of the weekdays
+	 */
+	public MonthGrid(Dimension cellSize, Font font, boolean weekdays) {
+		this.cellSize = new Dimension(cellSize);
+		this.weekdays = weekdays;
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = new Rectangle();
+		}
+		setFont(font);
+		setOpaque(true);
+		addMouseListener(new MouseAdapter() {
+			public void mousePressed(MouseEvent e) {
+				int day = dayAt(e.getX(), e.getY());
+				if (day > 0) {
+					setSelectedDay(day);
+					ActionEvent click = new ActionEvent(MonthGrid.this, ActionEvent.ACTION_PERFORMED, "select");
+					for (ActionListener l : listeners) {
+						l.actionPerformed(click);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Adds a listener that is notified when a day is clicked.
+	 * @param l		the listener
+	 */
+	public void addActionListener(ActionListener l) {
+		listeners.add(l);
+	}
+
+	/**
+	 * Shows a month in the grid. The summary is read each time the grid is painted, so
+	 * repainting the grid shows events counted since.
+	 * @param month		the summary of the month to show
+	 */
+	public void setMonth(MonthDensity month) {
+		this.month = month;
+		firstCell = Math.floorMod(month.getFirstDay() + 4, COLUMNS);	// 01/01/1970 was a Thursday
+		daysInMonth = month.getLastDay() - month.getFirstDay() + 1;
+		if (selectedDay > daysInMonth) {
+			selectedDay = 0;
+		}
+		repaint();
+	}
+
+	/**
+	 * Gets the month shown in the grid.
+	 * @return	the summary of the month, or null if no month is shown
+	 */
+	public MonthDensity getMonth() {
+		return month;
+	}
+
+	/**
+	 * Selects and highlights a day. Only the cells of the old and new day are repainted.
+	 * @param day	the day of the month, or 0 to select none
+	 */
+	public void setSelectedDay(int day) {
+		if (day < 1 || day > daysInMonth) {
+			day = 0;
+		}
+		if (day != selectedDay) {
+			repaintDay(selectedDay);
+			selectedDay = day;
+			repaintDay(selectedDay);
+		}
+	}
+
+	/**
+	 * Gets the selected day.
+	 * @return	the day of the month, or 0 if none is selected
+	 */
+	public int getSelectedDay() {
+		return selectedDay;
+	}
+
+	/**
+	 * Repaints the days of a range of epoch days that fall in the month shown, after
+	 * their events changed.
+	 * @param firstDay	the first epoch day of the range
+	 * @param lastDay	the last epoch day of the range
+	 */
+	public void repaintDays(int firstDay, int lastDay) {
+		if (month == null) {
+			return;
+		}
+		int first = Math.max(firstDay, month.getFirstDay()) - month.getFirstDay() + 1;
+		int last = Math.min(lastDay, month.getLastDay()) - month.getFirstDay() + 1;
+		for (int day = first; day <= last; day++) {
+			repaintDay(day);
+		}
+	}
+
+	/**
+	 * Gets the day at a point of the grid, for telling which day was clicked.
+	 * @param x		the x coordinate in the grid
+	 * @param y		the y coordinate in the grid
+	 * @return		the day of the month, or 0 if the point is not on a day of the month
+	 */
+	public int dayAt(int x, int y) {
+		layoutCells();
+		Rectangle first = cells[0];
+		int column = (x - first.x) / (first.width + GAP);
+		int row = (y - first.y) / (first.height + GAP);
+		if (x < first.x || y < first.y || column >= COLUMNS || row >= ROWS) {
+			return 0;
+		}
+		int cell = row * COLUMNS + column;
+		if (!cells[cell].contains(x, y)) {
+			return 0;		// in the gap between cells
+		}
+		int day = cell - firstCell + 1;
+		return day >= 1 && day <= daysInMonth ? day : 0;
+	}
+
+	public Dimension getPreferredSize() {
+		if (isPreferredSizeSet()) {
+			return super.getPreferredSize();
+		}
+		Insets insets = getInsets();
+		int header = weekdays ? getFontMetrics(getFont()).getHeight() + GAP : 0;
+		return new Dimension(COLUMNS * cellSize.width + (COLUMNS - 1) * GAP + insets.left + insets.right,
+				header + ROWS * cellSize.height + (ROWS - 1) * GAP + insets.top + insets.bottom);
+	}
+
+	/**
+	 * Paints the cells that need it: the whole grid when it is first shown, otherwise
+	 * only the cells of the days that changed.
+	 * @param g		the graphics to paint with
+	 */
+	protected void paintComponent(Graphics g) {
+		layoutCells();
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		}
+		g.setColor(getBackground());
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+		g.setFont(getFont());
+		FontMetrics metrics = g.getFontMetrics();
+		if (weekdays && clip.y < cells[0].y) {
+			g.setColor(getForeground());
+			for (int column = 0; column < COLUMNS; column++) {
+				Rectangle cell = cells[column];
+				g.drawString(WEEKDAYS[column], cell.x + (cell.width - metrics.stringWidth(WEEKDAYS[column])) / 2,
+						cell.y - GAP - metrics.getDescent());
+			}
+		}
+		if (month == null) {
+			return;
+		}
+		for (int day = 1; day <= daysInMonth; day++) {
+			Rectangle cell = cells[firstCell + day - 1];
+			if (cell.intersects(clip)) {
+				paintDay(g, metrics, day, cell);
+			}
+		}
+	}
+
+	/**
+	 * Paints the cell of a day: its shade, border, number and event dots.
+	 */
+	private void paintDay(Graphics g, FontMetrics metrics, int day, Rectangle cell) {
+		int events = month.getEventCount(day);
+		int shade = 0;
+		if (events > 0) {
+			shade = Math.min(DAY_SHADES.length - 1, 1 + month.getBusyMinutes(day) / SHADE_MINUTES);
+		}
+		g.setColor(DAY_SHADES[shade]);
+		g.fillRect(cell.x, cell.y, cell.width, cell.height);
+		Border border = day == selectedDay ? SELECTED_BORDER : DAY_BORDER;
+		border.paintBorder(this, g, cell.x, cell.y, cell.width, cell.height);
+		g.setColor(getForeground());
+		g.drawString(DAY_LABELS[day - 1], cell.x + 3, cell.y + 2 + metrics.getAscent());
+		// A dot for each event, as far as they fit below the number
+		int dot = Math.max(3, cell.height / 8);
+		int dotY = cell.y + cell.height - dot - 3;
+		if (dotY > cell.y + 2 + metrics.getHeight()) {
+			int dots = Math.min(events, MAX_DOTS);
+			for (int i = 0; i < dots; i++) {
+				g.fillOval(cell.x + 4 + i * (dot + 2), dotY, dot, dot);
+			}
+		}
+	}
+
+	/**
+	 * Repaints the cell of a day of the month.
+	 */
+	private void repaintDay(int day) {
+		if (day >= 1 && day <= daysInMonth) {
+			layoutCells();
+			repaint(cells[firstCell + day - 1]);
+		}
+	}
+
+	/**
+	 * Lays out the cells to fill the grid, if its size changed since they were last laid out.
+	 */
+	private void layoutCells() {
+		if (getWidth() == laidOutWidth && getHeight() == laidOutHeight) {
+			return;
+		}
+		laidOutWidth = getWidth();
+		laidOutHeight = getHeight();
+		Insets insets = getInsets();
+		int headerHeight = weekdays ? getFontMetrics(getFont()).getHeight() + GAP : 0;
+		int width = Math.max(COLUMNS, (laidOutWidth - insets.left - insets.right - (COLUMNS - 1) * GAP) / COLUMNS);
+		int height = Math.max(ROWS,
+				(laidOutHeight - headerHeight - insets.top - insets.bottom - (ROWS - 1) * GAP) / ROWS);
+		for (int i = 0; i < cells.length; i++) {
+			cells[i].setBounds(insets.left + i % COLUMNS * (width + GAP),
+					insets.top + headerHeight + i / COLUMNS * (height + GAP), width, height);
+		}
+	}
+
+}	// end of MonthGrid class
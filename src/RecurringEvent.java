@@ -0,0 +1,475 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An event that repeats by a rule: every few days, weeks (on chosen days of the week) or
+ * months, until a date or for a number of occurrences, except on chosen dates. The rule is
+ * stored once; occurrences are only worked out for the dates being looked at.
+ *
+ * In recurring.txt a recurring event is one line: the rule, " | ", and its first
+ * occurrence in the events.txt format, e.g.
+ * 		WEEKLY;INTERVAL=1;BYDAY=MO,WE;UNTIL=06/30/2018;EXDATE=01/01/2018 | 12/13/2017 15:15 - 17:30 Seminar
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class RecurringEvent {
+
+	/**
+	 * How often a recurring event repeats.
+	 */
+	public enum Frequency {
+		DAILY, WEEKLY, MONTHLY
+	}
+
+	/** Last day of a recurring event that never ends. */
+	public static final int FOREVER = Integer.MAX_VALUE;
+
+	private static final int DAYS_PER_400_YEARS = 146097;	// the Gregorian calendar repeats after 400 years
+	private static final int MONTHS_PER_400_YEARS = 4800;
+	private static final String[] WEEKDAYS = {"SU", "MO", "TU", "WE", "TH", "FR", "SA"};
+	private static final String SEPARATOR = " | ";
+
+	private final Event first;			// title, times and date of the first occurrence
+	private final Frequency frequency;
+	private final int interval;			// repeats every interval days, weeks or months
+	private final int weekdays;			// days of the week of a weekly event, bit 0 for Sunday
+	private final int until;			// last epoch day an occurrence may fall on
+	private final int count;			// number of occurrences, 0 if not limited
+	private final int[] exceptions;		// sorted epoch days without an occurrence
+
+	/**
+	 * Constructs a recurring event.
+	 * @param first			the first occurrence, which gives the title and times
+	 * @param frequency		how often the event repeats
+	 * @param interval		repeats every interval days, weeks or months (at least 1)
+	 * @param weekdays		days of the week of a weekly event, bit 0 for Sunday; 0 for the
+	 * 						day of the week of the first occurrence
+	 * @param until			the last epoch day an occurrence may fall on, or FOREVER
+	 * @param count			the number of occurrences, or 0 if not limited
+	 * @param exceptions	the epoch days without an occurrence
+	 * @throws IllegalArgumentException	if the rule is not valid
+	 */
+	public RecurringEvent(Event first, Frequency frequency, int interval, int weekdays, int until, int count,
+			int[] exceptions) {
+		if (interval < 1 || count < 0 || until < first.getEpochDay() || weekdays < 0 || weekdays > 0x7F) {
+			throw new IllegalArgumentException("Invalid recurrence rule");
+		}
+		this.first = first;
+		this.frequency = frequency;
+		this.interval = interval;
+		this.weekdays = frequency != Frequency.WEEKLY ? 0
+				: weekdays != 0 ? weekdays : 1 << dayOfWeek(first.getEpochDay());
+		this.until = until;
+		this.count = count;
+		this.exceptions = exceptions.clone();
+		Arrays.sort(this.exceptions);
+	}
+
+	/**
+	 * Gets the first occurrence, which gives the title and times of every occurrence.
+	 * @return	the first occurrence
+	 */
+	public Event getFirst() {
+		return first;
+	}
+
+	/**
+	 * Gets how often the event repeats.
+	 * @return	the frequency
+	 */
+	public Frequency getFrequency() {
+		return frequency;
+	}
+
+	/**
+	 * Gets the first epoch day of the event.
+	 * @return	the epoch day of the first occurrence
+	 */
+	public int getStartDay() {
+		return first.getEpochDay();
+	}
+
+	/**
+	 * Gets how many days, weeks or months apart the occurrences are.
+	 * @return	the interval
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Gets the days of the week of a weekly event.
+	 * @return	the days of the week, bit 0 for Sunday; 0 if the event is not weekly
+	 */
+	public int getWeekdays() {
+		return weekdays;
+	}
+
+	/**
+	 * Gets the last epoch day an occurrence may fall on.
+	 * @return	the last epoch day, or FOREVER
+	 */
+	public int getUntil() {
+		return until;
+	}
+
+	/**
+	 * Gets the number of occurrences.
+	 * @return	the number of occurrences, or 0 if not limited
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the days without an occurrence.
+	 * @return	the sorted epoch days of the exceptions
+	 */
+	public int[] getExceptions() {
+		return exceptions.clone();
+	}
+
+	/**
+	 * Gets a copy of this recurring event without the occurrence on a day.
+	 * @param epochDay	the epoch day to skip
+	 * @return			the recurring event with the exception
+	 */
+	public RecurringEvent except(int epochDay) {
+		int[] more = Arrays.copyOf(exceptions, exceptions.length + 1);
+		more[exceptions.length] = epochDay;
+		return new RecurringEvent(first, frequency, interval, weekdays, until, count, more);
+	}
+
+	/**
+	 * Checks if the event occurs on a day, without working out the other occurrences.
+	 * @param epochDay	the epoch day to check
+	 * @return			true if an occurrence falls on that day
+	 */
+	public boolean occursOn(int epochDay) {
+		if (epochDay < first.getEpochDay() || epochDay > until) {
+			return false;
+		}
+		int index = occurrenceIndex(epochDay);
+		if (index < 0 || (count > 0 && index >= count)) {
+			return false;
+		}
+		return Arrays.binarySearch(exceptions, epochDay) < 0;
+	}
+
+	/**
+	 * Checks if an occurrence on a day overlaps a time range. Touching times count as
+	 * overlapping, as they do for single events.
+	 * @param epochDay	the epoch day to check
+	 * @param start		the start of the range in minutes since midnight
+	 * @param end		the end of the range in minutes since midnight
+	 * @return			true if an occurrence on that day overlaps the range
+	 */
+	public boolean overlaps(int epochDay, int start, int end) {
+		return first.getStartMinute() <= end && start <= first.getEndMinute() && occursOn(epochDay);
+	}
+
+	/**
+	 * Gets the first occurrence on or after a day, skipping the days the rule cannot fall
+	 * on rather than asking each day.
+	 * @param epochDay	the epoch day to start from
+	 * @return			the epoch day of the occurrence, or FOREVER if there is none
+	 */
+	public int nextOccurrence(int epochDay) {
+		int day = Math.max(epochDay, first.getEpochDay());
+		while (day <= until && day < FOREVER) {
+			int index = occurrenceIndex(day);
+			if (index < 0) {
+				int next = nextCandidate(day);
+				if (next <= day) {
+					return FOREVER;		// past the last day an int can hold
+				}
+				day = next;
+			} else if (count > 0 && index >= count) {
+				return FOREVER;
+			} else if (Arrays.binarySearch(exceptions, day) < 0) {
+				return day;
+			} else {
+				day++;
+			}
+		}
+		return FOREVER;
+	}
+
+	/**
+	 * Tells whether the count of occurrences ends the series no later than its last day,
+	 * so the last day can be left out without changing the occurrences. Excepted
+	 * occurrences are counted, as they are by occursOn.
+	 * @return	true if the count is limited and runs out on or before the last day
+	 */
+	public boolean endsByCount() {
+		if (count == 0) {
+			return false;
+		}
+		if (until == FOREVER) {
+			return true;
+		}
+		// The last day the rule falls on up to until; the first day always has index 0
+		int day = until;
+		while (occurrenceIndex(day) < 0) {
+			day--;
+		}
+		return occurrenceIndex(day) >= count - 1;
+	}
+
+	/**
+	 * Gets the number of days after which the days of the rule repeat, leaving aside its
+	 * end, count and exceptions. Months repeat their lengths and weekdays every 400 years.
+	 * @return	the period in days
+	 */
+	public long getPeriodDays() {
+		switch (frequency) {
+		case DAILY:
+			return interval;
+		case WEEKLY:
+			return 7L * interval;
+		default:
+			return (long) DAYS_PER_400_YEARS * interval / gcd(interval, MONTHS_PER_400_YEARS);
+		}
+	}
+
+	/**
+	 * Gets the greatest common divisor of two positive numbers.
+	 * @param a		a positive number
+	 * @param b		a positive number
+	 * @return		the greatest common divisor
+	 */
+	public static long gcd(long a, long b) {
+		while (b != 0) {
+			long r = a % b;
+			a = b;
+			b = r;
+		}
+		return a;
+	}
+
+	/**
+	 * Adds the occurrences within a range of days to a list, in chronological order.
+	 * @param fromDay	the first epoch day of the range
+	 * @param toDay		the last epoch day of the range
+	 * @param out		the list to add the occurrences to
+	 */
+	public void occurrences(int fromDay, int toDay, List<Event> out) {
+		int from = Math.max(fromDay, first.getEpochDay());
+		int to = Math.min(toDay, until);
+		for (int day = from; day <= to && day >= from; day++) {
+			if (occursOn(day)) {
+				out.add(day == first.getEpochDay() ? first
+						: new Event(first.getTitle(), day, first.getStartMinute(), first.getEndMinute()));
+			}
+		}
+	}
+
+	/**
+	 * Gets the position of the occurrence on a day among all occurrences, counting the
+	 * excepted ones, or -1 if the rule has no occurrence that day.
+	 */
+	private int occurrenceIndex(int epochDay) {
+		int start = first.getEpochDay();
+		switch (frequency) {
+		case DAILY:
+			return (epochDay - start) % interval == 0 ? (epochDay - start) / interval : -1;
+		case WEEKLY:
+			int dayOfWeek = dayOfWeek(epochDay);
+			int weeks = (epochDay - dayOfWeek - (start - dayOfWeek(start))) / 7;
+			if (weeks % interval != 0 || (weekdays & (1 << dayOfWeek)) == 0) {
+				return -1;
+			}
+			// Occurrences in the whole weeks before, then the ones earlier in this week
+			return weeks / interval * Integer.bitCount(weekdays)
+					+ Integer.bitCount(weekdays & ((1 << dayOfWeek) - 1))
+					- Integer.bitCount(weekdays & ((1 << dayOfWeek(start)) - 1));
+		default:
+			int date = Event.toYearMonthDay(epochDay);
+			int startDate = Event.toYearMonthDay(start);
+			if (date % 100 != startDate % 100) {
+				return -1;
+			}
+			int months = monthIndex(date) - monthIndex(startDate);
+			if (months % interval != 0) {
+				return -1;
+			}
+			if (startDate % 100 <= 28 || count == 0) {
+				return months / interval;
+			}
+			// Months too short for the day have no occurrence and are not counted
+			int index = 0;
+			for (int m = interval; m <= months; m += interval) {
+				int month = monthIndex(startDate) + m;
+				if (Event.lengthOfMonth(month / 12, month % 12 + 1) >= startDate % 100) {
+					index++;
+				}
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Gets a day after a day the rule has no occurrence on, with no occurrence in between:
+	 * the next day of the interval for a daily event, the Sunday of the next week of the
+	 * interval for a weekly event, and the day of the month in the next month for a
+	 * monthly event.
+	 */
+	private int nextCandidate(int epochDay) {
+		int start = first.getEpochDay();
+		switch (frequency) {
+		case DAILY:
+			return start + ((epochDay - start) / interval + 1) * interval;
+		case WEEKLY:
+			int firstSunday = start - dayOfWeek(start);
+			int weeks = (epochDay - dayOfWeek(epochDay) - firstSunday) / 7;
+			if (weeks % interval != 0) {
+				return firstSunday + (weeks / interval + 1) * interval * 7;
+			}
+			return epochDay + 1;
+		default:
+			int date = Event.toYearMonthDay(epochDay);
+			int dayOfMonth = Event.toYearMonthDay(start) % 100;
+			if (date % 100 < dayOfMonth && dayOfMonth <= Event.lengthOfMonth(date / 10000, date / 100 % 100)) {
+				return epochDay + dayOfMonth - date % 100;
+			}
+			// The first of the next month
+			return epochDay - date % 100 + Event.lengthOfMonth(date / 10000, date / 100 % 100) + 1;
+		}
+	}
+
+	private static int monthIndex(int yearMonthDay) {
+		return yearMonthDay / 10000 * 12 + yearMonthDay / 100 % 100 - 1;
+	}
+
+	private static int dayOfWeek(int epochDay) {
+		// 01/01/1970 was a Thursday
+		return Math.floorMod(epochDay + 4, 7);
+	}
+
+	/**
+	 * Parses a line of recurring.txt.
+	 * @param line	the line to parse
+	 * @return		the recurring event of the line
+	 * @throws IllegalArgumentException	if the line is not a valid recurring event
+	 */
+	public static RecurringEvent parse(String line) {
+		int separator = line.indexOf(SEPARATOR);
+		if (separator < 0) {
+			throw new IllegalArgumentException("Invalid recurring event (expected <rule> | <event>)");
+		}
+		Event first = Event.parseEvent(line.substring(separator + SEPARATOR.length()));
+		String[] parts = line.substring(0, separator).split(";");
+		Frequency frequency;
+		try {
+			frequency = Frequency.valueOf(parts[0]);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Unknown frequency " + parts[0]);
+		}
+		int interval = 1;
+		int weekdays = 0;
+		int until = FOREVER;
+		int count = 0;
+		int[] exceptions = new int[0];
+		for (int i = 1; i < parts.length; i++) {
+			int equals = parts[i].indexOf('=');
+			String key = equals < 0 ? parts[i] : parts[i].substring(0, equals);
+			String value = equals < 0 ? "" : parts[i].substring(equals + 1);
+			try {
+				switch (key) {
+				case "INTERVAL":
+					interval = Integer.parseInt(value);
+					break;
+				case "BYDAY":
+					weekdays = parseWeekdays(value);
+					break;
+				case "UNTIL":
+					until = Event.parseEpochDay(value);
+					break;
+				case "COUNT":
+					count = Integer.parseInt(value);
+					break;
+				case "EXDATE":
+					String[] dates = value.split(",");
+					exceptions = new int[dates.length];
+					for (int d = 0; d < dates.length; d++) {
+						exceptions[d] = Event.parseEpochDay(dates[d]);
+					}
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown recurrence rule part " + key);
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid number in " + parts[i]);
+			}
+		}
+		return new RecurringEvent(first, frequency, interval, weekdays, until, count, exceptions);
+	}
+
+	/**
+	 * Parses days of the week written as two-letter codes separated by commas (SU,MO,...).
+	 * @param days	the codes of the days
+	 * @return		the days of the week, bit 0 for Sunday
+	 * @throws IllegalArgumentException	if a code is not a day of the week
+	 */
+	public static int parseWeekdays(String days) {
+		int weekdays = 0;
+		for (String day : days.split(",")) {
+			int d = Arrays.asList(WEEKDAYS).indexOf(day);
+			if (d < 0) {
+				throw new IllegalArgumentException("Unknown day of the week " + day);
+			}
+			weekdays |= 1 << d;
+		}
+		return weekdays;
+	}
+
+	/**
+	 * Formats days of the week as two-letter codes separated by commas, like parseWeekdays.
+	 * @param weekdays	the days of the week, bit 0 for Sunday
+	 * @return			the codes of the days
+	 */
+	public static String formatWeekdays(int weekdays) {
+		StringBuilder days = new StringBuilder();
+		for (int d = 0; d < 7; d++) {
+			if ((weekdays & (1 << d)) != 0) {
+				days.append(days.length() == 0 ? "" : ",").append(WEEKDAYS[d]);
+			}
+		}
+		return days.toString();
+	}
+
+	/**
+	 * Prints this recurring event as a line of recurring.txt.
+	 * @return	the line of this recurring event
+	 */
+	public String printRule() {
+		StringBuilder line = new StringBuilder(frequency.name());
+		line.append(";INTERVAL=").append(interval);
+		if (frequency == Frequency.WEEKLY) {
+			line.append(";BYDAY=").append(formatWeekdays(weekdays));
+		}
+		if (until != FOREVER) {
+			line.append(";UNTIL=").append(Event.formatDate(until));
+		}
+		if (count > 0) {
+			line.append(";COUNT=").append(count);
+		}
+		if (exceptions.length > 0) {
+			line.append(";EXDATE=");
+			for (int i = 0; i < exceptions.length; i++) {
+				line.append(i == 0 ? "" : ",").append(Event.formatDate(exceptions[i]));
+			}
+		}
+		return line.append(SEPARATOR).append(first.printEvent()).toString();
+	}
+
+	/**
+	 * Prints a string representation of the recurring event.
+	 * @return	a string representation of the recurring event
+	 */
+	public String toString() {
+		return printRule();
+	}
+
+}	// end of RecurringEvent class
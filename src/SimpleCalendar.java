@@ -1,12 +1,43 @@
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
+
 /**
- * Tester for the calendar.
+ * Tester for the calendar. Without arguments the calendar GUI is started; with arguments
+ * the headless CalendarTool runs instead (e.g. "validate events.txt"). With the system
+ * property calendar.http.port (e.g. -Dcalendar.http.port=8080) the GUI also answers
+ * local HTTP requests (see CalendarServer). The model's metrics can be watched with a JMX
+ * client such as jconsole (see CalendarMetrics).
  * @author Priscilla Ng
  *
  */
 public class SimpleCalendar {
+	private static final Logger LOG = Logger.getLogger(SimpleCalendar.class.getName());
+
 	public static void main(String[] args) {
-		CalendarModel m = new CalendarModel();
-		CalendarView v = new CalendarView(m);
-		m.attach(v);
+		if (args.length > 0) {
+			System.exit(CalendarTool.run(args));
+		}
+		
+		// Swing components are only created and used on the Event Dispatch Thread
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				CalendarModel m = new CalendarModel();
+				CalendarView v = new CalendarView(m);
+				m.attach(v);
+				m.getMetrics().register();
+				String port = System.getProperty("calendar.http.port");
+				if (port != null) {
+					// Bookings are answered with 503 until the View has loaded the stored events
+					try {
+						new CalendarServer(m, Integer.parseInt(port)).start();
+					} catch (IOException | NumberFormatException e) {
+						LOG.log(Level.WARNING, "Cannot start the calendar API on port " + port, e);
+					}
+				}
+			}
+		});
 	}
 }
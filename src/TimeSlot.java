@@ -0,0 +1,89 @@
+/**
+ * A span of free time on one day of the calendar, from a start time to an end time.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class TimeSlot {
+
+	private final int epochDay;
+	private final int startMinute;
+	private final int endMinute;
+
+	/**
+	 * Constructs a time slot.
+	 * @param epochDay		the day as a day count since 01/01/1970
+	 * @param startMinute	the start in minutes since midnight
+	 * @param endMinute		the end in minutes since midnight
+	 */
+	public TimeSlot(int epochDay, int startMinute, int endMinute) {
+		this.epochDay = epochDay;
+		this.startMinute = startMinute;
+		this.endMinute = endMinute;
+	}
+
+	/**
+	 * Gets the day of the slot as a day count since 01/01/1970.
+	 * @return	the epoch day of the slot
+	 */
+	public int getEpochDay() {
+		return epochDay;
+	}
+
+	/**
+	 * Gets the date of the slot.
+	 * @return	the date in MM/dd/yyyy format
+	 */
+	public String getDate() {
+		return Event.formatDate(epochDay);
+	}
+
+	/**
+	 * Gets the start of the slot.
+	 * @return	the start in minutes since midnight
+	 */
+	public int getStartMinute() {
+		return startMinute;
+	}
+
+	/**
+	 * Gets the end of the slot.
+	 * @return	the end in minutes since midnight
+	 */
+	public int getEndMinute() {
+		return endMinute;
+	}
+
+	/**
+	 * Gets the start time of the slot.
+	 * @return	the start time in HH:mm format
+	 */
+	public String getStartTime() {
+		return Event.formatTime(startMinute);
+	}
+
+	/**
+	 * Gets the end time of the slot.
+	 * @return	the end time in HH:mm format
+	 */
+	public String getEndTime() {
+		return Event.formatTime(endMinute);
+	}
+
+	/**
+	 * Gets the length of the slot.
+	 * @return	the length in minutes
+	 */
+	public int getMinutes() {
+		return endMinute - startMinute;
+	}
+
+	/**
+	 * Prints a string representation of the time slot.
+	 * @return	the date, start time and end time of the slot
+	 */
+	public String toString() {
+		return getDate() + " " + getStartTime() + " - " + getEndTime();
+	}
+
+}	// end of TimeSlot class
@@ -0,0 +1,236 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * An inverted index over event titles for searching events by title. Every trigram of a
+ * title (case ignored, with a space added on both ends so short titles and the ends of
+ * titles have trigrams too) maps to the sorted epoch days that have an event whose title
+ * contains it. A search only looks at the days listed for every trigram of the query, and
+ * checks the titles of the events of those days.
+ *
+ * Days rather than events are listed, so a busy day with a recurring title costs one
+ * entry. The index is updated by several threads while a View searches it.
+ *
+ * @author Priscilla Ng
+ *
+ */
+public class TitleIndex {
+
+	private static final int GRAM = 3;
+	private static final int CHAR_BITS = 17;	// a char plus 1, so 0 marks the end of a shorter gram
+	private final TreeMap<Long, Postings> grams = new TreeMap<Long, Postings>();
+
+	/**
+	 * Indexes the title of an added event.
+	 * @param e		the added event
+	 */
+	public synchronized void add(Event e) {
+		String title = pad(e.getTitle());
+		for (int i = 0; i < title.length(); i++) {
+			long key = key(title, i, Math.min(i + GRAM, title.length()));
+			Postings days = grams.get(key);
+			if (days == null) {
+				days = new Postings();
+				grams.put(key, days);
+			}
+			days.add(e.getEpochDay());
+		}
+	}
+
+	/**
+	 * Stops indexing the title of a removed event. Its day stays listed for the trigrams
+	 * that another event of the day still has.
+	 * @param e			the removed event
+	 * @param remaining	the events left on that day, or null if there are none
+	 */
+	public synchronized void remove(Event e, DaySchedule remaining) {
+		List<String> others = new ArrayList<String>();
+		if (remaining != null) {
+			for (Event other : remaining) {
+				others.add(pad(other.getTitle()));
+			}
+		}
+		String title = pad(e.getTitle());
+		for (int i = 0; i < title.length(); i++) {
+			String gram = title.substring(i, Math.min(i + GRAM, title.length()));
+			boolean kept = false;
+			for (String other : others) {
+				kept |= other.contains(gram);
+			}
+			Postings days = grams.get(key(title, i, i + gram.length()));
+			if (!kept && days != null) {
+				days.remove(e.getEpochDay());
+				if (days.size == 0) {
+					grams.remove(key(title, i, i + gram.length()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the events whose title contains a query, ignoring case, in chronological order.
+	 * @param query		the text to find
+	 * @param days		the events of the calendar by epoch day
+	 * @param offset	the number of matching events to skip
+	 * @param limit		the largest number of events to return
+	 * @return			up to limit matching events after the first offset ones
+	 */
+	public synchronized List<Event> search(String query, Map<Integer, DaySchedule> days, int offset, int limit) {
+		List<Event> found = new ArrayList<Event>();
+		String q = query.trim().toLowerCase(Locale.ROOT);
+		if (q.isEmpty() || limit <= 0) {
+			return found;
+		}
+		int[] skipped = {0};
+		if (q.length() >= GRAM) {
+			// Walk the shortest list, skipping days missing from any other list
+			List<Postings> lists = new ArrayList<Postings>();
+			for (int i = 0; i + GRAM <= q.length(); i++) {
+				Postings list = grams.get(key(q, i, i + GRAM));
+				if (list == null) {
+					return found;
+				}
+				list.sort();
+				lists.add(list);
+			}
+			Postings shortest = lists.get(0);
+			for (Postings list : lists) {
+				if (list.size < shortest.size) {
+					shortest = list;
+				}
+			}
+			for (int i = 0; i < shortest.size && found.size() < limit; i++) {
+				int day = shortest.days[i];
+				boolean everywhere = true;
+				for (int l = 0; l < lists.size() && everywhere; l++) {
+					everywhere = Arrays.binarySearch(lists.get(l).days, 0, lists.get(l).size, day) >= 0;
+				}
+				if (everywhere) {
+					match(days.get(day), q, offset, limit, skipped, found);
+				}
+			}
+		}
+		else {
+			// Shorter queries are the start of many grams; merge their lists by day
+			long from = key(q, 0, q.length());
+			long to = from | ((1L << (CHAR_BITS * (GRAM - q.length()))) - 1);
+			PriorityQueue<int[]> cursors = new PriorityQueue<int[]>(11, new Comparator<int[]>() {
+				public int compare(int[] a, int[] b) {
+					return Integer.compare(a[0], b[0]);
+				}
+			});
+			List<Postings> lists = new ArrayList<Postings>(grams.subMap(from, true, to, true).values());
+			for (int l = 0; l < lists.size(); l++) {
+				lists.get(l).sort();
+				cursors.add(new int[] {lists.get(l).days[0], l, 0});
+			}
+			int lastDay = 0;
+			boolean first = true;
+			while (!cursors.isEmpty() && found.size() < limit) {
+				int[] cursor = cursors.poll();
+				if (first || cursor[0] != lastDay) {
+					match(days.get(cursor[0]), q, offset, limit, skipped, found);
+					lastDay = cursor[0];
+					first = false;
+				}
+				Postings list = lists.get(cursor[1]);
+				if (++cursor[2] < list.size) {
+					cursor[0] = list.days[cursor[2]];
+					cursors.add(cursor);
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Adds the events of a day whose title contains the query, after skipping offset.
+	 */
+	private static void match(DaySchedule events, String q, int offset, int limit, int[] skipped, List<Event> found) {
+		if (events == null) {
+			return;
+		}
+		for (Event e : events) {
+			if (found.size() < limit && e.getTitle().toLowerCase(Locale.ROOT).contains(q)) {
+				if (skipped[0] < offset) {
+					skipped[0]++;
+				} else {
+					found.add(e);
+				}
+			}
+		}
+	}
+
+	private static String pad(String title) {
+		return " " + title.toLowerCase(Locale.ROOT) + " ";
+	}
+
+	/**
+	 * Packs the chars of a gram of up to three chars into a key. Keys of the grams starting
+	 * with the same chars are next to each other, shortest first.
+	 */
+	private static long key(String s, int from, int to) {
+		long key = 0;
+		for (int i = from; i < from + GRAM; i++) {
+			key = (key << CHAR_BITS) | (i < to ? s.charAt(i) + 1 : 0);
+		}
+		return key;
+	}
+
+	/**
+	 * The epoch days listed for a gram. Days are usually added in order; when they are not,
+	 * the list is sorted before it is searched.
+	 */
+	private static class Postings {
+		private int[] days = new int[2];
+		private int size;
+		private boolean sorted = true;
+
+		void add(int day) {
+			if (size > 0 && days[size - 1] == day) {
+				return;
+			}
+			if (size > 0 && day < days[size - 1]) {
+				sorted = false;
+			}
+			if (size == days.length) {
+				days = Arrays.copyOf(days, size * 2);
+			}
+			days[size++] = day;
+		}
+
+		void remove(int day) {
+			sort();
+			int i = Arrays.binarySearch(days, 0, size, day);
+			if (i >= 0) {
+				System.arraycopy(days, i + 1, days, i, size - i - 1);
+				size--;
+			}
+		}
+
+		/**
+		 * Sorts the days and drops the days listed twice.
+		 */
+		void sort() {
+			if (sorted) {
+				return;
+			}
+			Arrays.sort(days, 0, size);
+			int kept = 0;
+			for (int i = 0; i < size; i++) {
+				if (kept == 0 || days[i] != days[kept - 1]) {
+					days[kept++] = days[i];
+				}
+			}
+			size = kept;
+			sorted = true;
+		}
+	}
+
+}	// end of TitleIndex class